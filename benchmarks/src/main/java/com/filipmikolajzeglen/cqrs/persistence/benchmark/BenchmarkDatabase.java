@@ -0,0 +1,92 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Embedded H2 database shared by all benchmark threads, seeded once per trial.
+ * <p>
+ * Rows are spread over {@value #NAMES} distinct names and {@value #PARENTS} parents, so that a restriction on name
+ * matches roughly one percent of the table.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase
+{
+   static final String PERSISTENCE_UNIT = "benchmark-persistence-unit";
+   static final int NAMES = 100;
+   static final int PARENTS = 100;
+   private static final int SEED_BATCH_SIZE = 1000;
+
+   @Param({ "10000" })
+   public int rows;
+
+   EntityManagerFactory entityManagerFactory;
+
+   long sampleId;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+      EntityManager entityManager = entityManagerFactory.createEntityManager();
+      try
+      {
+         entityManager.getTransaction().begin();
+         List<BenchmarkParentEntity> parents = new ArrayList<>();
+         for (int i = 0; i < PARENTS; i++)
+         {
+            BenchmarkParentEntity parent = new BenchmarkParentEntity(code(i));
+            entityManager.persist(parent);
+            parents.add(parent);
+         }
+         for (int i = 0; i < rows; i++)
+         {
+            BenchmarkEntity entity = new BenchmarkEntity(name(i), i % 2 == 0, (long) (i % 1000),
+                  parents.get(i % PARENTS));
+            entityManager.persist(entity);
+            if (i == 0)
+            {
+               sampleId = entity.getId();
+            }
+            if (i % SEED_BATCH_SIZE == 0)
+            {
+               entityManager.flush();
+               entityManager.clear();
+               parents.replaceAll(parent -> entityManager.getReference(BenchmarkParentEntity.class, parent.getId()));
+            }
+         }
+         entityManager.getTransaction().commit();
+      }
+      finally
+      {
+         entityManager.close();
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      entityManagerFactory.close();
+   }
+
+   static String name(int index)
+   {
+      return "name-" + index % NAMES;
+   }
+
+   static String code(int index)
+   {
+      return "parent-" + index % PARENTS;
+   }
+}
@@ -0,0 +1,89 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+
+/**
+ * Entity queried by the benchmarks.
+ */
+@Entity
+@Table(name = "benchmark_entity")
+public class BenchmarkEntity
+{
+   @Id
+   @GeneratedValue(strategy = GenerationType.SEQUENCE)
+   private Long id;
+
+   private String name;
+
+   private boolean flag;
+
+   private Long number;
+
+   @ManyToOne(fetch = FetchType.LAZY)
+   @JoinColumn(name = "parent_id")
+   private BenchmarkParentEntity parent;
+
+   public BenchmarkEntity()
+   {
+   }
+
+   public BenchmarkEntity(String name, boolean flag, Long number, BenchmarkParentEntity parent)
+   {
+      this.name = name;
+      this.flag = flag;
+      this.number = number;
+      this.parent = parent;
+   }
+
+   public Long getId()
+   {
+      return id;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public void setName(String name)
+   {
+      this.name = name;
+   }
+
+   public boolean isFlag()
+   {
+      return flag;
+   }
+
+   public void setFlag(boolean flag)
+   {
+      this.flag = flag;
+   }
+
+   public Long getNumber()
+   {
+      return number;
+   }
+
+   public void setNumber(Long number)
+   {
+      this.number = number;
+   }
+
+   public BenchmarkParentEntity getParent()
+   {
+      return parent;
+   }
+
+   public void setParent(BenchmarkParentEntity parent)
+   {
+      this.parent = parent;
+   }
+}
@@ -0,0 +1,45 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Parent entity referenced by {@link BenchmarkEntity}, used for nested property benchmarks.
+ */
+@Entity
+@Table(name = "benchmark_parent_entity")
+public class BenchmarkParentEntity
+{
+   @Id
+   @GeneratedValue(strategy = GenerationType.SEQUENCE)
+   private Long id;
+
+   private String code;
+
+   public BenchmarkParentEntity()
+   {
+   }
+
+   public BenchmarkParentEntity(String code)
+   {
+      this.code = code;
+   }
+
+   public Long getId()
+   {
+      return id;
+   }
+
+   public String getCode()
+   {
+      return code;
+   }
+
+   public void setCode(String code)
+   {
+      this.code = code;
+   }
+}
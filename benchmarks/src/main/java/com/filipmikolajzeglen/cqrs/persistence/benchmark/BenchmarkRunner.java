@@ -0,0 +1,38 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks of this module with the GC profiler enabled, so that every result reports allocation rate next
+ * to throughput.
+ * <p>
+ * Standard JMH command line options are accepted and take precedence, e.g. {@code -f 2} or a benchmark name regex.
+ * </p>
+ */
+public final class BenchmarkRunner
+{
+   private BenchmarkRunner()
+   {
+   }
+
+   public static void main(String[] args) throws RunnerException, CommandLineOptionException
+   {
+      CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+      OptionsBuilder builder = new OptionsBuilder();
+      if (commandLineOptions.getIncludes().isEmpty())
+      {
+         builder.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+      }
+      Options options = builder
+            .parent(commandLineOptions)
+            .addProfiler(GCProfiler.class)
+            .build();
+      new Runner(options).run();
+   }
+}
@@ -0,0 +1,41 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per-thread {@link EntityManager} with a transaction that is rolled back after every iteration, so that write
+ * benchmarks always run against the seeded data.
+ */
+@State(Scope.Thread)
+public class BenchmarkSession
+{
+   EntityManager entityManager;
+
+   @Setup(Level.Iteration)
+   public void setUp(BenchmarkDatabase database)
+   {
+      entityManager = database.entityManagerFactory.createEntityManager();
+      entityManager.getTransaction().begin();
+   }
+
+   @TearDown(Level.Invocation)
+   public void clear()
+   {
+      entityManager.clear();
+   }
+
+   @TearDown(Level.Iteration)
+   public void tearDown()
+   {
+      if (entityManager.getTransaction().isActive())
+      {
+         entityManager.getTransaction().rollback();
+      }
+      entityManager.close();
+   }
+}
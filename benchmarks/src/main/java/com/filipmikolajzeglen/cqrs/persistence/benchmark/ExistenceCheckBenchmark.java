@@ -0,0 +1,64 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQuery;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQueryHandler;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the existence probe of {@link DatabaseQueryHandler} with counting all matching rows, for a restriction
+ * matching half of the table. The gap grows with the table, e.g. {@code -p rows=1000000}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExistenceCheckBenchmark
+{
+   private BenchmarkSession session;
+   private DatabaseQueryHandler<BenchmarkEntity> handler;
+   private DatabaseQuery<BenchmarkEntity> weakQuery;
+
+   @Setup(Level.Iteration)
+   public void setUp(BenchmarkSession session)
+   {
+      this.session = session;
+      handler = new DatabaseQueryHandler<>(session.entityManager);
+      weakQuery = DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::isFlag).equalTo(false)
+            .build();
+   }
+
+   @Benchmark
+   public Boolean exist()
+   {
+      return handler.handle(weakQuery, ResultStrategy.exist());
+   }
+
+   @Benchmark
+   public Boolean countProbe()
+   {
+      CriteriaBuilder cb = session.entityManager.getCriteriaBuilder();
+      CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+      Root<BenchmarkEntity> root = countQuery.from(BenchmarkEntity.class);
+      countQuery.select(cb.count(root)).where(weakQuery.toRestrictions(cb, root));
+      return session.entityManager.createQuery(countQuery).setMaxResults(1).getSingleResult() > 0;
+   }
+}
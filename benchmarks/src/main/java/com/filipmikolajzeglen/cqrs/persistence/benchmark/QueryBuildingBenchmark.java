@@ -0,0 +1,101 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building {@link DatabaseQuery} instances through {@link DatabaseQuery.Builder} and
+ * {@link com.filipmikolajzeglen.cqrs.persistence.database.PropertyBuilder}, and translating them into JPA predicates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBuildingBenchmark
+{
+   private static final List<Long> IDS = LongStream.rangeClosed(1, 50).boxed().toList();
+
+   private CriteriaBuilder criteriaBuilder;
+   private Root<BenchmarkEntity> root;
+   private DatabaseQuery<BenchmarkEntity> query;
+
+   @Setup(Level.Trial)
+   public void setUp(BenchmarkDatabase database)
+   {
+      criteriaBuilder = database.entityManagerFactory.getCriteriaBuilder();
+      root = criteriaBuilder.createQuery(BenchmarkEntity.class).from(BenchmarkEntity.class);
+      query = equalToQuery();
+   }
+
+   @Benchmark
+   public DatabaseQuery<BenchmarkEntity> buildEmptyQuery()
+   {
+      return DatabaseQuery.builder(BenchmarkEntity.class).build();
+   }
+
+   @Benchmark
+   public DatabaseQuery<BenchmarkEntity> buildEqualToQuery()
+   {
+      return equalToQuery();
+   }
+
+   @Benchmark
+   public DatabaseQuery<BenchmarkEntity> buildInQuery()
+   {
+      return DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getId).in(IDS)
+            .build();
+   }
+
+   @Benchmark
+   public DatabaseQuery<BenchmarkEntity> buildNestedQuery()
+   {
+      return DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getParent).then(BenchmarkParentEntity::getCode).equalTo("parent-1")
+            .build();
+   }
+
+   @Benchmark
+   public Predicate[] toRestrictions()
+   {
+      return query.toRestrictions(criteriaBuilder, root);
+   }
+
+   @Benchmark
+   public Predicate[] buildAndTranslateNestedQuery()
+   {
+      return DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getParent).then(BenchmarkParentEntity::getCode).equalTo("parent-1")
+            .property(BenchmarkEntity::getId).not().in(IDS)
+            .build()
+            .toRestrictions(criteriaBuilder, root);
+   }
+
+   private static DatabaseQuery<BenchmarkEntity> equalToQuery()
+   {
+      return DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getName).equalTo("name-1")
+            .property(BenchmarkEntity::isFlag).equalTo(true)
+            .property(BenchmarkEntity::getNumber).isNotNull()
+            .build();
+   }
+}
@@ -0,0 +1,99 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.filipmikolajzeglen.cqrs.core.PagedResult;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import com.filipmikolajzeglen.cqrs.core.SliceResult;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQuery;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQueryHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DatabaseQueryHandler#handle} for every {@link ResultStrategy} branch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryHandlerBenchmark
+{
+   private DatabaseQueryHandler<BenchmarkEntity> handler;
+   private DatabaseQuery<BenchmarkEntity> listQuery;
+   private DatabaseQuery<BenchmarkEntity> singleQuery;
+
+   @Setup(Level.Iteration)
+   public void setUp(BenchmarkDatabase database, BenchmarkSession session)
+   {
+      handler = new DatabaseQueryHandler<>(session.entityManager);
+      listQuery = DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getName).equalTo(BenchmarkDatabase.name(1))
+            .property(BenchmarkEntity::isFlag).equalTo(false)
+            .build();
+      singleQuery = DatabaseQuery.builder(BenchmarkEntity.class)
+            .property(BenchmarkEntity::getId).equalTo(database.sampleId)
+            .build();
+   }
+
+   @Benchmark
+   public List<BenchmarkEntity> all()
+   {
+      return handler.handle(listQuery, ResultStrategy.all());
+   }
+
+   @Benchmark
+   public Optional<BenchmarkEntity> first()
+   {
+      return handler.handle(listQuery, ResultStrategy.first());
+   }
+
+   @Benchmark
+   public BenchmarkEntity single()
+   {
+      return handler.handle(singleQuery, ResultStrategy.single());
+   }
+
+   @Benchmark
+   public Optional<BenchmarkEntity> optional()
+   {
+      return handler.handle(singleQuery, ResultStrategy.optional());
+   }
+
+   @Benchmark
+   public Boolean exist()
+   {
+      return handler.handle(listQuery, ResultStrategy.exist());
+   }
+
+   @Benchmark
+   public Long count()
+   {
+      return handler.handle(listQuery, ResultStrategy.count());
+   }
+
+   @Benchmark
+   public PagedResult<BenchmarkEntity> paged()
+   {
+      return handler.handle(listQuery, ResultStrategy.paged(1, 20, 0));
+   }
+
+   @Benchmark
+   public SliceResult<BenchmarkEntity> sliced()
+   {
+      return handler.handle(listQuery, ResultStrategy.sliced(20, 20));
+   }
+}
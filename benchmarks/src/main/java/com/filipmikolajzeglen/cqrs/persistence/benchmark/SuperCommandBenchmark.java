@@ -0,0 +1,49 @@
+package com.filipmikolajzeglen.cqrs.persistence.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.filipmikolajzeglen.cqrs.core.Query;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseQuery;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseSuperCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures executing {@link DatabaseSuperCommand#update} commands, with and without a constraining query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuperCommandBenchmark
+{
+   @Benchmark
+   public Integer updateWhere(BenchmarkSession session)
+   {
+      return DatabaseSuperCommand.update(BenchmarkEntity.class)
+            .set(BenchmarkEntity::setFlag, true)
+            .set(BenchmarkEntity::setNumber, 1L)
+            .where(DatabaseQuery.builder(BenchmarkEntity.class)
+                  .property(BenchmarkEntity::getName).equalTo(BenchmarkDatabase.name(7))
+                  .build())
+            .execute(session.entityManager);
+   }
+
+   @Benchmark
+   public Integer updateWithoutRestrictions(BenchmarkSession session)
+   {
+      return DatabaseSuperCommand.update(BenchmarkEntity.class)
+            .set(BenchmarkEntity::setFlag, true)
+            .where((Query<BenchmarkEntity>) null)
+            .execute(session.entityManager);
+   }
+}
@@ -0,0 +1,48 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+/**
+ * Defers work of command handlers until the transaction their commands run in is committed.
+ * <p>
+ * Command handlers notify their {@link EntityChangeListener} through this hook, so that caches and sessions see a
+ * change only once it is visible to other transactions, and never see changes which were rolled back. JPA offers no
+ * provider-neutral way to observe the end of a transaction, so the hook is supplied by whoever demarcates it:
+ * </p>
+ * <ul>
+ *    <li>{@link CommitCallbacks} for callers managing resource-local transactions themselves,</li>
+ *    <li>an adapter registering the action with the transaction manager, e.g. a Spring
+ *    {@code TransactionSynchronization} or a JTA {@code Synchronization} running it after a successful commit,</li>
+ *    <li>{@link #immediately()} when commands do not run in a surrounding transaction.</li>
+ * </ul>
+ *
+ * <pre>{@code
+ * AfterCommit afterCommit = action -> TransactionSynchronizationManager.registerSynchronization(
+ *       new TransactionSynchronization()
+ *       {
+ *          public void afterCommit()
+ *          {
+ *             action.run();
+ *          }
+ *       });
+ * }</pre>
+ */
+@FunctionalInterface
+public interface AfterCommit
+{
+   /**
+    * Runs the given action after the transaction of the calling thread commits. The action must be discarded if the
+    * transaction is rolled back.
+    *
+    * @param action the action to run after the commit
+    */
+   void register(Runnable action);
+
+   /**
+    * Returns a hook running actions immediately, for commands which are not part of a surrounding transaction.
+    *
+    * @return the immediate hook
+    */
+   static AfterCommit immediately()
+   {
+      return Runnable::run;
+   }
+}
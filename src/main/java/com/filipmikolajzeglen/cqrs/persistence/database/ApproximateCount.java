@@ -0,0 +1,79 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+/**
+ * Request for a count estimated from database statistics, handled by
+ * {@link DatabaseQueryHandler#handle(DatabaseQuery, ApproximateCount)} and used for the totals of paged results by
+ * {@link DatabaseQueryHandler.Builder#approximateTotals(ApproximateCount)}.
+ * <p>
+ * Unrestricted queries are estimated from the statistics of their table, restricted queries from the planner's row
+ * estimate. Estimates can be far off for correlated restrictions or stale statistics, so they suit figures shown as
+ * "about 1.2M results". Estimates below the exact threshold, and queries which cannot be estimated, are counted
+ * exactly, since small counts are cheap and their errors most visible.
+ * </p>
+ *
+ * <pre>{@code
+ * long total = handler.handle(query, ApproximateCount.using(RowEstimator.postgres(sqlRenderer)).exactBelow(10_000));
+ * }</pre>
+ */
+public final class ApproximateCount
+{
+   /**
+    * Default estimate below which rows are counted exactly.
+    */
+   public static final long DEFAULT_EXACT_THRESHOLD = 100_000;
+
+   private final RowEstimator estimator;
+   private final long exactThreshold;
+
+   private ApproximateCount(RowEstimator estimator, long exactThreshold)
+   {
+      if (exactThreshold < 0)
+      {
+         throw new IllegalArgumentException("Exact threshold must not be negative, was " + exactThreshold);
+      }
+      this.estimator = estimator;
+      this.exactThreshold = exactThreshold;
+   }
+
+   /**
+    * Creates a request estimating counts with the given estimator.
+    *
+    * @param estimator the row estimator
+    * @return the approximate count request
+    */
+   public static ApproximateCount using(RowEstimator estimator)
+   {
+      return new ApproximateCount(estimator, DEFAULT_EXACT_THRESHOLD);
+   }
+
+   /**
+    * Returns a copy of this request counting exactly when the estimate is below the given threshold.
+    *
+    * @param threshold the estimate below which rows are counted exactly
+    * @return the approximate count request
+    */
+   public ApproximateCount exactBelow(long threshold)
+   {
+      return new ApproximateCount(estimator, threshold);
+   }
+
+   /**
+    * Returns the row estimator.
+    *
+    * @return the estimator
+    */
+   public RowEstimator getEstimator()
+   {
+      return estimator;
+   }
+
+   /**
+    * Returns the estimate below which rows are counted exactly.
+    *
+    * @return the exact threshold
+    */
+   public long getExactThreshold()
+   {
+      return exactThreshold;
+   }
+}
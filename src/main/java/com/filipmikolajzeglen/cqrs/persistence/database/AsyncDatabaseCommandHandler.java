@@ -0,0 +1,154 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Runs database commands asynchronously, each in its own transaction.
+ * <p>
+ * Every command runs on the given executor with its own {@link EntityManager} and resource-local transaction, which
+ * is committed when the command completes and rolled back if it fails. The given {@link EntityChangeListener} is
+ * notified of the changed entity types after the commit. The number of commands running at the same time is limited,
+ * which should not exceed the size of the connection pool.
+ * </p>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class AsyncDatabaseCommandHandler<ENTITY>
+{
+   private final EntityManagerExecutor executor;
+   private final EntityChangeListener changeListener;
+
+   private AsyncDatabaseCommandHandler(EntityManagerExecutor executor, EntityChangeListener changeListener)
+   {
+      this.executor = executor;
+      this.changeListener = changeListener;
+   }
+
+   /**
+    * Creates a new builder for a handler running commands on the given executor.
+    *
+    * @param entityManagerFactory the factory of the entity managers used by commands
+    * @param executor             the executor running commands
+    * @param <ENTITY>             the entity type
+    * @return a new builder
+    */
+   public static <ENTITY> Builder<ENTITY> builder(EntityManagerFactory entityManagerFactory, Executor executor)
+   {
+      return new Builder<>(entityManagerFactory, executor);
+   }
+
+   /**
+    * Handles the given database command asynchronously.
+    *
+    * @param command the command to handle
+    * @return the future result of the command, completed exceptionally if the command or the commit fails
+    */
+   public CompletableFuture<ENTITY> handle(DatabaseCommand<ENTITY> command)
+   {
+      return executor.submitInTransaction(command::execute)
+            .thenApply(result -> notifying(result, command.changedEntityType(executor.metamodel())));
+   }
+
+   /**
+    * Handles the given super command asynchronously.
+    * <p>
+    * Chunked deletes committing each chunk run outside of a transaction and commit their chunks themselves; the
+    * listener is notified when they complete, even if they fail, since the chunks deleted before the failure stay
+    * committed.
+    * </p>
+    *
+    * @param command the command to handle
+    * @return the future number of affected entities, completed exceptionally if the command or the commit fails
+    */
+   public CompletableFuture<Integer> handle(DatabaseSuperCommand<ENTITY> command)
+   {
+      if (command.commitsItself())
+      {
+         return executor.submit(command::execute)
+               .whenComplete((result, failure) -> changeListener.entitiesChanged(command.changedEntityType()));
+      }
+      return executor.submitInTransaction(command::execute)
+            .thenApply(result -> notifying(result, command.changedEntityType()));
+   }
+
+   /**
+    * Handles the given batch command asynchronously.
+    *
+    * @param command the command to handle
+    * @return the future number of entities processed in each batch, completed exceptionally if the command or the
+    *       commit fails
+    */
+   public CompletableFuture<BatchResult> handle(DatabaseBatchCommand<ENTITY> command)
+   {
+      return executor.submitInTransaction(command::execute)
+            .thenApply(result ->
+            {
+               command.changedEntityTypes(executor.metamodel()).forEach(changeListener::entitiesChanged);
+               return result;
+            });
+   }
+
+   private <RESULT> RESULT notifying(RESULT result, Class<?> changedEntityType)
+   {
+      changeListener.entitiesChanged(changedEntityType);
+      return result;
+   }
+
+   /**
+    * Builder for {@link AsyncDatabaseCommandHandler}.
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static final class Builder<ENTITY>
+   {
+      private final EntityManagerFactory entityManagerFactory;
+      private final Executor executor;
+      private int maxConcurrency = AsyncDatabaseQueryHandler.DEFAULT_MAX_CONCURRENCY;
+      private EntityChangeListener changeListener = EntityChangeListener.none();
+
+      public Builder(EntityManagerFactory entityManagerFactory, Executor executor)
+      {
+         this.entityManagerFactory = entityManagerFactory;
+         this.executor = executor;
+      }
+
+      /**
+       * Sets the maximum number of commands running at the same time.
+       *
+       * @param maxConcurrency the maximum number of concurrent commands
+       * @return this builder
+       */
+      public Builder<ENTITY> maxConcurrency(int maxConcurrency)
+      {
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * Sets the listener notified of the entity types changed by committed commands.
+       *
+       * @param changeListener the change listener
+       * @return this builder
+       */
+      public Builder<ENTITY> changeListener(EntityChangeListener changeListener)
+      {
+         this.changeListener = changeListener;
+         return this;
+      }
+
+      /**
+       * Builds the {@link AsyncDatabaseCommandHandler} instance.
+       *
+       * @return the command handler
+       */
+      public AsyncDatabaseCommandHandler<ENTITY> build()
+      {
+         return new AsyncDatabaseCommandHandler<>(
+               new EntityManagerExecutor(entityManagerFactory, executor, maxConcurrency), changeListener);
+      }
+   }
+}
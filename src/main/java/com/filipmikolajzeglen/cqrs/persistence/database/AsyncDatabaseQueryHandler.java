@@ -0,0 +1,163 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Runs {@link DatabaseQuery} asynchronously, so independent queries can run concurrently.
+ * <p>
+ * Every query runs on the given executor with its own {@link EntityManager}, created from the entity manager factory
+ * and closed as soon as the result is computed. Returned entities are detached, so associations needed by the caller
+ * should be declared with {@link DatabaseQuery.Builder#fetch}. The number of queries running at the same time is
+ * limited, which should not exceed the size of the connection pool.
+ * </p>
+ * <p>
+ * On Java 21 and later, an executor creating a virtual thread per task avoids occupying a platform thread for each
+ * waiting query.
+ * </p>
+ *
+ * <pre>{@code
+ * AsyncDatabaseQueryHandler<Order> handler = AsyncDatabaseQueryHandler.<Order>builder(entityManagerFactory, executor)
+ *       .maxConcurrency(8)
+ *       .build();
+ * CompletableFuture<Long> open = handler.handle(openOrders, ResultStrategy.count());
+ * CompletableFuture<Long> closed = handler.handle(closedOrders, ResultStrategy.count());
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class AsyncDatabaseQueryHandler<ENTITY>
+{
+   /**
+    * Default maximum number of queries running at the same time.
+    */
+   public static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+   private final EntityManagerExecutor executor;
+   private final Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory;
+   private final SingleFlight flights;
+
+   private AsyncDatabaseQueryHandler(EntityManagerExecutor executor,
+         Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory, SingleFlight flights)
+   {
+      this.executor = executor;
+      this.queryHandlerFactory = queryHandlerFactory;
+      this.flights = flights;
+   }
+
+   /**
+    * Creates a new builder for a handler running queries on the given executor.
+    *
+    * @param entityManagerFactory the factory of the entity managers used by queries
+    * @param executor             the executor running queries
+    * @param <ENTITY>             the entity type
+    * @return a new builder
+    */
+   public static <ENTITY> Builder<ENTITY> builder(EntityManagerFactory entityManagerFactory, Executor executor)
+   {
+      return new Builder<>(entityManagerFactory, executor);
+   }
+
+   /**
+    * Handles the given database query asynchronously.
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param <RESULT>       the result type
+    * @return the future result, completed exceptionally if the query fails
+    */
+   public <RESULT> CompletableFuture<RESULT> handle(DatabaseQuery<ENTITY> query,
+         ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      if (flights == null)
+      {
+         return submit(query, resultStrategy);
+      }
+      return flights.submit(query, resultStrategy, () -> submit(query, resultStrategy));
+   }
+
+   private <RESULT> CompletableFuture<RESULT> submit(DatabaseQuery<ENTITY> query,
+         ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      return executor.submit(entityManager -> queryHandlerFactory.apply(entityManager).handle(query, resultStrategy));
+   }
+
+   /**
+    * Builder for {@link AsyncDatabaseQueryHandler}.
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static final class Builder<ENTITY>
+   {
+      private final EntityManagerFactory entityManagerFactory;
+      private final Executor executor;
+      private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+      private boolean singleFlight;
+      private Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory =
+            DatabaseQueryHandler::new;
+
+      public Builder(EntityManagerFactory entityManagerFactory, Executor executor)
+      {
+         this.entityManagerFactory = entityManagerFactory;
+         this.executor = executor;
+      }
+
+      /**
+       * Sets the maximum number of queries running at the same time.
+       *
+       * @param maxConcurrency the maximum number of concurrent queries
+       * @return this builder
+       */
+      public Builder<ENTITY> maxConcurrency(int maxConcurrency)
+      {
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * Sets how the handler running a query is created for the entity manager of the query, e.g. to use prepared
+       * queries. By default, a plain {@link DatabaseQueryHandler} is created.
+       *
+       * @param queryHandlerFactory creates the handler for an entity manager
+       * @return this builder
+       */
+      public Builder<ENTITY> queryHandler(
+            Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory)
+      {
+         this.queryHandlerFactory = queryHandlerFactory;
+         return this;
+      }
+
+      /**
+       * Coalesces identical queries running at the same time: while a query is running, an equal query with an
+       * equivalent result strategy is not submitted again, but shares the future result of the running query. The
+       * shared entities are detached.
+       *
+       * @return this builder
+       * @see SingleFlightDatabaseQueryHandler
+       */
+      public Builder<ENTITY> singleFlight()
+      {
+         this.singleFlight = true;
+         return this;
+      }
+
+      /**
+       * Builds the {@link AsyncDatabaseQueryHandler} instance.
+       *
+       * @return the query handler
+       */
+      public AsyncDatabaseQueryHandler<ENTITY> build()
+      {
+         return new AsyncDatabaseQueryHandler<>(
+               new EntityManagerExecutor(entityManagerFactory, executor, maxConcurrency), queryHandlerFactory,
+               singleFlight ? new SingleFlight() : null);
+      }
+   }
+}
@@ -0,0 +1,31 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Result of a {@link DatabaseBatchCommand}, holding the number of entities processed in each flushed batch.
+ */
+@Getter
+public final class BatchResult
+{
+   private final List<Integer> batchCounts;
+
+   BatchResult(List<Integer> batchCounts)
+   {
+      this.batchCounts = List.copyOf(batchCounts);
+   }
+
+   /**
+    * Returns the total number of processed entities.
+    *
+    * @return the total count
+    */
+   public int getTotalCount()
+   {
+      return batchCounts.stream()
+            .mapToInt(Integer::intValue)
+            .sum();
+   }
+}
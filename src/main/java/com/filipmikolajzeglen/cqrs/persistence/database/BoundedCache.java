@@ -0,0 +1,94 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe, size-bounded cache evicting the oldest entries first.
+ * <p>
+ * Lookups of present keys do not allocate. Entries are evicted in insertion order once the cache grows beyond its
+ * maximum size.
+ * </p>
+ *
+ * @param <KEY>   the key type
+ * @param <VALUE> the value type
+ */
+final class BoundedCache<KEY, VALUE>
+{
+   private final int maximumSize;
+   private final ConcurrentMap<KEY, VALUE> entries = new ConcurrentHashMap<>();
+   private final Queue<KEY> insertionOrder = new ConcurrentLinkedQueue<>();
+
+   BoundedCache(int maximumSize)
+   {
+      if (maximumSize <= 0)
+      {
+         throw new IllegalArgumentException("Maximum size must be positive, was " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+   }
+
+   /**
+    * Returns the value cached under the given key.
+    *
+    * @param key the key
+    * @return the cached value, or {@code null} if absent
+    */
+   VALUE get(KEY key)
+   {
+      return entries.get(key);
+   }
+
+   /**
+    * Caches the value under the given key unless a value is already present.
+    *
+    * @param key   the key
+    * @param value the value to cache
+    * @return the value present in the cache after this call
+    */
+   VALUE put(KEY key, VALUE value)
+   {
+      VALUE previous = entries.putIfAbsent(key, value);
+      if (previous != null)
+      {
+         return previous;
+      }
+      insertionOrder.add(key);
+      evictOverflow();
+      return value;
+   }
+
+   /**
+    * Removes all entries.
+    */
+   void clear()
+   {
+      entries.clear();
+      insertionOrder.clear();
+   }
+
+   /**
+    * Returns the number of cached entries.
+    *
+    * @return the number of entries
+    */
+   int size()
+   {
+      return entries.size();
+   }
+
+   private void evictOverflow()
+   {
+      while (entries.size() > maximumSize)
+      {
+         KEY eldest = insertionOrder.poll();
+         if (eldest == null)
+         {
+            return;
+         }
+         entries.remove(eldest);
+      }
+   }
+}
@@ -0,0 +1,85 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Query handler serving repeated queries from a {@link QueryResultCache}.
+ * <p>
+ * Queries are cached by entity type, restriction shapes and values, fetch paths, and the type, sort orders and window
+ * of the result strategy. Only queries built from {@link PropertyBuilder} restrictions are cached, because only those
+ * can be identified by their shape and values; other queries always reach the delegate.
+ * </p>
+ * <p>
+ * Cached results are shared between callers, so their entities are detached from the given entity manager, the one
+ * the delegate loads them with, before they are cached; the caller running the query receives them detached as well.
+ * This also detaches instances the caller already had managed, discarding their unflushed changes, so the delegate
+ * should use an entity manager of its own. Associations needed by readers must be fetched with the query. Queries
+ * which are not cached return managed entities as usual.
+ * </p>
+ * <p>
+ * Intended for frequently read reference data. To keep results current, the cache must be registered as the
+ * {@link EntityChangeListener} of the command handlers changing the queried entities.
+ * </p>
+ *
+ * <pre>{@code
+ * QueryResultCache cache = QueryResultCache.builder().timeToLive(Duration.ofMinutes(5)).build();
+ * QueryHandler<DatabaseQuery<Country>, Country> handler =
+ *       new CachingDatabaseQueryHandler<>(new DatabaseQueryHandler<>(entityManager), entityManager, cache);
+ * CommandHandler<DatabaseCommand<Country>, Country> commandHandler =
+ *       new DatabaseCommandHandler<>(entityManager, cache, afterCommit);
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class CachingDatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<ENTITY>, ENTITY>
+{
+   private final QueryHandler<DatabaseQuery<ENTITY>, ENTITY> delegate;
+   private final EntityManager entityManager;
+   private final QueryResultCache cache;
+
+   /**
+    * Creates a handler caching the results of the given handler.
+    *
+    * @param delegate      the handler running queries on cache misses
+    * @param entityManager the entity manager the delegate loads entities with
+    * @param cache         the result cache
+    */
+   public CachingDatabaseQueryHandler(QueryHandler<DatabaseQuery<ENTITY>, ENTITY> delegate,
+         EntityManager entityManager, QueryResultCache cache)
+   {
+      this.delegate = delegate;
+      this.entityManager = entityManager;
+      this.cache = cache;
+   }
+
+   /**
+    * Returns the cached result of the given query, running it on a cache miss.
+    * <p>
+    * Entities of cached results are detached.
+    * </p>
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param <RESULT>       the result type
+    * @return the result
+    */
+   @Override
+   public <RESULT> RESULT handle(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      if (!query.isParameterizable())
+      {
+         return delegate.handle(query, resultStrategy);
+      }
+      return cache.get(keyOf(query, resultStrategy),
+            () -> ResultDetacher.detach(entityManager, resultStrategy, delegate.handle(query, resultStrategy)));
+   }
+
+   private static QueryResultCache.Key keyOf(DatabaseQuery<?> query, ResultStrategy<?, ?> resultStrategy)
+   {
+      ResultStrategyKey strategy = ResultStrategyKey.of(resultStrategy);
+      return new QueryResultCache.Key(query.getEntityType(), query.restrictionShapes(), query.parameterValues(),
+            query.fetchShapes(), strategy.type(), strategy.orders(), strategy.window());
+   }
+}
@@ -0,0 +1,19 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+
+/**
+ * Measurement of one command handled by a command handler of this module.
+ * <p>
+ * Commands changing single entities are only applied to the persistence context, and their statements are issued when
+ * it is flushed, so the execution time of such commands does not include the database round trips.
+ * </p>
+ *
+ * @param entityType    the changed entity type, or {@code Object.class} if unknown
+ * @param operation     the name of the command, e.g. {@code create} or {@code update}
+ * @param executionTime the time spent executing the command
+ * @param affectedRows  the number of entities created, updated or removed
+ */
+public record CommandMeasurement(Class<?> entityType, String operation, Duration executionTime, long affectedRows)
+{
+}
@@ -0,0 +1,64 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AfterCommit} hook for callers demarcating resource-local transactions themselves.
+ * <p>
+ * Actions registered by command handlers are kept per thread until the caller reports how its transaction ended:
+ * {@link #committed()} runs them, {@link #rolledBack()} discards them. A single instance can be shared by all command
+ * handlers and threads.
+ * </p>
+ *
+ * <pre>{@code
+ * CommitCallbacks callbacks = new CommitCallbacks();
+ * DatabaseCommandHandler<Country> handler = new DatabaseCommandHandler<>(entityManager, cache, callbacks);
+ * transaction.begin();
+ * try
+ * {
+ *    handler.handle(command);
+ *    transaction.commit();
+ *    callbacks.committed();
+ * }
+ * catch (RuntimeException e)
+ * {
+ *    transaction.rollback();
+ *    callbacks.rolledBack();
+ *    throw e;
+ * }
+ * }</pre>
+ */
+public final class CommitCallbacks implements AfterCommit
+{
+   private final ThreadLocal<List<Runnable>> pending = ThreadLocal.withInitial(ArrayList::new);
+
+   /**
+    * Keeps the given action until the transaction of the calling thread ends.
+    *
+    * @param action the action to run after the commit
+    */
+   @Override
+   public void register(Runnable action)
+   {
+      pending.get().add(action);
+   }
+
+   /**
+    * Runs the actions registered by the calling thread since its transaction began, in registration order.
+    */
+   public void committed()
+   {
+      List<Runnable> actions = pending.get();
+      pending.remove();
+      actions.forEach(Runnable::run);
+   }
+
+   /**
+    * Discards the actions registered by the calling thread since its transaction began.
+    */
+   public void rolledBack()
+   {
+      pending.remove();
+   }
+}
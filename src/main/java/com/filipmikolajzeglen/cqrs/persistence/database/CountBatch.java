@@ -0,0 +1,253 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+/**
+ * Several count and exist queries on the same entity, handled in one database round trip by
+ * {@link DatabaseQueryHandler#handle(CountBatch)}.
+ * <p>
+ * All queries are compiled into a single statement selecting one {@code sum(case when ... then 1 else 0 end)} column
+ * per query. When every query is restricted, only rows matching at least one of them are read. Unlike a separate
+ * exist query, an exist query in a batch reads all of its matching rows.
+ * </p>
+ * <p>
+ * Restrictions navigating associations join them as inner joins, which then also drops rows without the association
+ * from the other queries of the batch. Such queries should be run separately.
+ * </p>
+ *
+ * <pre>{@code
+ * CountBatch<Order> facets = CountBatch.builder(Order.class)
+ *       .count(openOrders)
+ *       .count(shippedOrders)
+ *       .exist(overdueOrders)
+ *       .build();
+ * List<Object> results = handler.handle(facets); // [Long, Long, Boolean]
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public final class CountBatch<ENTITY>
+{
+   private final Class<ENTITY> entityType;
+   private final List<Entry<ENTITY>> entries;
+
+   private CountBatch(Class<ENTITY> entityType, List<Entry<ENTITY>> entries)
+   {
+      this.entityType = entityType;
+      this.entries = entries;
+   }
+
+   /**
+    * Creates a new builder for a batch of queries on the given entity type.
+    *
+    * @param entityType the entity class
+    * @param <ENTITY>   the entity type
+    * @return a new builder
+    */
+   public static <ENTITY> Builder<ENTITY> builder(Class<ENTITY> entityType)
+   {
+      return new Builder<>(entityType);
+   }
+
+   Class<ENTITY> getEntityType()
+   {
+      return entityType;
+   }
+
+   boolean isEmpty()
+   {
+      return entries.isEmpty();
+   }
+
+   /**
+    * Builds the number of rows matching each query, in the order of the queries.
+    *
+    * @param cb   the criteria builder
+    * @param root the root entity
+    * @return one selection per query
+    */
+   List<Selection<?>> selections(CriteriaBuilder cb, Root<ENTITY> root)
+   {
+      List<Selection<?>> selections = new ArrayList<>(entries.size());
+      for (Entry<ENTITY> entry : entries)
+      {
+         Expression<Long> matches = cb.<Long>selectCase()
+               .when(restrictionOf(entry.query(), cb, root), 1L)
+               .otherwise(0L);
+         selections.add(cb.sum(matches));
+      }
+      return selections;
+   }
+
+   /**
+    * Builds the predicate selecting rows matching any query, or none if some query is unrestricted.
+    *
+    * @param cb   the criteria builder
+    * @param root the root entity
+    * @return the predicates of the where clause
+    */
+   Predicate[] filter(CriteriaBuilder cb, Root<ENTITY> root)
+   {
+      List<Predicate> alternatives = new ArrayList<>(entries.size());
+      for (Entry<ENTITY> entry : entries)
+      {
+         if (entry.query().getRestrictions().isEmpty())
+         {
+            return new Predicate[0];
+         }
+         alternatives.add(restrictionOf(entry.query(), cb, root));
+      }
+      return new Predicate[] { cb.or(alternatives.toArray(Predicate[]::new)) };
+   }
+
+   /**
+    * Converts the selected numbers of matching rows to the results of the queries.
+    *
+    * @param row the selected row
+    * @return a {@link Long} for every count query and a {@link Boolean} for every exist query
+    */
+   List<Object> results(Tuple row)
+   {
+      List<Object> results = new ArrayList<>(entries.size());
+      for (int i = 0; i < entries.size(); i++)
+      {
+         Number matches = (Number) row.get(i);
+         results.add(entries.get(i).kind().result(matches == null ? 0 : matches.longValue()));
+      }
+      return results;
+   }
+
+   /**
+    * Describes the queries of the batch for metric fingerprints.
+    *
+    * @return the kind and restriction descriptions of every query
+    */
+   List<String> describe()
+   {
+      return entries.stream()
+            .map(entry -> entry.kind() + " " + entry.query().restrictionDescriptions())
+            .toList();
+   }
+
+   private static <ENTITY> Predicate restrictionOf(DatabaseQuery<ENTITY> query, CriteriaBuilder cb, Root<ENTITY> root)
+   {
+      return cb.and(query.toRestrictions(cb, root));
+   }
+
+   private record Entry<ENTITY>(DatabaseQuery<ENTITY> query, Kind kind)
+   {
+   }
+
+   /**
+    * Result computed from the number of rows matching a query.
+    */
+   private enum Kind
+   {
+      COUNT
+            {
+               @Override
+               Object result(long matches)
+               {
+                  return matches;
+               }
+            },
+      EXIST
+            {
+               @Override
+               Object result(long matches)
+               {
+                  return matches > 0;
+               }
+            };
+
+      abstract Object result(long matches);
+   }
+
+   /**
+    * Builder for {@link CountBatch}.
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static final class Builder<ENTITY>
+   {
+      private final Class<ENTITY> entityType;
+      private final List<Entry<ENTITY>> entries = new ArrayList<>();
+
+      public Builder(Class<ENTITY> entityType)
+      {
+         this.entityType = entityType;
+      }
+
+      /**
+       * Adds a query whose matching rows are counted.
+       *
+       * @param query the database query
+       * @return this builder
+       */
+      public Builder<ENTITY> count(DatabaseQuery<ENTITY> query)
+      {
+         return add(query, Kind.COUNT);
+      }
+
+      /**
+       * Adds a query checked for any matching row.
+       *
+       * @param query the database query
+       * @return this builder
+       */
+      public Builder<ENTITY> exist(DatabaseQuery<ENTITY> query)
+      {
+         return add(query, Kind.EXIST);
+      }
+
+      /**
+       * Adds a query with the given count or exist result strategy.
+       *
+       * @param query          the database query
+       * @param resultStrategy {@link ResultStrategy#count()} or {@link ResultStrategy#exist()}
+       * @return this builder
+       * @throws IllegalArgumentException if the result strategy is neither count nor exist
+       */
+      public Builder<ENTITY> add(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, ?> resultStrategy)
+      {
+         return switch (resultStrategy.getType())
+         {
+            case COUNT -> count(query);
+            case EXIST -> exist(query);
+            default -> throw new IllegalArgumentException(
+                  "Only count and exist queries can be batched, was " + resultStrategy.getType());
+         };
+      }
+
+      /**
+       * Builds the {@link CountBatch} instance.
+       *
+       * @return the batch of queries
+       */
+      public CountBatch<ENTITY> build()
+      {
+         return new CountBatch<>(entityType, List.copyOf(entries));
+      }
+
+      private Builder<ENTITY> add(DatabaseQuery<ENTITY> query, Kind kind)
+      {
+         if (query.getEntityType() != entityType)
+         {
+            throw new IllegalArgumentException(
+                  "Query on " + query.getEntityType().getName() + " cannot be batched with queries on "
+                        + entityType.getName());
+         }
+         entries.add(new Entry<>(query, kind));
+         return this;
+      }
+   }
+}
@@ -0,0 +1,236 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.filipmikolajzeglen.cqrs.core.Command;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.Metamodel;
+
+/**
+ * Command creating, updating or removing many entities in batches.
+ * <p>
+ * The persistence context is flushed and cleared after every batch, so memory usage stays constant regardless of the
+ * number of entities, and each flush sends the statements of one batch together. For the statements to be sent as
+ * JDBC batches, the persistence provider must have batching enabled, e.g. {@code hibernate.jdbc.batch_size} set to
+ * the batch size. Hibernate cannot batch inserts of entities with {@code IDENTITY} generated ids.
+ * </p>
+ * <p>
+ * Clearing detaches every entity of the persistence context, including entities loaded before the command.
+ * </p>
+ *
+ * <pre>{@code
+ * BatchResult result = DatabaseBatchCommand.createAll(entities).inBatchesOf(100).execute(entityManager);
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public final class DatabaseBatchCommand<ENTITY> extends Command<BatchResult>
+{
+   /**
+    * Default number of entities flushed together.
+    */
+   public static final int DEFAULT_BATCH_SIZE = 50;
+
+   private final Operation operation;
+   private final List<ENTITY> entities;
+   private final int batchSize;
+
+   private DatabaseBatchCommand(Operation operation, List<ENTITY> entities, int batchSize)
+   {
+      if (batchSize <= 0)
+      {
+         throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+      }
+      this.operation = operation;
+      this.entities = entities;
+      this.batchSize = batchSize;
+   }
+
+   /**
+    * Creates a command for persisting new entities.
+    *
+    * @param entities the entities to persist
+    * @return a batch create command
+    */
+   public static <ENTITY> DatabaseBatchCommand<ENTITY> createAll(Collection<? extends ENTITY> entities)
+   {
+      return new DatabaseBatchCommand<>(Operation.CREATE, List.copyOf(entities), DEFAULT_BATCH_SIZE);
+   }
+
+   /**
+    * Creates a command for updating entities.
+    *
+    * @param entities the entities to update
+    * @return a batch update command
+    */
+   public static <ENTITY> DatabaseBatchCommand<ENTITY> updateAll(Collection<? extends ENTITY> entities)
+   {
+      return new DatabaseBatchCommand<>(Operation.UPDATE, List.copyOf(entities), DEFAULT_BATCH_SIZE);
+   }
+
+   /**
+    * Creates a command for removing entities.
+    *
+    * @param entities the entities to remove, managed or detached
+    * @return a batch remove command
+    */
+   public static <ENTITY> DatabaseBatchCommand<ENTITY> removeAll(Collection<? extends ENTITY> entities)
+   {
+      return new DatabaseBatchCommand<>(Operation.REMOVE, List.copyOf(entities), DEFAULT_BATCH_SIZE);
+   }
+
+   /**
+    * Returns a copy of this command flushing and clearing the persistence context after every given number of
+    * entities.
+    *
+    * @param batchSize the number of entities per batch
+    * @return the batch command
+    */
+   public DatabaseBatchCommand<ENTITY> inBatchesOf(int batchSize)
+   {
+      return new DatabaseBatchCommand<>(operation, entities, batchSize);
+   }
+
+   /**
+    * Executes the command using the provided {@link EntityManager}.
+    *
+    * @param entityManager the entity manager
+    * @return the number of entities processed in each batch
+    */
+   public BatchResult execute(EntityManager entityManager)
+   {
+      List<Integer> batchCounts = new ArrayList<>();
+      int pending = 0;
+      for (ENTITY entity : entities)
+      {
+         operation.apply(entityManager, entity);
+         if (++pending == batchSize)
+         {
+            batchCounts.add(flushAndClear(entityManager, pending));
+            pending = 0;
+         }
+      }
+      if (pending > 0)
+      {
+         batchCounts.add(flushAndClear(entityManager, pending));
+      }
+      return new BatchResult(batchCounts);
+   }
+
+   /**
+    * Returns the types of the entities of this command, reported to {@link EntityChangeListener}.
+    *
+    * @param metamodel the metamodel resolving the entity classes of proxies
+    * @return the changed entity types
+    */
+   Set<Class<?>> changedEntityTypes(Metamodel metamodel)
+   {
+      Set<Class<?>> types = new LinkedHashSet<>();
+      entities.forEach(entity -> types.add(entityTypeOf(metamodel, entity)));
+      return types;
+   }
+
+   /**
+    * Returns the type of the entities of this command, reported to {@link DatabaseMetrics}.
+    *
+    * @param metamodel the metamodel resolving the entity classes of proxies
+    * @return the type shared by all entities, or {@code Object.class} if there are none or they differ
+    */
+   Class<?> changedEntityType(Metamodel metamodel)
+   {
+      Set<Class<?>> types = changedEntityTypes(metamodel);
+      return types.size() == 1 ? types.iterator().next() : Object.class;
+   }
+
+   /**
+    * Resolves the entity class of the given entity. Entities loaded lazily may be instances of proxy classes generated
+    * by the persistence provider, which extend the entity class but are not entities themselves.
+    *
+    * @param metamodel the metamodel
+    * @param entity    the entity or its proxy
+    * @return the nearest class of the entity known to the metamodel
+    * @throws IllegalArgumentException if neither the class of the entity nor its superclasses are entities
+    */
+   static Class<?> entityTypeOf(Metamodel metamodel, Object entity)
+   {
+      for (Class<?> type = entity.getClass(); type != null; type = type.getSuperclass())
+      {
+         try
+         {
+            metamodel.entity(type);
+            return type;
+         }
+         catch (IllegalArgumentException notAnEntity)
+         {
+            // Proxy classes are not part of the metamodel; continue with the class they extend.
+         }
+      }
+      throw new IllegalArgumentException("Not an entity: " + entity.getClass().getName());
+   }
+
+   /**
+    * Returns the name of this command, reported to {@link DatabaseMetrics}.
+    *
+    * @return the name of the factory method creating this command, e.g. {@code createAll}
+    */
+   String operationName()
+   {
+      return operation.name().toLowerCase(Locale.ROOT) + "All";
+   }
+
+   private static int flushAndClear(EntityManager entityManager, int pending)
+   {
+      entityManager.flush();
+      entityManager.clear();
+      return pending;
+   }
+
+   /**
+    * Operation applied to every entity of a batch.
+    */
+   private enum Operation
+   {
+      CREATE
+            {
+               @Override
+               void apply(EntityManager entityManager, Object entity)
+               {
+                  entityManager.persist(entity);
+               }
+            },
+      UPDATE
+            {
+               @Override
+               void apply(EntityManager entityManager, Object entity)
+               {
+                  entityManager.merge(entity);
+               }
+            },
+      REMOVE
+            {
+               /**
+                * Entities of earlier batches are detached by the time they are removed, so detached entities are
+                * replaced by references, which does not load them.
+                */
+               @Override
+               void apply(EntityManager entityManager, Object entity)
+               {
+                  if (entityManager.contains(entity))
+                  {
+                     entityManager.remove(entity);
+                     return;
+                  }
+                  Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+                  Class<?> entityType = entityTypeOf(entityManager.getMetamodel(), entity);
+                  entityManager.remove(entityManager.getReference(entityType, id));
+               }
+            };
+
+      abstract void apply(EntityManager entityManager, Object entity);
+   }
+}
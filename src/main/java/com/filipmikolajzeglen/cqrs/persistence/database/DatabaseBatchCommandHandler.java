@@ -0,0 +1,88 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.Set;
+
+import com.filipmikolajzeglen.cqrs.core.CommandHandler;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.Metamodel;
+
+/**
+ * Handles execution of {@link DatabaseBatchCommand} using an {@link EntityManager}.
+ * <p>
+ * After every successful command, the given {@link EntityChangeListener} is notified of each type of the command's
+ * entities once the surrounding transaction commits, as reported by the given {@link AfterCommit} hook. Failed
+ * commands notify no one.
+ * </p>
+ * <p>
+ * Commands are measured by the given {@link DatabaseMetrics}, with the number of processed entities as rows.
+ * </p>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class DatabaseBatchCommandHandler<ENTITY> implements CommandHandler<DatabaseBatchCommand<ENTITY>, BatchResult>
+{
+   private final EntityManager entityManager;
+   private final EntityChangeListener changeListener;
+   private final AfterCommit afterCommit;
+   private final DatabaseMetrics metrics;
+
+   /**
+    * Creates a handler notifying no one of changes.
+    *
+    * @param entityManager the entity manager
+    */
+   public DatabaseBatchCommandHandler(EntityManager entityManager)
+   {
+      this(entityManager, EntityChangeListener.none(), AfterCommit.immediately());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    */
+   public DatabaseBatchCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit)
+   {
+      this(entityManager, changeListener, afterCommit, DatabaseMetrics.none());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed and measuring every command.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    * @param metrics        the metrics receiving a measurement of every successful command
+    */
+   public DatabaseBatchCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit, DatabaseMetrics metrics)
+   {
+      this.entityManager = entityManager;
+      this.changeListener = changeListener;
+      this.afterCommit = afterCommit;
+      this.metrics = metrics;
+   }
+
+   /**
+    * Handles the given batch command.
+    *
+    * @param command the command to handle
+    * @return the number of entities processed in each batch
+    */
+   @Override
+   public BatchResult handle(DatabaseBatchCommand<ENTITY> command)
+   {
+      long start = System.nanoTime();
+      BatchResult result = command.execute(entityManager);
+      Metamodel metamodel = entityManager.getMetamodel();
+      metrics.commandExecuted(new CommandMeasurement(command.changedEntityType(metamodel), command.operationName(),
+            Duration.ofNanos(System.nanoTime() - start), result.getTotalCount()));
+      Set<Class<?>> changedEntityTypes = command.changedEntityTypes(metamodel);
+      afterCommit.register(() -> changedEntityTypes.forEach(changeListener::entitiesChanged));
+      return result;
+   }
+}
@@ -0,0 +1,237 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+
+/**
+ * Collects lookups of single entities by id and loads each batch of them with one query.
+ * <p>
+ * Instead of running one query per id, callers {@link #load(Object) load} ids and receive future entities. Pending ids
+ * are loaded together with a single {@link PropertyBuilder#in} query, when {@link #dispatch()} is called, when the
+ * batch reaches its maximum size, or when the batch window configured by {@link Builder#window} has passed since the
+ * first id of the batch. Loading the same id twice in one batch returns the same future.
+ * </p>
+ * <p>
+ * Batches are loaded on the thread dispatching them: the caller of {@link #dispatch()} or {@link #load(Object)}, or
+ * the scheduler of the batch window. The query handler must be usable from that thread. Loaded entities are not
+ * cached between batches.
+ * </p>
+ *
+ * <pre>{@code
+ * DatabaseBatchLoader<Customer, Long> customers =
+ *       DatabaseBatchLoader.builder(queryHandler, Customer.class, Customer::getId).build();
+ * CompletableFuture<Customer> first = customers.load(1L);
+ * CompletableFuture<Customer> second = customers.load(2L);
+ * customers.dispatch(); // where id in (1, 2)
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ * @param <ID>     the id type
+ */
+public final class DatabaseBatchLoader<ENTITY, ID>
+{
+   /**
+    * Default maximum number of ids loaded by one query, which fit into a single {@code in} list.
+    */
+   public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+
+   private final QueryHandler<DatabaseQuery<ENTITY>, ENTITY> queryHandler;
+   private final Class<ENTITY> entityType;
+   private final PropertyBuilder.Getter<ENTITY, ID> id;
+   private final int maxBatchSize;
+   private final Duration window;
+   private final ScheduledExecutorService scheduler;
+
+   /**
+    * Futures of the ids waiting for the next batch, guarded by this loader.
+    */
+   private Map<ID, CompletableFuture<ENTITY>> pending = new LinkedHashMap<>();
+
+   private DatabaseBatchLoader(QueryHandler<DatabaseQuery<ENTITY>, ENTITY> queryHandler, Class<ENTITY> entityType,
+         PropertyBuilder.Getter<ENTITY, ID> id, int maxBatchSize, Duration window, ScheduledExecutorService scheduler)
+   {
+      this.queryHandler = queryHandler;
+      this.entityType = entityType;
+      this.id = id;
+      this.maxBatchSize = maxBatchSize;
+      this.window = window;
+      this.scheduler = scheduler;
+   }
+
+   /**
+    * Creates a new builder for a loader of the given entity type.
+    *
+    * @param queryHandler the handler running the batch queries
+    * @param entityType   the entity class
+    * @param id           the getter method reference of the id
+    * @param <ENTITY>     the entity type
+    * @param <ID>         the id type
+    * @return a new builder
+    */
+   public static <ENTITY, ID> Builder<ENTITY, ID> builder(QueryHandler<DatabaseQuery<ENTITY>, ENTITY> queryHandler,
+         Class<ENTITY> entityType, PropertyBuilder.Getter<ENTITY, ID> id)
+   {
+      return new Builder<>(queryHandler, entityType, id);
+   }
+
+   /**
+    * Adds the given id to the next batch.
+    *
+    * @param id the id of the entity
+    * @return the future entity, completed with null if no entity has the id, or exceptionally if the batch query fails
+    */
+   public CompletableFuture<ENTITY> load(ID id)
+   {
+      Objects.requireNonNull(id, "id");
+      Map<ID, CompletableFuture<ENTITY>> full = null;
+      CompletableFuture<ENTITY> entity;
+      synchronized (this)
+      {
+         entity = pending.get(id);
+         if (entity != null)
+         {
+            return entity;
+         }
+         entity = new CompletableFuture<>();
+         pending.put(id, entity);
+         if (pending.size() >= maxBatchSize)
+         {
+            full = takePending();
+         }
+         else if (pending.size() == 1 && window != null)
+         {
+            scheduler.schedule(this::dispatch, window.toNanos(), TimeUnit.NANOSECONDS);
+         }
+      }
+      if (full != null)
+      {
+         loadBatch(full);
+      }
+      return entity;
+   }
+
+   /**
+    * Loads all pending ids with one query. Does nothing if no ids are pending.
+    */
+   public void dispatch()
+   {
+      Map<ID, CompletableFuture<ENTITY>> batch;
+      synchronized (this)
+      {
+         batch = takePending();
+      }
+      loadBatch(batch);
+   }
+
+   private Map<ID, CompletableFuture<ENTITY>> takePending()
+   {
+      Map<ID, CompletableFuture<ENTITY>> batch = pending;
+      pending = new LinkedHashMap<>();
+      return batch;
+   }
+
+   private void loadBatch(Map<ID, CompletableFuture<ENTITY>> batch)
+   {
+      if (batch.isEmpty())
+      {
+         return;
+      }
+      try
+      {
+         DatabaseQuery<ENTITY> query = DatabaseQuery.builder(entityType)
+               .property(id).in(new ArrayList<>(batch.keySet()))
+               .build();
+         List<ENTITY> entities = queryHandler.handle(query, ResultStrategy.all());
+         Map<ID, ENTITY> entitiesById = new HashMap<>();
+         for (ENTITY entity : entities)
+         {
+            entitiesById.put(id.get(entity), entity);
+         }
+         batch.forEach((key, entity) -> entity.complete(entitiesById.get(key)));
+      }
+      catch (RuntimeException e)
+      {
+         batch.values().forEach(entity -> entity.completeExceptionally(e));
+      }
+   }
+
+   /**
+    * Builder for {@link DatabaseBatchLoader}.
+    *
+    * @param <ENTITY> the entity type
+    * @param <ID>     the id type
+    */
+   public static final class Builder<ENTITY, ID>
+   {
+      private final QueryHandler<DatabaseQuery<ENTITY>, ENTITY> queryHandler;
+      private final Class<ENTITY> entityType;
+      private final PropertyBuilder.Getter<ENTITY, ID> id;
+      private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+      private Duration window;
+      private ScheduledExecutorService scheduler;
+
+      public Builder(QueryHandler<DatabaseQuery<ENTITY>, ENTITY> queryHandler, Class<ENTITY> entityType,
+            PropertyBuilder.Getter<ENTITY, ID> id)
+      {
+         this.queryHandler = queryHandler;
+         this.entityType = entityType;
+         this.id = id;
+      }
+
+      /**
+       * Sets the maximum number of ids loaded by one query. A batch reaching this size is loaded immediately, on the
+       * thread adding its last id.
+       *
+       * @param maxBatchSize the maximum batch size
+       * @return this builder
+       * @throws IllegalArgumentException if the size is not positive or exceeds the {@value InList#MAXIMUM_VALUES}
+       *       values of one {@code in} restriction
+       */
+      public Builder<ENTITY, ID> maxBatchSize(int maxBatchSize)
+      {
+         if (maxBatchSize < 1 || maxBatchSize > InList.MAXIMUM_VALUES)
+         {
+            throw new IllegalArgumentException("Maximum batch size must be between 1 and " + InList.MAXIMUM_VALUES
+                  + ", was " + maxBatchSize);
+         }
+         this.maxBatchSize = maxBatchSize;
+         return this;
+      }
+
+      /**
+       * Loads every batch automatically once the given time has passed since its first id was added. Without a
+       * window, batches are only loaded by {@link DatabaseBatchLoader#dispatch()} or when they are full.
+       *
+       * @param window    how long a batch collects ids
+       * @param scheduler the scheduler loading the batches
+       * @return this builder
+       */
+      public Builder<ENTITY, ID> window(Duration window, ScheduledExecutorService scheduler)
+      {
+         this.window = Objects.requireNonNull(window, "window");
+         this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+         return this;
+      }
+
+      /**
+       * Builds the {@link DatabaseBatchLoader} instance.
+       *
+       * @return the batch loader
+       */
+      public DatabaseBatchLoader<ENTITY, ID> build()
+      {
+         return new DatabaseBatchLoader<>(queryHandler, entityType, id, maxBatchSize, window, scheduler);
+      }
+   }
+}
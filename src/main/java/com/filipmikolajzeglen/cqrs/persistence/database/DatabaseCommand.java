@@ -2,6 +2,7 @@ package com.filipmikolajzeglen.cqrs.persistence.database;
 
 import com.filipmikolajzeglen.cqrs.core.Command;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.Metamodel;
 
 /**
  * Represents a database command that can be executed using an {@link EntityManager}.
@@ -18,6 +19,28 @@ public abstract class DatabaseCommand<ENTITY> extends Command<ENTITY>
     */
    public abstract ENTITY execute(EntityManager entityManager);
 
+   /**
+    * Returns the type of entities changed by this command, reported to {@link EntityChangeListener}. Commands with
+    * unknown effects report {@code Object.class}.
+    *
+    * @param metamodel the metamodel resolving the entity types of proxies
+    * @return the changed entity type
+    */
+   Class<?> changedEntityType(Metamodel metamodel)
+   {
+      return Object.class;
+   }
+
+   /**
+    * Returns the name of this command, reported to {@link DatabaseMetrics}.
+    *
+    * @return the name of the command
+    */
+   String operationName()
+   {
+      return "custom";
+   }
+
    /**
     * Creates a command for persisting a new entity.
     *
@@ -41,6 +64,18 @@ public abstract class DatabaseCommand<ENTITY> extends Command<ENTITY>
          this.entity = entity;
       }
 
+      @Override
+      String operationName()
+      {
+         return "create";
+      }
+
+      @Override
+      Class<?> changedEntityType(Metamodel metamodel)
+      {
+         return DatabaseBatchCommand.entityTypeOf(metamodel, entity);
+      }
+
       @Override
       public ENTITY execute(EntityManager entityManager)
       {
@@ -72,6 +107,18 @@ public abstract class DatabaseCommand<ENTITY> extends Command<ENTITY>
          this.entity = entity;
       }
 
+      @Override
+      String operationName()
+      {
+         return "update";
+      }
+
+      @Override
+      Class<?> changedEntityType(Metamodel metamodel)
+      {
+         return DatabaseBatchCommand.entityTypeOf(metamodel, entity);
+      }
+
       @Override
       public ENTITY execute(EntityManager entityManager)
       {
@@ -102,6 +149,18 @@ public abstract class DatabaseCommand<ENTITY> extends Command<ENTITY>
          this.entity = entity;
       }
 
+      @Override
+      String operationName()
+      {
+         return "remove";
+      }
+
+      @Override
+      Class<?> changedEntityType(Metamodel metamodel)
+      {
+         return DatabaseBatchCommand.entityTypeOf(metamodel, entity);
+      }
+
       @Override
       public ENTITY execute(EntityManager entityManager)
       {
@@ -125,6 +184,12 @@ public abstract class DatabaseCommand<ENTITY> extends Command<ENTITY>
     */
    public static class Flush<ENTITY> extends DatabaseCommand<ENTITY>
    {
+      @Override
+      String operationName()
+      {
+         return "flush";
+      }
+
       @Override
       public ENTITY execute(EntityManager entityManager)
       {
@@ -1,18 +1,70 @@
 package com.filipmikolajzeglen.cqrs.persistence.database;
 
+import java.time.Duration;
+
 import com.filipmikolajzeglen.cqrs.core.CommandHandler;
 import jakarta.persistence.EntityManager;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Handles execution of {@link DatabaseCommand} using an {@link EntityManager}.
+ * <p>
+ * After every successful command, the given {@link EntityChangeListener} is notified of the changed entity type once
+ * the surrounding transaction commits, as reported by the given {@link AfterCommit} hook. Failed commands notify no
+ * one.
+ * </p>
+ * <p>
+ * Commands are measured by the given {@link DatabaseMetrics}; a command returning an entity counts as one affected
+ * row.
+ * </p>
  *
  * @param <ENTITY> the entity type
  */
-@RequiredArgsConstructor
 public class DatabaseCommandHandler<ENTITY> implements CommandHandler<DatabaseCommand<ENTITY>, ENTITY>
 {
    private final EntityManager entityManager;
+   private final EntityChangeListener changeListener;
+   private final AfterCommit afterCommit;
+   private final DatabaseMetrics metrics;
+
+   /**
+    * Creates a handler notifying no one of changes.
+    *
+    * @param entityManager the entity manager
+    */
+   public DatabaseCommandHandler(EntityManager entityManager)
+   {
+      this(entityManager, EntityChangeListener.none(), AfterCommit.immediately());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    */
+   public DatabaseCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit)
+   {
+      this(entityManager, changeListener, afterCommit, DatabaseMetrics.none());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed and measuring every command.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    * @param metrics        the metrics receiving a measurement of every successful command
+    */
+   public DatabaseCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit, DatabaseMetrics metrics)
+   {
+      this.entityManager = entityManager;
+      this.changeListener = changeListener;
+      this.afterCommit = afterCommit;
+      this.metrics = metrics;
+   }
 
    /**
     * Handles the given database command.
@@ -23,6 +75,12 @@ public class DatabaseCommandHandler<ENTITY> implements CommandHandler<DatabaseCo
    @Override
    public ENTITY handle(DatabaseCommand<ENTITY> command)
    {
-      return command.execute(entityManager);
+      long start = System.nanoTime();
+      ENTITY result = command.execute(entityManager);
+      Class<?> changedEntityType = command.changedEntityType(entityManager.getMetamodel());
+      metrics.commandExecuted(new CommandMeasurement(changedEntityType, command.operationName(),
+            Duration.ofNanos(System.nanoTime() - start), result == null ? 0 : 1));
+      afterCommit.register(() -> changeListener.entitiesChanged(changedEntityType));
+      return result;
    }
-}
\ No newline at end of file
+}
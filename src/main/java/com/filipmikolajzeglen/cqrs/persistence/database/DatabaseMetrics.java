@@ -0,0 +1,43 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+/**
+ * Receives measurements of the queries and commands executed by the handlers of this module.
+ * <p>
+ * Implementations adapt measurements to a metrics library, e.g.
+ * {@link com.filipmikolajzeglen.cqrs.persistence.database.micrometer.MicrometerDatabaseMetrics}. They are called on
+ * the thread executing the query or command, right after it completes successfully, so they must be thread-safe and
+ * fast. Failed executions are not measured.
+ * </p>
+ */
+public interface DatabaseMetrics
+{
+   /**
+    * Called after a query completes.
+    *
+    * @param measurement the measurement of the query
+    */
+   default void queryExecuted(QueryMeasurement measurement)
+   {
+   }
+
+   /**
+    * Called after a command completes.
+    *
+    * @param measurement the measurement of the command
+    */
+   default void commandExecuted(CommandMeasurement measurement)
+   {
+   }
+
+   /**
+    * Returns metrics ignoring all measurements.
+    *
+    * @return the no-op metrics
+    */
+   static DatabaseMetrics none()
+   {
+      return new DatabaseMetrics()
+      {
+      };
+   }
+}
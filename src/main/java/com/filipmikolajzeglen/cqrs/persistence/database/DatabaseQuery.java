@@ -2,28 +2,56 @@ package com.filipmikolajzeglen.cqrs.persistence.database;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import com.filipmikolajzeglen.cqrs.core.Query;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Metamodel;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Represents a database query with restrictions for a specific entity type.
+ * <p>
+ * Queries are immutable and can be shared between threads. Queries built from {@link PropertyBuilder} restrictions
+ * and groups of them are equal if they restrict the same properties with the same operators and values, and fetch the
+ * same associations. Restrictions added through {@link Builder#withRestriction} are only equal to themselves.
+ * </p>
+ * <p>
+ * A query is translated into a single statement, so the values of its restrictions, including the padded values of
+ * {@code in} lists, must fit into the {@value InList#MAXIMUM_PARAMETERS} bind parameters PostgreSQL allows per
+ * statement. Building a query exceeding the limit fails with an {@link IllegalArgumentException}.
+ * </p>
  *
  * @param <ENTITY> the entity type
  */
 @Getter
-@RequiredArgsConstructor
 public class DatabaseQuery<ENTITY> extends Query<ENTITY> implements ConstrainingQuery<ENTITY>
 {
    private final Class<ENTITY> entityType;
 
    private final List<Restriction<ENTITY>> restrictions;
 
+   @Getter(AccessLevel.NONE)
+   private final List<FetchPath> fetches;
+
+   public DatabaseQuery(Class<ENTITY> entityType, List<Restriction<ENTITY>> restrictions, List<FetchPath> fetches)
+   {
+      this.entityType = entityType;
+      this.restrictions = List.copyOf(restrictions);
+      this.fetches = List.copyOf(fetches);
+      int parameters = countParameterValues(this.restrictions);
+      if (parameters > InList.MAXIMUM_PARAMETERS)
+      {
+         throw new IllegalArgumentException("A query binds at most " + InList.MAXIMUM_PARAMETERS
+               + " parameters in one statement, was " + parameters + "; query larger sets of values in batches");
+      }
+   }
+
    /**
     * Converts the query restrictions to an array of JPA predicates.
     *
@@ -39,6 +67,161 @@ public class DatabaseQuery<ENTITY> extends Query<ENTITY> implements Constraining
             .toArray(Predicate[]::new);
    }
 
+   /**
+    * Adds the fetch joins of this query to the given root.
+    *
+    * @param root the root entity
+    */
+   void applyFetches(Root<ENTITY> root)
+   {
+      fetches.forEach(fetch -> fetch.applyTo(root));
+   }
+
+   /**
+    * Tells whether any fetch path loads a collection.
+    *
+    * @param metamodel the metamodel
+    * @return true if a fetch join multiplies result rows
+    */
+   boolean fetchesCollection(Metamodel metamodel)
+   {
+      return fetches.stream().anyMatch(fetch -> fetch.isCollection(metamodel, entityType));
+   }
+
+   /**
+    * Describes the fetch paths for query template keys.
+    *
+    * @return the names of the fetch paths
+    */
+   List<String> fetchShapes()
+   {
+      return fetches.stream()
+            .map(FetchPath::name)
+            .toList();
+   }
+
+   /**
+    * Tells whether all restrictions can be translated into parameterized predicates.
+    *
+    * @return true if the query consists only of property restrictions and groups of them
+    */
+   boolean isParameterizable()
+   {
+      return restrictions.stream().allMatch(Restriction::isParameterizable);
+   }
+
+   /**
+    * Converts the query restrictions to an array of JPA predicates whose values are replaced by parameters.
+    *
+    * @param cb         the criteria builder
+    * @param root       the root entity
+    * @param parameters the parameters of the query being compiled
+    * @return an array of parameterized predicates
+    * @throws IllegalStateException if the query is not {@link #isParameterizable() parameterizable}
+    */
+   Predicate[] toParameterizedRestrictions(CriteriaBuilder cb, Root<ENTITY> root, QueryParameters parameters)
+   {
+      return parameterizableRestrictions().stream()
+            .map(r -> r.toParameterizedPredicate(cb, root, parameters))
+            .toArray(Predicate[]::new);
+   }
+
+   /**
+    * Returns the values bound to the parameters of {@link #toParameterizedRestrictions}, in binding order.
+    *
+    * @return the parameter values
+    * @throws IllegalStateException if the query is not {@link #isParameterizable() parameterizable}
+    */
+   List<Object> parameterValues()
+   {
+      List<Object> values = new ArrayList<>();
+      parameterizableRestrictions().forEach(r -> r.collectParameterValues(values));
+      return values;
+   }
+
+   /**
+    * Returns the value-free shapes of the restrictions.
+    *
+    * @return the restriction shapes
+    * @throws IllegalStateException if the query is not {@link #isParameterizable() parameterizable}
+    */
+   List<String> restrictionShapes()
+   {
+      return parameterizableRestrictions().stream()
+            .map(Restriction::shape)
+            .toList();
+   }
+
+   /**
+    * Describes the restrictions for metric fingerprints. Unlike {@link #restrictionShapes()}, custom restrictions are
+    * supported; they all share the same description, since their predicates cannot be told apart before translation.
+    *
+    * @return the restriction shapes, with custom restrictions described as {@code custom}
+    */
+   List<String> restrictionDescriptions()
+   {
+      return restrictions.stream()
+            .map(Restriction::shape)
+            .toList();
+   }
+
+   /**
+    * Computes a short identifier of the shape of this query, equal for queries differing only in their values. It is
+    * the same in every JVM, so it can be logged or used as a metric tag.
+    * <p>
+    * Restrictions added through {@link Builder#withRestriction} all share the same shape, so queries differing only in
+    * such restrictions share the fingerprint.
+    * </p>
+    *
+    * @return the fingerprint, 16 hexadecimal digits
+    */
+   public String fingerprint()
+   {
+      return Fingerprint.of(List.of(entityType.getName(), restrictionDescriptions(), fetchShapes()));
+   }
+
+   @Override
+   public boolean equals(Object o)
+   {
+      if (this == o)
+      {
+         return true;
+      }
+      if (!(o instanceof DatabaseQuery<?> other))
+      {
+         return false;
+      }
+      return entityType == other.entityType
+            && restrictions.equals(other.restrictions)
+            && fetches.equals(other.fetches);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return Objects.hash(entityType, restrictions, fetches);
+   }
+
+   /**
+    * Counts the values of the restrictions built by {@link PropertyBuilder}, including those combined with custom
+    * restrictions, which are bound as parameters whether or not the query is parameterized.
+    */
+   private static <ENTITY> int countParameterValues(List<Restriction<ENTITY>> restrictions)
+   {
+      List<Object> values = new ArrayList<>();
+      restrictions.forEach(r -> r.collectParameterValues(values));
+      return values.size();
+   }
+
+      private List<Restriction<ENTITY>> parameterizableRestrictions()
+   {
+      if (!isParameterizable())
+      {
+         throw new IllegalStateException("Query contains custom restrictions and cannot be parameterized");
+      }
+      return restrictions;
+   }
+
    /**
     * Creates a new builder for the given entity type.
     *
@@ -60,6 +243,7 @@ public class DatabaseQuery<ENTITY> extends Query<ENTITY> implements Constraining
    {
       private final Class<ENTITY> entityType;
       private final List<Restriction<ENTITY>> restrictions = new ArrayList<>();
+      private final List<FetchPath> fetches = new ArrayList<>();
 
       public Builder(Class<ENTITY> entityType)
       {
@@ -103,6 +287,107 @@ public class DatabaseQuery<ENTITY> extends Query<ENTITY> implements Constraining
          return this;
       }
 
+      /**
+       * Adds a group of restrictions of which all must match. Inside {@link #anyOf} this expresses an alternative
+       * of several conditions.
+       *
+       * @param group adds the restrictions of the group to the given builder
+       * @return this builder
+       */
+      public Builder<ENTITY> allOf(Consumer<Builder<ENTITY>> group)
+      {
+         return addGroup(RestrictionGroup.Junction.ALL_OF, group, false);
+      }
+
+      /**
+       * Adds a group of restrictions of which at least one must match.
+       * <p>
+       * The group is simplified before translation: restrictions skipped by {@link PropertyBuilder#optionally()}
+       * leave no empty alternatives behind, and several {@code equalTo} or {@code in} restrictions on the same
+       * property are merged into a single {@code in} restriction.
+       * </p>
+       *
+       * <pre>{@code
+       * DatabaseQuery<Order> query = DatabaseQuery.builder(Order.class)
+       *       .anyOf(status -> status
+       *             .property(Order::getStatus).equalTo(OPEN)
+       *             .property(Order::getStatus).equalTo(PENDING))
+       *       .build(); // where status in (OPEN, PENDING)
+       * }</pre>
+       *
+       * @param group adds the restrictions of the group to the given builder
+       * @return this builder
+       */
+      public Builder<ENTITY> anyOf(Consumer<Builder<ENTITY>> group)
+      {
+         return addGroup(RestrictionGroup.Junction.ANY_OF, group, false);
+      }
+
+      /**
+       * Adds a group of restrictions of which none may match.
+       *
+       * @param group adds the restrictions of the group to the given builder
+       * @return this builder
+       */
+      public Builder<ENTITY> noneOf(Consumer<Builder<ENTITY>> group)
+      {
+         return addGroup(RestrictionGroup.Junction.ANY_OF, group, true);
+      }
+
+      /**
+       * Loads the given association together with the queried entities through a fetch join, avoiding one lazy
+       * load per entity.
+       *
+       * @param association the getter method reference of the association
+       * @return this builder
+       */
+      public Builder<ENTITY> fetch(PropertyBuilder.Getter<ENTITY, ?> association)
+      {
+         fetches.add(FetchPath.of(PropertyNameCache.propertyNameOf(association)));
+         return this;
+      }
+
+      /**
+       * Loads the given association path together with the queried entities through fetch joins, avoiding one lazy
+       * load per entity.
+       *
+       * @param associationPath the association path, nested associations separated by dots
+       * @return this builder
+       */
+      public Builder<ENTITY> fetch(String associationPath)
+      {
+         fetches.add(FetchPath.of(associationPath));
+         return this;
+      }
+
+      /**
+       * Adds a restriction to the query.
+       *
+       * @param restriction the restriction
+       * @return this builder
+       */
+      Builder<ENTITY> addRestriction(Restriction<ENTITY> restriction)
+      {
+         restrictions.add(restriction);
+         return this;
+      }
+
+      /**
+       * Collects the restrictions of a group in a nested builder and adds the simplified group, unless it is empty.
+       * Fetches added in the group apply to the whole query.
+       */
+      private Builder<ENTITY> addGroup(RestrictionGroup.Junction junction, Consumer<Builder<ENTITY>> group,
+            boolean negated)
+      {
+         Builder<ENTITY> members = new Builder<>(entityType);
+         group.accept(members);
+         fetches.addAll(members.fetches);
+         RestrictionGroup.of(junction, members.restrictions)
+               .map(restriction -> negated ? restriction.negate() : restriction)
+               .ifPresent(restrictions::add);
+         return this;
+      }
+
       /**
        * Builds the {@link DatabaseQuery} instance.
        *
@@ -110,7 +395,8 @@ public class DatabaseQuery<ENTITY> extends Query<ENTITY> implements Constraining
        */
       public DatabaseQuery<ENTITY> build()
       {
-         return new DatabaseQuery<>(entityType, restrictions);
+         return new DatabaseQuery<>(entityType,
+               RestrictionGroup.simplify(RestrictionGroup.Junction.ALL_OF, restrictions), List.copyOf(fetches));
       }
    }
 }
\ No newline at end of file
@@ -1,22 +1,35 @@
 package com.filipmikolajzeglen.cqrs.persistence.database;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.filipmikolajzeglen.cqrs.core.OrderedResultStrategy;
 import com.filipmikolajzeglen.cqrs.core.PagedResult;
 import com.filipmikolajzeglen.cqrs.core.QueryHandler;
 import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategyType;
 import com.filipmikolajzeglen.cqrs.core.ResultStrategyVisitor;
 import com.filipmikolajzeglen.cqrs.core.SliceResult;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
-import lombok.RequiredArgsConstructor;
+import jakarta.persistence.criteria.Selection;
 
 /**
  * Handles execution of {@link DatabaseQuery} using an {@link EntityManager} and supports various result strategies,
@@ -26,13 +39,83 @@ import lombok.RequiredArgsConstructor;
  * contains sort orders, those will be used to sort the results. Otherwise, results are sorted by the "id" property in
  * ascending order by default.
  * </p>
+ * <p>
+ * Deep pages of large tables can be fetched with {@link #handle(DatabaseQuery, KeysetPage)}, which seeks past the
+ * last row of the previous page instead of skipping rows with an offset.
+ * </p>
+ * <p>
+ * Read paths needing only some columns, or no dirty checking, can select a {@link Projection} with
+ * {@link #handle(DatabaseQuery, Projection, ResultStrategy)}.
+ * </p>
+ * <p>
+ * Large results can be consumed lazily with {@link #handle(DatabaseQuery, Streaming)}.
+ * </p>
+ * <p>
+ * Several count and exist queries can be answered in one round trip with {@link #handle(CountBatch)}. Counts of large
+ * tables can be estimated from database statistics with {@link #handle(DatabaseQuery, ApproximateCount)}.
+ * </p>
+ * <p>
+ * Associations declared with {@link DatabaseQuery.Builder#fetch} are loaded with the selected entities through fetch
+ * joins. When a collection is fetched for a page of results, the page of ids is selected first and the entities are
+ * loaded by id, so the database paginates rows instead of the persistence provider paginating in memory. Keyset pages
+ * and projections other than entities ignore fetch paths.
+ * </p>
+ * <p>
+ * Handlers created through {@link #builder(EntityManager)} can run in prepared query mode, where queries are compiled
+ * once per shape into parameterized templates held by a {@link QueryTemplateCache}, report measurements of every
+ * handled query to {@link DatabaseMetrics} and report slow queries to a {@link SlowQueryWatchdog}. Lazily consumed
+ * streams are not measured.
+ * </p>
  *
  * @param <ENTITY> the entity type
  */
-@RequiredArgsConstructor
 public class DatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<ENTITY>, ENTITY>
 {
+   private static final String COUNT_SELECTION = "count";
+   private static final String EXIST_SELECTION = "exist";
+   private static final String ID_SELECTION = "id";
+   private static final String KEYSET_OPERATION = "keyset";
+   private static final String COUNT_BATCH_OPERATION = "count batch";
+   private static final String APPROXIMATE_COUNT_OPERATION = "approximate count";
+
    private final EntityManager entityManager;
+   private final PreparationStrategy preparationStrategy;
+   private final TotalCountCache totalCountCache;
+   private final Supplier<QueryExecution> executions;
+   private final ApproximateCount approximateTotals;
+
+   /**
+    * Creates a handler building every query from scratch.
+    *
+    * @param entityManager the entity manager
+    */
+   public DatabaseQueryHandler(EntityManager entityManager)
+   {
+      this(entityManager, PreparationStrategy.DirectPreparation.INSTANCE, TotalCountCache.none(),
+            () -> QueryExecution.Unmeasured.INSTANCE, null);
+   }
+
+   private DatabaseQueryHandler(EntityManager entityManager, PreparationStrategy preparationStrategy,
+         TotalCountCache totalCountCache, Supplier<QueryExecution> executions, ApproximateCount approximateTotals)
+   {
+      this.entityManager = entityManager;
+      this.preparationStrategy = preparationStrategy;
+      this.totalCountCache = totalCountCache;
+      this.executions = executions;
+      this.approximateTotals = approximateTotals;
+   }
+
+   /**
+    * Creates a new builder for a handler using the given entity manager.
+    *
+    * @param entityManager the entity manager
+    * @param <ENTITY>      the entity type
+    * @return a new builder
+    */
+   public static <ENTITY> Builder<ENTITY> builder(EntityManager entityManager)
+   {
+      return new Builder<>(entityManager);
+   }
 
    /**
     * Handles the given database query with the specified result strategy and sorting.
@@ -48,205 +131,786 @@ public class DatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<
     */
    @Override
    public <RESULT> RESULT handle(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      return handle(query, Projection.entities(query.getEntityType()), resultStrategy);
+   }
+
+   /**
+    * Handles the given database query, selecting the given projection instead of managed entities.
+    * <p>
+    * All result strategies are supported and sorted like {@link #handle(DatabaseQuery, ResultStrategy)}. Sort orders
+    * refer to properties of the entity, whether selected or not.
+    * </p>
+    *
+    * @param query          the database query
+    * @param projection     what the query selects
+    * @param resultStrategy the result strategy over the selected elements
+    * @param <VIEW>         the type of selected elements
+    * @param <RESULT>       the result type
+    * @return the result (possibly sorted)
+    */
+   public <VIEW, RESULT> RESULT handle(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         ResultStrategy<VIEW, RESULT> resultStrategy)
+   {
+      CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+      QueryExecution execution = executions.get();
+      RESULT result = resultStrategy.accept(
+            new JpaResultStrategyVisitor<>(this, query, projection, criteriaBuilder, execution), null);
+      execution.complete(() -> shapeOf(query, operationOf(resultStrategy.getType()), selectionOf(query, projection),
+            OrderStrategy.of(resultStrategy).shape()));
+      return result;
+   }
+
+   /**
+    * Handles the given query using keyset pagination.
+    * <p>
+    * Rows are sorted by the sort orders of the page followed by "id" as a tiebreaker. When the page carries a
+    * continuation token, only rows sorted after the sort key values stored in the token are fetched, so the database
+    * seeks directly to the start of the page using an index on the sort keys.
+    * </p>
+    * <p>
+    * Sort keys must not be {@code null}, because rows with a {@code null} sort key cannot be positioned relative to
+    * the values of a token. A page fetching such a row fails; rows which the database sorts after the last non-null
+    * value are not matched by the seek of later pages at all, so they must be excluded by the query.
+    * </p>
+    *
+    * @param query the database query
+    * @param page  the requested page
+    * @return the page of results with the token of the next page
+    * @throws IllegalArgumentException if the token is malformed or was issued for different sort orders, or if a
+    *       sort key has a type which tokens cannot store, e.g. {@link java.util.Date}
+    * @throws IllegalStateException    if a sort key of a fetched row is {@code null}
+    */
+   public KeysetResult<ENTITY> handle(DatabaseQuery<ENTITY> query, KeysetPage page)
+   {
+      CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+      QueryExecution execution = executions.get();
+      OrderStrategy.SortKeyOrderStrategy<ENTITY> orderStrategy =
+            new OrderStrategy.SortKeyOrderStrategy<>(page.getSortKeys());
+      TypedQuery<Tuple> typedQuery =
+            execution.build(() -> createKeysetQuery(query, page, criteriaBuilder, orderStrategy));
+      List<Tuple> rows = execution.list(typedQuery.setMaxResults(page.getSize() + 1));
+      execution.complete(() -> shapeOf(query, KEYSET_OPERATION, Projection.entities(query.getEntityType()).shape(),
+            orderStrategy.shape()));
+      rows.forEach(orderStrategy::requireKeyValues);
+
+      boolean hasNext = rows.size() > page.getSize();
+      List<Tuple> pageRows = hasNext ? rows.subList(0, page.getSize()) : rows;
+      List<ENTITY> content = pageRows.stream()
+            .map(row -> row.get(0, query.getEntityType()))
+            .toList();
+      String nextToken = hasNext
+            ? KeysetToken.encode(orderStrategy.shape(), orderStrategy.keyValues(pageRows.get(pageRows.size() - 1)))
+            : null;
+      return new KeysetResult<>(content, nextToken, page);
+   }
+
+   private TypedQuery<Tuple> createKeysetQuery(DatabaseQuery<ENTITY> query, KeysetPage page,
+         CriteriaBuilder criteriaBuilder, OrderStrategy.SortKeyOrderStrategy<ENTITY> orderStrategy)
+   {
+      CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+      Root<ENTITY> root = criteriaQuery.from(query.getEntityType());
+      List<Path<?>> keys = orderStrategy.keyPaths(root);
+      List<Selection<?>> selections = new ArrayList<>();
+      selections.add(root);
+      selections.addAll(keys);
+
+      List<Predicate> predicates = new ArrayList<>(List.of(query.toRestrictions(criteriaBuilder, root)));
+      page.getToken()
+            .map(token -> KeysetToken.decode(token, orderStrategy.shape(), keyTypes(keys)))
+            .ifPresent(lastValues -> predicates.add(orderStrategy.seekPredicate(criteriaBuilder, keys, lastValues)));
+
+      criteriaQuery.multiselect(selections)
+            .where(predicates.toArray(Predicate[]::new))
+            .orderBy(orderStrategy.buildOrders(root, criteriaBuilder));
+      return entityManager.createQuery(criteriaQuery);
+   }
+
+   /**
+    * Handles the given query by streaming its results.
+    * <p>
+    * Results are sorted by the sort orders of the streaming request followed by "id". Rows are fetched in chunks of
+    * the fetch size while the stream is consumed. The stream holds an open cursor until it is closed.
+    * </p>
+    * <p>
+    * With a {@link Streaming#clearingEvery(int) clear interval}, the persistence context is cleared before the row
+    * following every interval of streamed entities is read, so each entity is still managed when the consumer receives
+    * it. Clearing detaches every entity of the entity manager, including those the caller loaded before or alongside
+    * the stream, and discards their unflushed changes; callers must flush their own changes before streaming.
+    * </p>
+    *
+    * @param query     the database query
+    * @param streaming the streaming request
+    * @return the lazily consumed stream of results, which must be closed
+    */
+   public Stream<ENTITY> handle(DatabaseQuery<ENTITY> query, Streaming streaming)
+   {
+      CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+      TypedQuery<ENTITY> typedQuery = createSelectionQuery(query, Projection.entities(query.getEntityType()),
+            criteriaBuilder, new OrderStrategy.SortKeyOrderStrategy<>(streaming.getSortKeys()));
+      typedQuery.setHint(Streaming.FETCH_SIZE_HINT, streaming.getFetchSize());
+      Stream<ENTITY> results = typedQuery.getResultStream();
+      if (streaming.getClearInterval() == 0)
+      {
+         return results;
+      }
+      Iterator<ENTITY> clearing = new ClearingIterator<>(results.iterator(), entityManager,
+            streaming.getClearInterval());
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(clearing, Spliterator.ORDERED), false)
+            .onClose(results::close);
+   }
+
+   /**
+    * Handles a batch of count and exist queries with a single statement.
+    *
+    * @param batch the batch of queries
+    * @return a {@link Long} for every count query and a {@link Boolean} for every exist query, in the order of the
+    *       queries
+    */
+   public List<Object> handle(CountBatch<ENTITY> batch)
+   {
+      if (batch.isEmpty())
+      {
+         return List.of();
+      }
+      CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+      QueryExecution execution = executions.get();
+      TypedQuery<Tuple> typedQuery = execution.build(() -> createCountBatchQuery(batch, criteriaBuilder));
+      Tuple row = execution.single(typedQuery);
+      execution.complete(() -> new QueryShape(batch.getEntityType(), COUNT_BATCH_OPERATION, COUNT_SELECTION,
+            batch.describe(), List.of()));
+      return batch.results(row);
+   }
+
+   /**
+    * Counts the rows matching the given query approximately, using database statistics.
+    *
+    * @param query            the database query
+    * @param approximateCount the approximate count request
+    * @return the estimated number of matching rows, or the exact one if the estimate is below the exact threshold
+    */
+   public long handle(DatabaseQuery<ENTITY> query, ApproximateCount approximateCount)
    {
       CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-      return resultStrategy.accept(new JpaResultStrategyVisitor<>(this, query, criteriaBuilder), null);
+      QueryExecution execution = executions.get();
+      long count = countApproximately(query, criteriaBuilder, approximateCount, execution);
+      execution.complete(() -> shapeOf(query, APPROXIMATE_COUNT_OPERATION, COUNT_SELECTION, List.of()));
+      return count;
+   }
+
+   private long countApproximately(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder,
+         ApproximateCount approximateCount, QueryExecution execution)
+   {
+      RowEstimator estimator = approximateCount.getEstimator();
+      OptionalLong estimate = query.getRestrictions().isEmpty()
+            ? estimator.estimateTable(entityManager, query.getEntityType())
+            : estimator.estimateQuery(entityManager, execution.build(() -> createIdQuery(query, criteriaBuilder)));
+      if (estimate.isPresent() && estimate.getAsLong() >= approximateCount.getExactThreshold())
+      {
+         return estimate.getAsLong();
+      }
+      return handleCount(query, criteriaBuilder, execution);
+   }
+
+   private TypedQuery<Tuple> createCountBatchQuery(CountBatch<ENTITY> batch, CriteriaBuilder criteriaBuilder)
+   {
+      CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+      Root<ENTITY> root = criteriaQuery.from(batch.getEntityType());
+      criteriaQuery.multiselect(batch.selections(criteriaBuilder, root))
+            .where(batch.filter(criteriaBuilder, root));
+      return entityManager.createQuery(criteriaQuery);
+   }
+
+   private static String operationOf(ResultStrategyType type)
+   {
+      return type.name().toLowerCase(Locale.ROOT);
+   }
+
+   /**
+    * Describes the shape of a query. Called from the shape suppliers passed to {@link QueryExecution#complete}, so
+    * that it is computed only if the query is measured.
+    */
+   private static QueryShape shapeOf(DatabaseQuery<?> query, String operation, String selection, List<String> orders)
+   {
+      return new QueryShape(query.getEntityType(), operation, selection, query.restrictionDescriptions(), orders);
+   }
+
+   private static List<Class<?>> keyTypes(List<Path<?>> keys)
+   {
+      List<Class<?>> types = new ArrayList<>(keys.size());
+      for (Path<?> key : keys)
+      {
+         types.add(key.getJavaType());
+      }
+      return types;
+   }
+
+   /**
+    * Probes for a single matching id instead of counting, so the database can stop at the first matching row.
+    */
+   private Boolean handleExist(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder, QueryExecution execution)
+   {
+      TypedQuery<Object> existQuery = execution.build(() -> createIdQuery(query, criteriaBuilder));
+      return !execution.list(existQuery.setMaxResults(1)).isEmpty();
+   }
+
+   /**
+    * Creates an unsorted query selecting the ids of matching entities.
+    */
+   private TypedQuery<Object> createIdQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   {
+      return preparationStrategy.createQuery(entityManager, query, criteriaBuilder, EXIST_SELECTION, List.of(),
+            restrictions -> buildExistQuery(query, criteriaBuilder, restrictions));
    }
 
-   private Boolean handleExist(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   private CriteriaQuery<Object> buildExistQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder,
+         Function<Root<ENTITY>, Predicate[]> restrictions)
    {
-      CriteriaQuery<Long> countQuery = buildCountQuery(query, criteriaBuilder);
-      Long count = entityManager.createQuery(countQuery).setMaxResults(1).getSingleResult();
-      return count > 0;
+      CriteriaQuery<Object> existQuery = criteriaBuilder.createQuery();
+      Root<ENTITY> root = existQuery.from(query.getEntityType());
+      existQuery.select(root.get("id")).where(restrictions.apply(root));
+      return existQuery;
    }
 
-   private Long handleCount(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   private Long handleCount(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder, QueryExecution execution)
    {
-      CriteriaQuery<Long> countQuery = buildCountQuery(query, criteriaBuilder);
-      return entityManager.createQuery(countQuery).getSingleResult();
+      return execution.single(execution.build(() -> createCountQuery(query, criteriaBuilder)));
    }
 
-   private CriteriaQuery<Long> buildCountQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   private TypedQuery<Long> createCountQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   {
+      return preparationStrategy.createQuery(entityManager, query, criteriaBuilder, COUNT_SELECTION, List.of(),
+            restrictions -> buildCountQuery(query, criteriaBuilder, restrictions));
+   }
+
+   private CriteriaQuery<Long> buildCountQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder,
+         Function<Root<ENTITY>, Predicate[]> restrictions)
    {
       CriteriaQuery<Long> countQuery = criteriaBuilder.createQuery(Long.class);
       Root<ENTITY> root = countQuery.from(query.getEntityType());
-      Predicate[] predicates = query.toRestrictions(criteriaBuilder, root);
+      Predicate[] predicates = restrictions.apply(root);
       countQuery.select(criteriaBuilder.count(root)).where(predicates);
       return countQuery;
    }
 
-   private <RESULT> RESULT handleFirst(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy,
-         CriteriaBuilder criteriaBuilder)
+   private <VIEW, RESULT> RESULT handleFirst(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         ResultStrategy<VIEW, RESULT> resultStrategy, CriteriaBuilder criteriaBuilder, QueryExecution execution)
    {
-      CriteriaQuery<ENTITY> criteriaQuery = buildCriteriaQuery(query, criteriaBuilder, resultStrategy);
-      TypedQuery<ENTITY> typedQuery = entityManager.createQuery(criteriaQuery);
-      typedQuery.setFirstResult(0);
-      typedQuery.setMaxResults(1);
-      List<ENTITY> results = typedQuery.getResultList();
+      List<VIEW> results = select(query, projection, criteriaBuilder, OrderStrategy.of(resultStrategy),
+            new Window(0, 1), execution);
       return resultStrategy.expand(results);
    }
 
-   private PagedResult<ENTITY> handlePaged(DatabaseQuery<ENTITY> query,
-         ResultStrategy<ENTITY, PagedResult<ENTITY>> resultStrategy, CriteriaBuilder cb)
+   private <VIEW> PagedResult<VIEW> handlePaged(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         ResultStrategy<VIEW, PagedResult<VIEW>> resultStrategy, CriteriaBuilder cb, QueryExecution execution)
    {
-      CriteriaQuery<ENTITY> criteriaQuery = buildCriteriaQuery(query, cb, resultStrategy);
-      TypedQuery<ENTITY> typedQuery = entityManager.createQuery(criteriaQuery);
       int result = resultStrategy.getPage();
       int size = resultStrategy.getSize();
-      typedQuery.setFirstResult(result * size);
-      typedQuery.setMaxResults(size);
-      List<ENTITY> results = typedQuery.getResultList();
-      long totalCount = countTotal(query, cb);
+      List<VIEW> results = select(query, projection, cb, OrderStrategy.of(resultStrategy),
+            new Window(result * size, size), execution);
+      long totalCount = countTotal(query, cb, result, size, results.size(), execution);
       int totalPages = size == 0 ? 0 : (int) Math.ceil((double) totalCount / size);
       return new PagedResult<>(results, result, size, (int) totalCount, totalPages);
    }
 
-   private long countTotal(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder)
+   /**
+    * Determines the total count for a page. A page shorter than the page size is the last one, so unless it is an
+    * empty page past the end, the total follows from its position and no count query is needed.
+    */
+   private long countTotal(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder, int page, int size,
+         int fetched, QueryExecution execution)
+   {
+      if (fetched < size && (fetched > 0 || page == 0))
+      {
+         return (long) page * size + fetched;
+      }
+      if (!query.isParameterizable())
+      {
+         return countAll(query, criteriaBuilder, execution);
+      }
+      TotalCountCache.Key key =
+            new TotalCountCache.Key(query.getEntityType(), query.restrictionShapes(), query.parameterValues());
+      return totalCountCache.getOrCount(key, () -> countAll(query, criteriaBuilder, execution));
+   }
+
+   private long countAll(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder, QueryExecution execution)
    {
-      CriteriaQuery<Long> countQuery = buildCountQuery(query, criteriaBuilder);
-      return entityManager.createQuery(countQuery).getSingleResult();
+      return approximateTotals == null
+            ? handleCount(query, criteriaBuilder, execution)
+            : countApproximately(query, criteriaBuilder, approximateTotals, execution);
    }
 
-   private SliceResult<ENTITY> handleSlice(DatabaseQuery<ENTITY> query,
-         ResultStrategy<ENTITY, SliceResult<ENTITY>> resultStrategy, CriteriaBuilder cb)
+   private <VIEW> SliceResult<VIEW> handleSlice(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         ResultStrategy<VIEW, SliceResult<VIEW>> resultStrategy, CriteriaBuilder cb, QueryExecution execution)
    {
-      CriteriaQuery<ENTITY> criteriaQuery = buildCriteriaQuery(query, cb, resultStrategy);
-      TypedQuery<ENTITY> typedQuery = entityManager.createQuery(criteriaQuery);
       int offset = resultStrategy.getOffset();
       int limit = resultStrategy.getLimit();
-      typedQuery.setFirstResult(offset);
-      typedQuery.setMaxResults(limit + 1);
-      List<ENTITY> results = typedQuery.getResultList();
+      List<VIEW> results = select(query, projection, cb, OrderStrategy.of(resultStrategy),
+            new Window(offset, limit + 1), execution);
       boolean hasNext = results.size() > limit;
-      List<ENTITY> content = hasNext ? results.subList(0, limit) : results;
+      List<VIEW> content = hasNext ? results.subList(0, limit) : results;
       return new SliceResult<>(content, offset, limit, hasNext);
    }
 
-   private <RESULT> RESULT handleDefault(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy,
-         CriteriaBuilder criteriaBuilder)
+   private <VIEW, RESULT> RESULT handleDefault(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         ResultStrategy<VIEW, RESULT> resultStrategy, CriteriaBuilder criteriaBuilder, QueryExecution execution)
    {
-      CriteriaQuery<ENTITY> criteriaQuery = buildCriteriaQuery(query, criteriaBuilder, resultStrategy);
-      TypedQuery<ENTITY> typedQuery = entityManager.createQuery(criteriaQuery);
-
+      Window window;
       try
       {
-         int offset = resultStrategy.getOffset();
-         int limit = resultStrategy.getLimit();
-         typedQuery.setFirstResult(offset);
-         typedQuery.setMaxResults(limit);
+         window = new Window(resultStrategy.getOffset(), resultStrategy.getLimit());
       }
       catch (UnsupportedOperationException ignored)
       {
          // If resultStrategy does not support offset and limit, we do not set them.
+         window = Window.UNBOUNDED;
       }
 
-      List<ENTITY> results = typedQuery.getResultList();
+      List<VIEW> results =
+            select(query, projection, criteriaBuilder, OrderStrategy.of(resultStrategy), window, execution);
       return resultStrategy.expand(results);
    }
 
    /**
-    * Builds a JPA CriteriaQuery for the given query, criteria builder and result strategy.
+    * Selects the rows within the given window. Fetching a collection multiplies the rows of each entity, so a bounded
+    * window combined with a collection fetch is selected in two steps: first the ids within the window, then the
+    * entities with those ids.
+    */
+   private <VIEW> List<VIEW> select(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         CriteriaBuilder criteriaBuilder, OrderStrategy<ENTITY> orderStrategy, Window window,
+         QueryExecution execution)
+   {
+      if (window.isBounded() && fetchesCollection(query, projection))
+      {
+         return selectByIds(query, projection, criteriaBuilder, orderStrategy, window, execution);
+      }
+      TypedQuery<VIEW> typedQuery =
+            execution.build(() -> createSelectionQuery(query, projection, criteriaBuilder, orderStrategy));
+      return execution.list(window.applyTo(typedQuery));
+   }
+
+   private <VIEW> List<VIEW> selectByIds(DatabaseQuery<ENTITY> query, Projection<ENTITY, VIEW> projection,
+         CriteriaBuilder criteriaBuilder, OrderStrategy<ENTITY> orderStrategy, Window window,
+         QueryExecution execution)
+   {
+      TypedQuery<Object> idQuery = execution.build(() -> preparationStrategy.createQuery(entityManager, query,
+            criteriaBuilder, ID_SELECTION, orderStrategy.shape(),
+            restrictions -> buildIdQuery(query, criteriaBuilder, orderStrategy, restrictions)));
+      List<Object> ids = execution.list(window.applyTo(idQuery));
+      if (ids.isEmpty())
+      {
+         return List.of();
+      }
+      TypedQuery<VIEW> entityQuery = execution.build(() -> projection.configure(entityManager.createQuery(
+            buildCriteriaQuery(query, projection, criteriaBuilder, orderStrategy,
+                  root -> new Predicate[] { root.get(ID_SELECTION).in(ids) }))));
+      return execution.list(entityQuery);
+   }
+
+   private CriteriaQuery<Object> buildIdQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder,
+         OrderStrategy<ENTITY> orderStrategy, Function<Root<ENTITY>, Predicate[]> restrictions)
+   {
+      CriteriaQuery<Object> idQuery = criteriaBuilder.createQuery();
+      Root<ENTITY> root = idQuery.from(query.getEntityType());
+      idQuery.select(root.get(ID_SELECTION)).where(restrictions.apply(root));
+      idQuery.orderBy(orderStrategy.buildOrders(root, criteriaBuilder));
+      return idQuery;
+   }
+
+   private boolean fetchesCollection(DatabaseQuery<ENTITY> query, Projection<ENTITY, ?> projection)
+   {
+      return projection.selectsEntities() && query.fetchesCollection(entityManager.getMetamodel());
+   }
+
+   private <VIEW> TypedQuery<VIEW> createSelectionQuery(DatabaseQuery<ENTITY> query,
+         Projection<ENTITY, VIEW> projection, CriteriaBuilder criteriaBuilder, OrderStrategy<ENTITY> orderStrategy)
+   {
+      TypedQuery<VIEW> typedQuery = preparationStrategy.createQuery(entityManager, query, criteriaBuilder,
+            selectionOf(query, projection), orderStrategy.shape(),
+            restrictions -> buildCriteriaQuery(query, projection, criteriaBuilder, orderStrategy, restrictions));
+      return projection.configure(typedQuery);
+   }
+
+   private static String selectionOf(DatabaseQuery<?> query, Projection<?, ?> projection)
+   {
+      return projection.selectsEntities() && !query.fetchShapes().isEmpty()
+            ? projection.shape() + " fetch " + String.join(", ", query.fetchShapes())
+            : projection.shape();
+   }
+
+   /**
+    * Builds a JPA CriteriaQuery for the given query, projection, criteria builder and order strategy.
     * <p>
     * If the result strategy supports sorting and sort orders are provided, those will be used. Otherwise, results are
     * sorted by the "id" property in ascending order.
     * </p>
+    * <p>
+    * Fetch paths of the query are joined when the projection selects entities. Rows duplicated by collection fetches
+    * are removed with a distinct selection.
+    * </p>
     *
     * @param query           the database query
+    * @param projection      what the query selects
     * @param criteriaBuilder the JPA criteria builder
-    * @param resultStrategy  the result strategy (may support sorting)
+    * @param orderStrategy   the order strategy derived from the result strategy
+    * @param restrictions    translates the query restrictions for the given root
     * @return the criteria query with applied restrictions and sorting
     */
-   private CriteriaQuery<ENTITY> buildCriteriaQuery(DatabaseQuery<ENTITY> query, CriteriaBuilder criteriaBuilder,
-         ResultStrategy<ENTITY, ?> resultStrategy)
+   private <VIEW> CriteriaQuery<VIEW> buildCriteriaQuery(DatabaseQuery<ENTITY> query,
+         Projection<ENTITY, VIEW> projection, CriteriaBuilder criteriaBuilder, OrderStrategy<ENTITY> orderStrategy,
+         Function<Root<ENTITY>, Predicate[]> restrictions)
    {
-      CriteriaQuery<ENTITY> criteriaQuery = criteriaBuilder.createQuery(query.getEntityType());
+      CriteriaQuery<VIEW> criteriaQuery = criteriaBuilder.createQuery(projection.getResultType());
       Root<ENTITY> root = criteriaQuery.from(query.getEntityType());
-      Predicate[] predicates = query.toRestrictions(criteriaBuilder, root);
-      criteriaQuery.select(root).where(predicates);
-
-      OrderStrategy<ENTITY> orderStrategy =
-            (resultStrategy instanceof OrderedResultStrategy<?, ?> sortable && !sortable.getOrders().isEmpty())
-                  ? new OrderStrategy.ProvidedSortOrderStrategy<>(sortable.getOrders())
-                  : new OrderStrategy.DefaultOrderStrategy<>();
-
+      Predicate[] predicates = restrictions.apply(root);
+      if (projection.selectsEntities())
+      {
+         query.applyFetches(root);
+         criteriaQuery.distinct(query.fetchesCollection(entityManager.getMetamodel()));
+      }
+      criteriaQuery.select(projection.select(criteriaBuilder, root)).where(predicates);
       criteriaQuery.orderBy(orderStrategy.buildOrders(root, criteriaBuilder));
       return criteriaQuery;
    }
 
-   private static class JpaResultStrategyVisitor<ENTITY, RESULT>
-         implements ResultStrategyVisitor<ENTITY, RESULT, RESULT>
+   /**
+    * Range of rows selected by a query.
+    *
+    * @param firstResult the position of the first row
+    * @param maxResults  the maximum number of rows
+    */
+   private record Window(int firstResult, int maxResults)
+   {
+      static final Window UNBOUNDED = new Window(0, Integer.MAX_VALUE);
+
+      boolean isBounded()
+      {
+         return firstResult > 0 || maxResults < Integer.MAX_VALUE;
+      }
+
+      <RESULT> TypedQuery<RESULT> applyTo(TypedQuery<RESULT> typedQuery)
+      {
+         return isBounded() ? typedQuery.setFirstResult(firstResult).setMaxResults(maxResults) : typedQuery;
+      }
+   }
+
+   /**
+    * Builder for {@link DatabaseQueryHandler}.
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static final class Builder<ENTITY>
+   {
+      private final EntityManager entityManager;
+      private PreparationStrategy preparationStrategy = PreparationStrategy.DirectPreparation.INSTANCE;
+      private TotalCountCache totalCountCache = TotalCountCache.none();
+      private DatabaseMetrics metrics;
+      private SlowQueryWatchdog watchdog;
+      private ApproximateCount approximateTotals;
+
+      public Builder(EntityManager entityManager)
+      {
+         this.entityManager = entityManager;
+      }
+
+      /**
+       * Enables prepared query mode: queries consisting only of property restrictions are compiled once per shape
+       * into parameterized templates kept in the given cache, and later executions only bind values.
+       *
+       * @param templateCache the template cache, shared by handlers of the same entity manager factory
+       * @return this builder
+       * @throws IllegalStateException if the entity manager factory is configured for Hibernate without
+       *       {@code hibernate.criteria.copy_tree=true}, so shared templates would be modified by every execution
+       */
+      public Builder<ENTITY> preparedQueries(QueryTemplateCache templateCache)
+      {
+         QueryTemplateCache.requireCopiedCriteria(entityManager.getEntityManagerFactory());
+         this.preparationStrategy = new PreparationStrategy.TemplatePreparation(templateCache);
+         return this;
+      }
+
+      /**
+       * Sets the cache of total counts of paged results. By default, every page which does not reveal the total
+       * itself runs a count query.
+       *
+       * @param totalCountCache the total count cache
+       * @return this builder
+       */
+      public Builder<ENTITY> cachedTotalCounts(TotalCountCache totalCountCache)
+      {
+         this.totalCountCache = totalCountCache;
+         return this;
+      }
+
+      /**
+       * Estimates the total counts of paged results from database statistics instead of counting them exactly. Totals
+       * are then approximate and the number of pages may be off.
+       *
+       * @param approximateTotals the approximate count settings
+       * @return this builder
+       */
+      public Builder<ENTITY> approximateTotals(ApproximateCount approximateTotals)
+      {
+         this.approximateTotals = approximateTotals;
+         return this;
+      }
+
+      /**
+       * Sets the metrics receiving a measurement of every handled query. By default, queries are not measured.
+       *
+       * @param metrics the metrics
+       * @return this builder
+       */
+      public Builder<ENTITY> metrics(DatabaseMetrics metrics)
+      {
+         this.metrics = metrics;
+         return this;
+      }
+
+      /**
+       * Sets the watchdog reporting slow queries. By default, slow queries are not reported.
+       *
+       * @param watchdog the slow query watchdog
+       * @return this builder
+       */
+      public Builder<ENTITY> slowQueryWatchdog(SlowQueryWatchdog watchdog)
+      {
+         this.watchdog = watchdog;
+         return this;
+      }
+
+      /**
+       * Builds the {@link DatabaseQueryHandler} instance.
+       *
+       * @return the query handler
+       */
+      public DatabaseQueryHandler<ENTITY> build()
+      {
+         return new DatabaseQueryHandler<>(entityManager, preparationStrategy, totalCountCache, executions(),
+               approximateTotals);
+      }
+
+      private Supplier<QueryExecution> executions()
+      {
+         if (metrics == null && watchdog == null)
+         {
+            return () -> QueryExecution.Unmeasured.INSTANCE;
+         }
+         SlowQueryWatchdog measurementWatchdog = watchdog == null ? SlowQueryWatchdog.disabled() : watchdog;
+         return () -> new QueryExecution.Measured(metrics, measurementWatchdog, entityManager);
+      }
+   }
+
+   private static class JpaResultStrategyVisitor<ENTITY, VIEW, RESULT>
+         implements ResultStrategyVisitor<VIEW, RESULT, RESULT>
    {
       private final DatabaseQueryHandler<ENTITY> handler;
       private final DatabaseQuery<ENTITY> query;
+      private final Projection<ENTITY, VIEW> projection;
       private final CriteriaBuilder criteriaBuilder;
+      private final QueryExecution execution;
 
       JpaResultStrategyVisitor(DatabaseQueryHandler<ENTITY> handler, DatabaseQuery<ENTITY> query,
-            CriteriaBuilder criteriaBuilder)
+            Projection<ENTITY, VIEW> projection, CriteriaBuilder criteriaBuilder, QueryExecution execution)
       {
          this.handler = handler;
          this.query = query;
+         this.projection = projection;
          this.criteriaBuilder = criteriaBuilder;
+         this.execution = execution;
       }
 
       @Override
-      public RESULT visitSingle(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitSingle(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
-         return handler.handleDefault(query, resultStrategy, criteriaBuilder);
+         return handler.handleDefault(query, projection, resultStrategy, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitOptional(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitOptional(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
-         return handler.handleDefault(query, resultStrategy, criteriaBuilder);
+         return handler.handleDefault(query, projection, resultStrategy, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitList(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitList(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
-         return handler.handleDefault(query, resultStrategy, criteriaBuilder);
+         return handler.handleDefault(query, projection, resultStrategy, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitExist(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitExist(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
          //noinspection unchecked
-         return (RESULT) handler.handleExist(query, criteriaBuilder);
+         return (RESULT) handler.handleExist(query, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitCount(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitCount(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
          //noinspection unchecked
-         return (RESULT) handler.handleCount(query, criteriaBuilder);
+         return (RESULT) handler.handleCount(query, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitFirst(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitFirst(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
-         return handler.handleFirst(query, resultStrategy, criteriaBuilder);
+         return handler.handleFirst(query, projection, resultStrategy, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitPaged(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitPaged(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
          //noinspection unchecked
-         return (RESULT) handler.handlePaged(query, (ResultStrategy<ENTITY, PagedResult<ENTITY>>) resultStrategy,
-               criteriaBuilder);
+         return (RESULT) handler.handlePaged(query, projection,
+               (ResultStrategy<VIEW, PagedResult<VIEW>>) resultStrategy, criteriaBuilder, execution);
       }
 
       @Override
-      public RESULT visitSliced(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+      public RESULT visitSliced(ResultStrategy<VIEW, RESULT> resultStrategy, RESULT result)
       {
          //noinspection unchecked
-         return (RESULT) handler.handleSlice(query, (ResultStrategy<ENTITY, SliceResult<ENTITY>>) resultStrategy,
-               criteriaBuilder);
+         return (RESULT) handler.handleSlice(query, projection,
+               (ResultStrategy<VIEW, SliceResult<VIEW>>) resultStrategy, criteriaBuilder, execution);
+      }
+   }
+
+   /**
+    * Iterator over streamed entities clearing the persistence context after every interval of entities, before the
+    * next row is read. Hibernate reads and hydrates the next row as soon as its presence is checked, so the context is
+    * cleared in both {@link #hasNext()} and {@link #next()}, but at most once per interval.
+    */
+   private static final class ClearingIterator<ENTITY> implements Iterator<ENTITY>
+   {
+      private final Iterator<ENTITY> rows;
+      private final EntityManager entityManager;
+      private final int clearInterval;
+      private long streamed;
+      private long clearedAt;
+
+      ClearingIterator(Iterator<ENTITY> rows, EntityManager entityManager, int clearInterval)
+      {
+         this.rows = rows;
+         this.entityManager = entityManager;
+         this.clearInterval = clearInterval;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+         clearIfDue();
+         return rows.hasNext();
+      }
+
+      @Override
+      public ENTITY next()
+      {
+         clearIfDue();
+         ENTITY entity = rows.next();
+         streamed++;
+         return entity;
+      }
+
+      private void clearIfDue()
+      {
+         if (streamed > clearedAt && streamed % clearInterval == 0)
+         {
+            entityManager.clear();
+            clearedAt = streamed;
+         }
+      }
+   }
+
+   /**
+    * Strategy for turning a {@link DatabaseQuery} into a typed query ready for execution.
+    */
+   private sealed interface PreparationStrategy
+   {
+      <ENTITY, RESULT> TypedQuery<RESULT> createQuery(EntityManager entityManager, DatabaseQuery<ENTITY> query,
+            CriteriaBuilder cb, String selection, List<String> orders, CriteriaFactory<ENTITY, RESULT> criteriaFactory);
+
+      /**
+       * Builds the criteria tree from scratch on every execution.
+       */
+      final class DirectPreparation implements PreparationStrategy
+      {
+         static final PreparationStrategy INSTANCE = new DirectPreparation();
+
+         @Override
+         public <ENTITY, RESULT> TypedQuery<RESULT> createQuery(EntityManager entityManager,
+               DatabaseQuery<ENTITY> query, CriteriaBuilder cb, String selection, List<String> orders,
+               CriteriaFactory<ENTITY, RESULT> criteriaFactory)
+         {
+            return entityManager.createQuery(criteriaFactory.create(root -> query.toRestrictions(cb, root)));
+         }
       }
+
+      /**
+       * Compiles the criteria tree once per query shape and binds values on every execution.
+       */
+      final class TemplatePreparation implements PreparationStrategy
+      {
+         private final QueryTemplateCache templateCache;
+
+         TemplatePreparation(QueryTemplateCache templateCache)
+         {
+            this.templateCache = templateCache;
+         }
+
+         @Override
+         public <ENTITY, RESULT> TypedQuery<RESULT> createQuery(EntityManager entityManager,
+               DatabaseQuery<ENTITY> query, CriteriaBuilder cb, String selection, List<String> orders,
+               CriteriaFactory<ENTITY, RESULT> criteriaFactory)
+         {
+            if (!query.isParameterizable())
+            {
+               return DirectPreparation.INSTANCE.createQuery(entityManager, query, cb, selection, orders,
+                     criteriaFactory);
+            }
+            QueryTemplateCache.Key key =
+                  new QueryTemplateCache.Key(query.getEntityType(), selection, query.restrictionShapes(), orders);
+            QueryTemplate<RESULT> template = templateCache.get(key, () -> compile(query, cb, criteriaFactory));
+            return template.createQuery(entityManager, query.parameterValues());
+         }
+
+         private static <ENTITY, RESULT> QueryTemplate<RESULT> compile(DatabaseQuery<ENTITY> query, CriteriaBuilder cb,
+               CriteriaFactory<ENTITY, RESULT> criteriaFactory)
+         {
+            QueryParameters parameters = new QueryParameters(cb);
+            CriteriaQuery<RESULT> criteriaQuery =
+                  criteriaFactory.create(root -> query.toParameterizedRestrictions(cb, root, parameters));
+            return new QueryTemplate<>(criteriaQuery, parameters.expressions());
+         }
+      }
+   }
+
+   /**
+    * Builds a criteria query using the given translation of the query restrictions.
+    */
+   @FunctionalInterface
+   private interface CriteriaFactory<ENTITY, RESULT>
+   {
+      CriteriaQuery<RESULT> create(Function<Root<ENTITY>, Predicate[]> restrictions);
    }
 
    private sealed interface OrderStrategy<ENTITY>
    {
       List<Order> buildOrders(Root<ENTITY> root, CriteriaBuilder cb);
 
+      /**
+       * Describes the sort orders independently of any query root.
+       *
+       * @return the shapes of the sort orders
+       */
+      List<String> shape();
+
+      static <ENTITY> OrderStrategy<ENTITY> of(ResultStrategy<?, ?> resultStrategy)
+      {
+         return (resultStrategy instanceof OrderedResultStrategy<?, ?> sortable && !sortable.getOrders().isEmpty())
+               ? new ProvidedSortOrderStrategy<>(sortable.getOrders())
+               : new DefaultOrderStrategy<>();
+      }
+
       final class ProvidedSortOrderStrategy<ENTITY> implements OrderStrategy<ENTITY>
       {
          private final List<com.filipmikolajzeglen.cqrs.core.Order> orders;
@@ -268,6 +932,141 @@ public class DatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<
             }
             return orders;
          }
+
+         @Override
+         public List<String> shape()
+         {
+            return orders.stream()
+                  .map(order -> order.getProperty() + " " + order.getDirection())
+                  .toList();
+         }
+      }
+
+      /**
+       * Sorts by explicit sort keys followed by "id", which makes the order total. For keyset pagination it also seeks
+       * past the last row of the previous page.
+       */
+      final class SortKeyOrderStrategy<ENTITY> implements OrderStrategy<ENTITY>
+      {
+         private static final String ID = "id";
+
+         private final List<SortKey> sortKeys;
+
+         SortKeyOrderStrategy(List<SortKey> sortKeys)
+         {
+            List<SortKey> keys = new ArrayList<>(sortKeys);
+            if (keys.stream().noneMatch(key -> ID.equals(key.property())))
+            {
+               keys.add(new SortKey(ID, com.filipmikolajzeglen.cqrs.core.Order.Direction.ASC));
+            }
+            this.sortKeys = keys;
+         }
+
+         List<Path<?>> keyPaths(Root<ENTITY> root)
+         {
+            List<Path<?>> paths = new ArrayList<>(sortKeys.size());
+            for (SortKey key : sortKeys)
+            {
+               paths.add(root.get(key.property()));
+            }
+            return paths;
+         }
+
+         /**
+          * Reads the sort key values selected after the entity in the given row.
+          */
+         List<Object> keyValues(Tuple row)
+         {
+            List<Object> values = new ArrayList<>(sortKeys.size());
+            for (int i = 0; i < sortKeys.size(); i++)
+            {
+               values.add(row.get(i + 1));
+            }
+            return values;
+         }
+
+         /**
+          * Fails if a sort key selected after the entity in the given row is null.
+          */
+         void requireKeyValues(Tuple row)
+         {
+            for (int i = 0; i < sortKeys.size(); i++)
+            {
+               if (row.get(i + 1) == null)
+               {
+                  throw new IllegalStateException(
+                        "Keyset pagination requires non-null sort keys, but '" + sortKeys.get(i).property()
+                              + "' is null");
+               }
+            }
+         }
+
+         /**
+          * Builds the predicate selecting rows sorted after the given key values. The row value comparison
+          * {@code (k1, k2) > (v1, v2)} is expanded to {@code k1 > v1 or (k1 = v1 and k2 > v2)}, which also supports
+          * mixed sort directions. The redundant bound {@code k1 >= v1}, or {@code k1 <= v1} when descending, is added
+          * in front of the expansion, so that the database can start an index scan on the leading key instead of
+          * filtering every row.
+          */
+         Predicate seekPredicate(CriteriaBuilder cb, List<Path<?>> keys, List<Object> lastValues)
+         {
+            List<Predicate> alternatives = new ArrayList<>();
+            List<Predicate> equalPrefix = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++)
+            {
+               List<Predicate> alternative = new ArrayList<>(equalPrefix);
+               alternative.add(sortedAfter(cb, keys.get(i), lastValues.get(i), sortKeys.get(i).direction()));
+               alternatives.add(cb.and(alternative.toArray(Predicate[]::new)));
+               equalPrefix.add(cb.equal(keys.get(i), lastValues.get(i)));
+            }
+            Predicate seek = cb.or(alternatives.toArray(Predicate[]::new));
+            return keys.size() == 1
+                  ? seek
+                  : cb.and(notSortedBefore(cb, keys.get(0), lastValues.get(0), sortKeys.get(0).direction()), seek);
+         }
+
+         @SuppressWarnings({ "unchecked", "rawtypes" })
+         private static Predicate sortedAfter(CriteriaBuilder cb, Path<?> key, Object value,
+               com.filipmikolajzeglen.cqrs.core.Order.Direction direction)
+         {
+            Expression<Comparable> expression = (Expression<Comparable>) key;
+            Comparable comparable = (Comparable) value;
+            return direction == com.filipmikolajzeglen.cqrs.core.Order.Direction.ASC
+                  ? cb.greaterThan(expression, comparable)
+                  : cb.lessThan(expression, comparable);
+         }
+
+         @SuppressWarnings({ "unchecked", "rawtypes" })
+         private static Predicate notSortedBefore(CriteriaBuilder cb, Path<?> key, Object value,
+               com.filipmikolajzeglen.cqrs.core.Order.Direction direction)
+         {
+            Expression<Comparable> expression = (Expression<Comparable>) key;
+            Comparable comparable = (Comparable) value;
+            return direction == com.filipmikolajzeglen.cqrs.core.Order.Direction.ASC
+                  ? cb.greaterThanOrEqualTo(expression, comparable)
+                  : cb.lessThanOrEqualTo(expression, comparable);
+         }
+
+         @Override
+         public List<Order> buildOrders(Root<ENTITY> root, CriteriaBuilder cb)
+         {
+            List<Order> orders = new ArrayList<>(sortKeys.size());
+            for (SortKey key : sortKeys)
+            {
+               orders.add(key.direction() == com.filipmikolajzeglen.cqrs.core.Order.Direction.ASC
+                     ? cb.asc(root.get(key.property()))
+                     : cb.desc(root.get(key.property())));
+            }
+            return orders;
+         }
+
+         @Override
+         public List<String> shape()
+         {
+            return sortKeys.stream()
+                  .map(key -> key.property() + " " + key.direction())
+                  .toList();
+         }
       }
 
       final class DefaultOrderStrategy<ENTITY> implements OrderStrategy<ENTITY>
@@ -277,6 +1076,12 @@ public class DatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<
          {
             return List.of(cb.asc(root.get("id")));
          }
+
+         @Override
+         public List<String> shape()
+         {
+            return List.of("id ASC");
+         }
       }
    }
 }
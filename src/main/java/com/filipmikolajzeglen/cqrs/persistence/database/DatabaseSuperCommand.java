@@ -1,20 +1,24 @@
 package com.filipmikolajzeglen.cqrs.persistence.database;
 
-import java.beans.Introspector;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.filipmikolajzeglen.cqrs.core.Command;
 import com.filipmikolajzeglen.cqrs.core.Query;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
+import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
-import org.perfectable.introspection.FunctionalReference;
+import jakarta.persistence.metamodel.EntityType;
 
 /**
- * Represents a super command for batch update operations on entities.
+ * Represents a super command for batch update and delete operations on entities.
  *
  * @param <ENTITY> the entity type
  */
@@ -28,6 +32,37 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
     */
    public abstract Integer execute(EntityManager entityManager);
 
+   /**
+    * Returns the type of entities changed by this command, reported to {@link EntityChangeListener}. Commands with
+    * unknown effects report {@code Object.class}.
+    *
+    * @return the changed entity type
+    */
+   Class<?> changedEntityType()
+   {
+      return Object.class;
+   }
+
+   /**
+    * Returns the name of this command, reported to {@link DatabaseMetrics}.
+    *
+    * @return the name of the command
+    */
+   String operationName()
+   {
+      return "custom";
+   }
+
+   /**
+    * Tells whether this command commits its changes itself instead of leaving them to the caller's transaction.
+    *
+    * @return true for chunked deletes committing each chunk
+    */
+   boolean commitsItself()
+   {
+      return false;
+   }
+
    /**
     * Starts building an update command for the given entity class.
     *
@@ -40,6 +75,18 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
       return new UpdateBuilder<>(entityClass);
    }
 
+   /**
+    * Starts building a delete command for the given entity class.
+    *
+    * @param entityClass the entity class
+    * @param <ENTITY>    the entity type
+    * @return a delete builder
+    */
+   public static <ENTITY> DeleteBuilder<ENTITY> delete(Class<ENTITY> entityClass)
+   {
+      return new DeleteBuilder<>(entityClass);
+   }
+
    /**
     * Builder for creating update commands.
     *
@@ -85,6 +132,9 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
 
       /**
        * Specifies the criteria for selecting entities to update.
+       * <p>
+       * If the query does not constrain entities, e.g. is {@code null}, all entities are updated.
+       * </p>
        *
        * @param query the query defining the criteria
        * @return the update command
@@ -96,6 +146,79 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
       }
    }
 
+   /**
+    * Builder for creating delete commands.
+    * <p>
+    * By default, all matching entities are deleted with a single statement. On huge tables this holds locks on every
+    * deleted row until the transaction ends; {@link #inChunksOf(int)} deletes them in id-ordered chunks instead,
+    * optionally committing each chunk separately.
+    * </p>
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static class DeleteBuilder<ENTITY>
+   {
+      private final Class<ENTITY> entityClass;
+      private int chunkSize;
+      private boolean committingEachChunk;
+
+      public DeleteBuilder(Class<ENTITY> entityClass)
+      {
+         this.entityClass = entityClass;
+      }
+
+      /**
+       * Deletes matching entities in chunks of the given size, ordered by id. Each chunk selects the ids of the next
+       * matching entities and deletes them by id.
+       *
+       * @param chunkSize the maximum number of entities deleted by one statement
+       * @return the delete builder
+       * @throws IllegalArgumentException if the size is not positive or exceeds the {@value InList#MAXIMUM_VALUES}
+       *       values of one {@code in} restriction
+       */
+      public DeleteBuilder<ENTITY> inChunksOf(int chunkSize)
+      {
+         if (chunkSize < 1 || chunkSize > InList.MAXIMUM_VALUES)
+         {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + InList.MAXIMUM_VALUES
+                  + ", was " + chunkSize);
+         }
+         this.chunkSize = chunkSize;
+         return this;
+      }
+
+      /**
+       * Commits every chunk in its own resource-local transaction. The command must be executed outside of a
+       * transaction, so that no work of the caller is committed with its chunks, and leaves none active. If a chunk
+       * fails, its transaction is rolled back and the chunks committed before it stay deleted.
+       *
+       * @return the delete builder
+       */
+      public DeleteBuilder<ENTITY> committingEachChunk()
+      {
+         this.committingEachChunk = true;
+         return this;
+      }
+
+      /**
+       * Specifies the criteria for selecting entities to delete.
+       * <p>
+       * If the query does not constrain entities, e.g. is {@code null}, all entities are deleted.
+       * </p>
+       *
+       * @param query the query defining the criteria
+       * @return the delete command
+       */
+      public DatabaseSuperCommand<ENTITY> where(Query<ENTITY> query)
+      {
+         if (chunkSize == 0)
+         {
+            return new DeleteCommand<>(entityClass, query);
+         }
+         return new ChunkedDeleteCommand<>(entityClass, query, chunkSize, committingEachChunk);
+      }
+   }
+
    /**
     * Represents a setter for updating entity properties.
     *
@@ -114,8 +237,7 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
             @Override
             public void applyToCriteria(CriteriaUpdate<ENTITY> update, Root<ENTITY> root)
             {
-               String property = propertyNameFromSetter(setter);
-               update.set(property, value);
+               update.set(PropertyNameCache.propertyNameOf(setter), value);
             }
 
             @Override
@@ -123,13 +245,6 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
             {
                setter.set(entity, value);
             }
-
-            private String propertyNameFromSetter(PropertyBuilder.Setter<ENTITY, VALUE> setter)
-            {
-               FunctionalReference.Introspection introspection = setter.introspect();
-               String methodName = introspection.referencedMethod().getName();
-               return Introspector.decapitalize(methodName.replaceFirst("^set", ""));
-            }
          };
       }
 
@@ -165,6 +280,18 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
          this.query = query;
       }
 
+      @Override
+      Class<?> changedEntityType()
+      {
+         return entityClass;
+      }
+
+      @Override
+      String operationName()
+      {
+         return "update";
+      }
+
       @Override
       public Integer execute(EntityManager entityManager)
       {
@@ -174,26 +301,255 @@ public abstract class DatabaseSuperCommand<ENTITY> extends Command<Integer>
 
          setters.forEach(setter -> setter.applyToCriteria(update, root));
 
-         if (query instanceof ConstrainingQuery<?> constraining)
+         update.where(restrictionsOf(query, cb, root));
+         return entityManager.createQuery(update).executeUpdate();
+      }
+   }
+
+   private static class DeleteCommand<ENTITY> extends DatabaseSuperCommand<ENTITY>
+   {
+      private final Class<ENTITY> entityClass;
+      private final Query<ENTITY> query;
+
+      DeleteCommand(Class<ENTITY> entityClass, Query<ENTITY> query)
+      {
+         this.entityClass = entityClass;
+         this.query = query;
+      }
+
+      @Override
+      Class<?> changedEntityType()
+      {
+         return entityClass;
+      }
+
+      @Override
+      String operationName()
+      {
+         return "delete";
+      }
+
+      @Override
+      public Integer execute(EntityManager entityManager)
+      {
+         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+         CriteriaDelete<ENTITY> delete = cb.createCriteriaDelete(entityClass);
+         Root<ENTITY> root = delete.from(entityClass);
+         delete.where(restrictionsOf(query, cb, root));
+         return entityManager.createQuery(delete).executeUpdate();
+      }
+   }
+
+   private static class ChunkedDeleteCommand<ENTITY> extends DatabaseSuperCommand<ENTITY>
+   {
+      private final Class<ENTITY> entityClass;
+      private final Query<ENTITY> query;
+      private final int chunkSize;
+      private final boolean committingEachChunk;
+
+      ChunkedDeleteCommand(Class<ENTITY> entityClass, Query<ENTITY> query, int chunkSize, boolean committingEachChunk)
+      {
+         this.entityClass = entityClass;
+         this.query = query;
+         this.chunkSize = chunkSize;
+         this.committingEachChunk = committingEachChunk;
+      }
+
+      @Override
+      boolean commitsItself()
+      {
+         return committingEachChunk;
+      }
+
+      @Override
+      Class<?> changedEntityType()
+      {
+         return entityClass;
+      }
+
+      @Override
+      String operationName()
+      {
+         return "delete";
+      }
+
+      @Override
+      public Integer execute(EntityManager entityManager)
+      {
+         String id = idAttributeName(entityManager);
+         ChunkTransaction transaction = ChunkTransaction.begin(entityManager, committingEachChunk);
+         int deleted = 0;
+         Object lastId = null;
+         try
          {
-            @SuppressWarnings("unchecked")
-            Predicate[] predicates = ((ConstrainingQuery<ENTITY>) constraining).toRestrictions(cb, root);
-            update.where(predicates);
-            return entityManager.createQuery(update).executeUpdate();
+            List<Object> ids = nextIds(entityManager, id, lastId);
+            while (!ids.isEmpty())
+            {
+               deleted += deleteByIds(entityManager, id, ids);
+               transaction.completeChunk();
+               lastId = ids.get(ids.size() - 1);
+               ids = nextIds(entityManager, id, lastId);
+            }
          }
-         else
+         catch (RuntimeException exception)
          {
-            List<ENTITY> allEntities = entityManager.createQuery(
-                  "SELECT e FROM " + entityClass.getSimpleName() + " e", entityClass
-            ).getResultList();
+            transaction.abort();
+            throw exception;
+         }
+         transaction.end();
+         return deleted;
+      }
 
-            for (ENTITY entity : allEntities)
+      /**
+       * Resolves the name of the id attribute from the metamodel, since it is not necessarily called "id".
+       *
+       * @throws IllegalArgumentException if the entity has a composite id
+       */
+      private String idAttributeName(EntityManager entityManager)
+      {
+         EntityType<ENTITY> entityType = entityManager.getMetamodel().entity(entityClass);
+         if (!entityType.hasSingleIdAttribute())
+         {
+            throw new IllegalArgumentException("Chunked deletes require a single id attribute, but "
+                  + entityClass.getName() + " has a composite id");
+         }
+         return entityType.getId(entityType.getIdType().getJavaType()).getName();
+      }
+
+      /**
+       * Selects the ids of the next chunk, seeking past the last deleted id so each chunk starts where the previous
+       * one ended.
+       */
+      private List<Object> nextIds(EntityManager entityManager, String idName, Object lastId)
+      {
+         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+         CriteriaQuery<Object> idQuery = cb.createQuery();
+         Root<ENTITY> root = idQuery.from(entityClass);
+         Path<Object> id = root.get(idName);
+         List<Predicate> predicates = new ArrayList<>(List.of(restrictionsOf(query, cb, root)));
+         if (lastId != null)
+         {
+            predicates.add(greaterThan(cb, id, lastId));
+         }
+         idQuery.select(id).where(predicates.toArray(Predicate[]::new)).orderBy(cb.asc(id));
+         return entityManager.createQuery(idQuery).setMaxResults(chunkSize).getResultList();
+      }
+
+      private int deleteByIds(EntityManager entityManager, String idName, List<Object> ids)
+      {
+         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+         CriteriaDelete<ENTITY> delete = cb.createCriteriaDelete(entityClass);
+         Root<ENTITY> root = delete.from(entityClass);
+         delete.where(root.get(idName).in(ids));
+         return entityManager.createQuery(delete).executeUpdate();
+      }
+
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      private static Predicate greaterThan(CriteriaBuilder cb, Path<Object> id, Object lastId)
+      {
+         return cb.greaterThan((Expression<Comparable>) (Expression<?>) id, (Comparable) lastId);
+      }
+   }
+
+   /**
+    * Transaction boundaries of a single execution of a chunked delete.
+    */
+   private sealed interface ChunkTransaction
+   {
+      static ChunkTransaction begin(EntityManager entityManager, boolean committingEachChunk)
+      {
+         return committingEachChunk ? CommittingTransaction.begin(entityManager) : CallerTransaction.INSTANCE;
+      }
+
+      void completeChunk();
+
+      void abort();
+
+      void end();
+
+      /**
+       * Deletes all chunks in the transaction of the caller.
+       */
+      final class CallerTransaction implements ChunkTransaction
+      {
+         static final ChunkTransaction INSTANCE = new CallerTransaction();
+
+         @Override
+         public void completeChunk()
+         {
+         }
+
+         @Override
+         public void abort()
+         {
+         }
+
+         @Override
+         public void end()
+         {
+         }
+      }
+
+      /**
+       * Commits every chunk in its own resource-local transaction, leaving no transaction active afterward.
+       */
+      final class CommittingTransaction implements ChunkTransaction
+      {
+         private final EntityTransaction transaction;
+
+         private CommittingTransaction(EntityTransaction transaction)
+         {
+            this.transaction = transaction;
+         }
+
+         /**
+          * Begins the transaction of the first chunk.
+          *
+          * @throws IllegalStateException if the caller's transaction is active, which the first chunk would commit
+          */
+         static ChunkTransaction begin(EntityManager entityManager)
+         {
+            EntityTransaction transaction = entityManager.getTransaction();
+            if (transaction.isActive())
             {
-               setters.forEach(setter -> setter.applyToEntity(entity));
-               entityManager.merge(entity);
+               throw new IllegalStateException("A delete committing each chunk must run outside of a transaction, "
+                     + "which its first chunk would commit");
             }
-            return allEntities.size();
+            transaction.begin();
+            return new CommittingTransaction(transaction);
+         }
+
+         @Override
+         public void completeChunk()
+         {
+            transaction.commit();
+            transaction.begin();
          }
+
+         @Override
+         public void abort()
+         {
+            if (transaction.isActive())
+            {
+               transaction.rollback();
+            }
+         }
+
+         @Override
+         public void end()
+         {
+            transaction.commit();
+         }
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <ENTITY> Predicate[] restrictionsOf(Query<ENTITY> query, CriteriaBuilder cb, Root<ENTITY> root)
+   {
+      if (query instanceof ConstrainingQuery<?> constraining)
+      {
+         return ((ConstrainingQuery<ENTITY>) constraining).toRestrictions(cb, root);
       }
+      return new Predicate[0];
    }
 }
\ No newline at end of file
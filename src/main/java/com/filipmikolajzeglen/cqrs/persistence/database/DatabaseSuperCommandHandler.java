@@ -0,0 +1,103 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+
+import com.filipmikolajzeglen.cqrs.core.CommandHandler;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Handles execution of {@link DatabaseSuperCommand} using an {@link EntityManager}.
+ * <p>
+ * After every successful command, the given {@link EntityChangeListener} is notified of the changed entity type once
+ * the surrounding transaction commits, as reported by the given {@link AfterCommit} hook. Failed commands notify no
+ * one, except chunked deletes committing each chunk: they are notified right after the command, even if it fails,
+ * since the chunks deleted before the failure are committed already.
+ * </p>
+ * <p>
+ * Commands are measured by the given {@link DatabaseMetrics}, with the number of affected entities as rows.
+ * </p>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class DatabaseSuperCommandHandler<ENTITY> implements CommandHandler<DatabaseSuperCommand<ENTITY>, Integer>
+{
+   private final EntityManager entityManager;
+   private final EntityChangeListener changeListener;
+   private final AfterCommit afterCommit;
+   private final DatabaseMetrics metrics;
+
+   /**
+    * Creates a handler notifying no one of changes.
+    *
+    * @param entityManager the entity manager
+    */
+   public DatabaseSuperCommandHandler(EntityManager entityManager)
+   {
+      this(entityManager, EntityChangeListener.none(), AfterCommit.immediately());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    */
+   public DatabaseSuperCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit)
+   {
+      this(entityManager, changeListener, afterCommit, DatabaseMetrics.none());
+   }
+
+   /**
+    * Creates a handler notifying the given listener of changes after they are committed and measuring every command.
+    *
+    * @param entityManager  the entity manager
+    * @param changeListener the listener notified after every committed command
+    * @param afterCommit    the hook running notifications after the surrounding transaction commits
+    * @param metrics        the metrics receiving a measurement of every successful command
+    */
+   public DatabaseSuperCommandHandler(EntityManager entityManager, EntityChangeListener changeListener,
+         AfterCommit afterCommit, DatabaseMetrics metrics)
+   {
+      this.entityManager = entityManager;
+      this.changeListener = changeListener;
+      this.afterCommit = afterCommit;
+      this.metrics = metrics;
+   }
+
+   /**
+    * Handles the given super command.
+    *
+    * @param command the command to handle
+    * @return the number of affected entities
+    */
+   @Override
+   public Integer handle(DatabaseSuperCommand<ENTITY> command)
+   {
+      if (command.commitsItself())
+      {
+         try
+         {
+            return execute(command);
+         }
+         finally
+         {
+            changeListener.entitiesChanged(command.changedEntityType());
+         }
+      }
+      Integer result = execute(command);
+      Class<?> changedEntityType = command.changedEntityType();
+      afterCommit.register(() -> changeListener.entitiesChanged(changedEntityType));
+      return result;
+   }
+
+   private Integer execute(DatabaseSuperCommand<ENTITY> command)
+   {
+      long start = System.nanoTime();
+      Integer result = command.execute(entityManager);
+      metrics.commandExecuted(new CommandMeasurement(command.changedEntityType(), command.operationName(),
+            Duration.ofNanos(System.nanoTime() - start), result));
+      return result;
+   }
+}
@@ -0,0 +1,33 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+/**
+ * Listener notified by command handlers after commands change entities.
+ * <p>
+ * Handlers notify the listener once per changed entity type, after the transaction of a successful command is
+ * committed, as reported by their {@link AfterCommit} hook. Failed and rolled back commands are not reported. Commands
+ * whose changes cannot be attributed to an entity type, like flushing the persistence context, are reported as
+ * changing {@link Object}, i.e. every entity type. Implementations must be thread-safe.
+ * </p>
+ */
+@FunctionalInterface
+public interface EntityChangeListener
+{
+   /**
+    * Called after changes to entities of the given type were committed.
+    *
+    * @param entityType the changed entity type, or {@code Object.class} if unknown
+    */
+   void entitiesChanged(Class<?> entityType);
+
+   /**
+    * Returns a listener ignoring all changes.
+    *
+    * @return the no-op listener
+    */
+   static EntityChangeListener none()
+   {
+      return entityType ->
+      {
+      };
+   }
+}
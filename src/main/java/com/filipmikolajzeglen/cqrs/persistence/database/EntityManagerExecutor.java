@@ -0,0 +1,123 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.metamodel.Metamodel;
+
+/**
+ * Runs work asynchronously, each task with its own {@link EntityManager}.
+ * <p>
+ * An entity manager is not thread-safe, so every task creates one on the thread running it and closes it before
+ * completing. Entities returned by a task are therefore detached. At most the given number of tasks hold an entity
+ * manager at the same time; further tasks wait on their executor thread for a permit, which is cheap for virtual
+ * threads.
+ * </p>
+ */
+final class EntityManagerExecutor
+{
+   private final EntityManagerFactory entityManagerFactory;
+   private final Executor executor;
+   private final Semaphore permits;
+
+   EntityManagerExecutor(EntityManagerFactory entityManagerFactory, Executor executor, int maxConcurrency)
+   {
+      if (maxConcurrency <= 0)
+      {
+         throw new IllegalArgumentException("Maximum concurrency must be positive, was " + maxConcurrency);
+      }
+      this.entityManagerFactory = entityManagerFactory;
+      this.executor = executor;
+      this.permits = new Semaphore(maxConcurrency, true);
+   }
+
+   /**
+    * Returns the metamodel of the entity managers running the work.
+    *
+    * @return the metamodel
+    */
+   Metamodel metamodel()
+   {
+      return entityManagerFactory.getMetamodel();
+   }
+
+   /**
+    * Runs the given work outside of any transaction.
+    *
+    * @param work     the work using the entity manager of the task
+    * @param <RESULT> the result type
+    * @return the future result of the work
+    */
+   <RESULT> CompletableFuture<RESULT> submit(Function<EntityManager, RESULT> work)
+   {
+      return CompletableFuture.supplyAsync(() -> run(work), executor);
+   }
+
+   /**
+    * Runs the given work in its own resource-local transaction, committed when the work completes and rolled back if
+    * it fails.
+    *
+    * @param work     the work using the entity manager of the task
+    * @param <RESULT> the result type
+    * @return the future result of the work
+    */
+   <RESULT> CompletableFuture<RESULT> submitInTransaction(Function<EntityManager, RESULT> work)
+   {
+      return submit(entityManager -> inTransaction(entityManager, work));
+   }
+
+   private <RESULT> RESULT run(Function<EntityManager, RESULT> work)
+   {
+      try
+      {
+         permits.acquire();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new CompletionException(e);
+      }
+      try
+      {
+         EntityManager entityManager = entityManagerFactory.createEntityManager();
+         try
+         {
+            return work.apply(entityManager);
+         }
+         finally
+         {
+            entityManager.close();
+         }
+      }
+      finally
+      {
+         permits.release();
+      }
+   }
+
+   private static <RESULT> RESULT inTransaction(EntityManager entityManager, Function<EntityManager, RESULT> work)
+   {
+      EntityTransaction transaction = entityManager.getTransaction();
+      transaction.begin();
+      try
+      {
+         RESULT result = work.apply(entityManager);
+         transaction.commit();
+         return result;
+      }
+      catch (RuntimeException e)
+      {
+         if (transaction.isActive())
+         {
+            transaction.rollback();
+         }
+         throw e;
+      }
+   }
+}
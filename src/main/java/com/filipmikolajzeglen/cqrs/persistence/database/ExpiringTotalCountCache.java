@@ -0,0 +1,79 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link TotalCountCache} keeping each count for a fixed time.
+ * <p>
+ * When the cache grows beyond its maximum size, expired counts are removed first, then arbitrary ones.
+ * </p>
+ */
+final class ExpiringTotalCountCache implements TotalCountCache
+{
+   private final long timeToLiveNanos;
+   private final int maximumSize;
+   private final LongSupplier nanoClock;
+   private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+   ExpiringTotalCountCache(Duration timeToLive, int maximumSize, LongSupplier nanoClock)
+   {
+      if (timeToLive.isNegative() || timeToLive.isZero())
+      {
+         throw new IllegalArgumentException("Time to live must be positive, was " + timeToLive);
+      }
+      if (maximumSize <= 0)
+      {
+         throw new IllegalArgumentException("Maximum size must be positive, was " + maximumSize);
+      }
+      this.timeToLiveNanos = timeToLive.toNanos();
+      this.maximumSize = maximumSize;
+      this.nanoClock = nanoClock;
+   }
+
+   @Override
+   public long getOrCount(Key key, LongSupplier counter)
+   {
+      long now = nanoClock.getAsLong();
+      Entry entry = entries.get(key);
+      if (entry != null && !entry.isExpired(now))
+      {
+         return entry.count();
+      }
+      long count = counter.getAsLong();
+      entries.put(key, new Entry(count, now + timeToLiveNanos));
+      evictOverflow(now);
+      return count;
+   }
+
+   int size()
+   {
+      return entries.size();
+   }
+
+   private void evictOverflow(long now)
+   {
+      if (entries.size() <= maximumSize)
+      {
+         return;
+      }
+      entries.values().removeIf(entry -> entry.isExpired(now));
+      Iterator<Key> keys = entries.keySet().iterator();
+      while (entries.size() > maximumSize && keys.hasNext())
+      {
+         keys.next();
+         keys.remove();
+      }
+   }
+
+   private record Entry(long count, long expiresAt)
+   {
+      boolean isExpired(long now)
+      {
+         return now - expiresAt >= 0;
+      }
+   }
+}
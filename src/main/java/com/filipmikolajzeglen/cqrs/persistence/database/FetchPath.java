@@ -0,0 +1,88 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+
+/**
+ * Association path loaded eagerly with the queried entities through fetch joins.
+ *
+ * @param attributes the names of the associations along the path
+ */
+record FetchPath(List<String> attributes)
+{
+   /**
+    * Creates a fetch path from a dot-separated association path.
+    *
+    * @param path the association path, e.g. {@code "order.customer"}
+    * @return the fetch path
+    */
+   static FetchPath of(String path)
+   {
+      return new FetchPath(List.of(path.split("\\.")));
+   }
+
+   /**
+    * Adds left fetch joins along this path, reusing fetches already added to the root by other paths.
+    *
+    * @param root the query root
+    */
+   void applyTo(Root<?> root)
+   {
+      FetchParent<?, ?> parent = root;
+      for (String attribute : attributes)
+      {
+         parent = fetch(parent, attribute);
+      }
+   }
+
+   /**
+    * Tells whether any association along this path is a collection, whose fetch join multiplies result rows.
+    *
+    * @param metamodel  the metamodel
+    * @param entityType the root entity type
+    * @return true if the path fetches a collection
+    */
+   boolean isCollection(Metamodel metamodel, Class<?> entityType)
+   {
+      ManagedType<?> type = metamodel.managedType(entityType);
+      for (String name : attributes)
+      {
+         Attribute<?, ?> attribute = type.getAttribute(name);
+         if (attribute.isCollection())
+         {
+            return true;
+         }
+         type = metamodel.managedType(attribute.getJavaType());
+      }
+      return false;
+   }
+
+   /**
+    * Describes this path for query template keys.
+    *
+    * @return the dot-separated path
+    */
+   String name()
+   {
+      return String.join(".", attributes);
+   }
+
+   private static FetchParent<?, ?> fetch(FetchParent<?, ?> parent, String attribute)
+   {
+      for (Fetch<?, ?> existing : parent.getFetches())
+      {
+         if (existing.getAttribute().getName().equals(attribute))
+         {
+            return existing;
+         }
+      }
+      return parent.fetch(attribute, JoinType.LEFT);
+   }
+}
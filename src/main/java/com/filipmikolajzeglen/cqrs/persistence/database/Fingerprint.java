@@ -0,0 +1,49 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Computes short, stable identifiers of query shapes, suitable as metric tags.
+ */
+final class Fingerprint
+{
+   private static final int LENGTH = 8;
+
+   private Fingerprint()
+   {
+   }
+
+   /**
+    * Computes the fingerprint of the given parts, which is the same in every JVM for equal parts.
+    *
+    * @param parts the string representations of the parts of a shape
+    * @return the first 8 bytes of the SHA-256 hash of the parts, as hexadecimal digits
+    */
+   static String of(List<?> parts)
+   {
+      MessageDigest digest = sha256();
+      for (Object part : parts)
+      {
+         digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+         digest.update((byte) 0);
+      }
+      byte[] hash = digest.digest();
+      return HexFormat.of().formatHex(hash, 0, LENGTH);
+   }
+
+   private static MessageDigest sha256()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+      }
+   }
+}
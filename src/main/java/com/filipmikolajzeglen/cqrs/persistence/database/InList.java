@@ -0,0 +1,128 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Values of an {@code in} restriction, split into chunks whose sizes are powers of two.
+ * <p>
+ * Every distinct number of values produces a distinct SQL string, so lists of arbitrary sizes fill the statement
+ * caches of both the persistence provider and the database. Duplicates are removed and each chunk is padded to the
+ * next power of two by repeating its last value, which does not change the matched rows, so only a logarithmic number
+ * of statements is ever produced. Lists longer than {@link #MAXIMUM_CHUNK_SIZE} are split into chunks of that size
+ * combined with {@code or}, keeping each {@code in} list within the limits of databases restricting its length.
+ * </p>
+ * <p>
+ * All chunks are part of the same statement, whose bind parameters are limited to {@link #MAXIMUM_PARAMETERS}, so a
+ * list may hold at most {@link #MAXIMUM_VALUES} distinct values. Larger sets of values must be queried in several
+ * statements, e.g. with {@link DatabaseBatchLoader}.
+ * </p>
+ * <p>
+ * The list itself holds the values as given, including null and duplicates; the chunks are computed once when it is
+ * created.
+ * </p>
+ */
+final class InList extends AbstractList<Object>
+{
+   /**
+    * Maximum number of values in one {@code in} list.
+    */
+   static final int MAXIMUM_CHUNK_SIZE = 512;
+
+   /**
+    * Maximum number of bind parameters of one statement, the limit of PostgreSQL's wire protocol.
+    */
+   static final int MAXIMUM_PARAMETERS = Short.MAX_VALUE;
+
+   /**
+    * Maximum number of distinct non-null values, whose padded chunks fit into the parameters of one statement.
+    */
+   static final int MAXIMUM_VALUES = MAXIMUM_PARAMETERS / MAXIMUM_CHUNK_SIZE * MAXIMUM_CHUNK_SIZE;
+
+   private final List<Object> values;
+   private final List<List<Object>> chunks;
+
+   private InList(List<Object> values, List<List<Object>> chunks)
+   {
+      this.values = values;
+      this.chunks = chunks;
+   }
+
+   /**
+    * Creates the list of the given values, splitting them into padded chunks.
+    *
+    * @param values the values, possibly containing null
+    * @return the list, or the given list if it is an {@code InList} already
+    * @throws IllegalArgumentException if there are more than {@link #MAXIMUM_VALUES} distinct non-null values
+    */
+   static InList of(List<?> values)
+   {
+      if (values instanceof InList inList)
+      {
+         return inList;
+      }
+      List<Object> copy = Collections.unmodifiableList(new ArrayList<>(values));
+      return new InList(copy, chunks(copy));
+   }
+
+   /**
+    * Returns the padded chunks of the non-null values.
+    *
+    * @return the padded chunks; a single empty chunk if there are no non-null values
+    */
+   List<List<Object>> chunks()
+   {
+      return chunks;
+   }
+
+   @Override
+   public Object get(int index)
+   {
+      return values.get(index);
+   }
+
+   @Override
+   public int size()
+   {
+      return values.size();
+   }
+
+   private static List<List<Object>> chunks(List<Object> values)
+   {
+      List<Object> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+      distinct.removeIf(Objects::isNull);
+      if (distinct.isEmpty())
+      {
+         return List.of(List.of());
+      }
+      if (distinct.size() > MAXIMUM_VALUES)
+      {
+         throw new IllegalArgumentException("An in restriction accepts at most " + MAXIMUM_VALUES
+               + " distinct values to stay within the bind parameter limit of one statement, was " + distinct.size()
+               + "; query larger sets of values in batches");
+      }
+      List<List<Object>> chunks = new ArrayList<>();
+      for (int start = 0; start < distinct.size(); start += MAXIMUM_CHUNK_SIZE)
+      {
+         chunks.add(padded(distinct.subList(start, Math.min(start + MAXIMUM_CHUNK_SIZE, distinct.size()))));
+      }
+      return List.copyOf(chunks);
+   }
+
+   private static List<Object> padded(List<Object> chunk)
+   {
+      int paddedSize = Integer.highestOneBit(chunk.size() - 1) << 1;
+      if (chunk.size() == 1 || paddedSize == chunk.size())
+      {
+         return List.copyOf(chunk);
+      }
+      List<Object> padded = new ArrayList<>(paddedSize);
+      padded.addAll(chunk);
+      padded.addAll(Collections.nCopies(paddedSize - chunk.size(), chunk.get(chunk.size() - 1)));
+      return List.copyOf(padded);
+   }
+}
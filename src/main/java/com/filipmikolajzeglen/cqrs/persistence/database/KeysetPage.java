@@ -0,0 +1,136 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.filipmikolajzeglen.cqrs.core.Order;
+
+/**
+ * Request for a single page of keyset (seek) pagination, handled by
+ * {@link DatabaseQueryHandler#handle(DatabaseQuery, KeysetPage)}.
+ * <p>
+ * Instead of skipping rows with an offset, every page after the first continues right after the sort key values of the
+ * last row of the previous page, carried by an opaque continuation token. Fetching a deep page therefore costs the
+ * same as fetching the first one.
+ * </p>
+ * <p>
+ * Results are sorted by the declared properties followed by "id" as a tiebreaker. Sort properties must not contain
+ * {@code null} values; a page fetching a row with a {@code null} sort key fails, and rows sorted after the last
+ * non-null value are not reached by later pages, so such rows must be excluded by the query. Subsequent pages must
+ * declare the same sort orders as the page that issued the token.
+ * </p>
+ *
+ * <pre>{@code
+ * KeysetResult<MyEntity> page = handler.handle(query, KeysetPage.first(50).orderedByDesc("createdAt"));
+ * KeysetResult<MyEntity> next =
+ *       handler.handle(query, KeysetPage.after(page.getNextToken(), 50).orderedByDesc("createdAt"));
+ * }</pre>
+ */
+public final class KeysetPage
+{
+   private final String token;
+   private final int size;
+   private final List<SortKey> sortKeys;
+
+   private KeysetPage(String token, int size, List<SortKey> sortKeys)
+   {
+      if (size <= 0)
+      {
+         throw new IllegalArgumentException("Page size must be positive, was " + size);
+      }
+      this.token = token;
+      this.size = size;
+      this.sortKeys = sortKeys;
+   }
+
+   /**
+    * Creates a request for the first page.
+    *
+    * @param size the maximum number of results on the page
+    * @return the page request
+    */
+   public static KeysetPage first(int size)
+   {
+      return new KeysetPage(null, size, List.of());
+   }
+
+   /**
+    * Creates a request for the page following the one which issued the given token.
+    *
+    * @param token the continuation token of the previous page
+    * @param size  the maximum number of results on the page
+    * @return the page request
+    */
+   public static KeysetPage after(String token, int size)
+   {
+      return new KeysetPage(Objects.requireNonNull(token, "token"), size, List.of());
+   }
+
+   /**
+    * Returns a copy of this request additionally sorted ascending by the given property.
+    *
+    * @param property the property name
+    * @return the page request
+    */
+   public KeysetPage orderedByAsc(String property)
+   {
+      return orderedBy(property, Order.Direction.ASC);
+   }
+
+   /**
+    * Returns a copy of this request additionally sorted descending by the given property.
+    *
+    * @param property the property name
+    * @return the page request
+    */
+   public KeysetPage orderedByDesc(String property)
+   {
+      return orderedBy(property, Order.Direction.DESC);
+   }
+
+   /**
+    * Returns the maximum number of results on the page.
+    *
+    * @return the page size
+    */
+   public int getSize()
+   {
+      return size;
+   }
+
+   /**
+    * Returns the continuation token, empty for the first page.
+    *
+    * @return the continuation token
+    */
+   public Optional<String> getToken()
+   {
+      return Optional.ofNullable(token);
+   }
+
+   /**
+    * Returns a request for the page following the one which issued the given token, keeping the size and sort orders.
+    *
+    * @param nextToken the continuation token
+    * @return the page request
+    */
+   KeysetPage continuedAfter(String nextToken)
+   {
+      return new KeysetPage(nextToken, size, sortKeys);
+   }
+
+   List<SortKey> getSortKeys()
+   {
+      return sortKeys;
+   }
+
+   private KeysetPage orderedBy(String property, Order.Direction direction)
+   {
+      List<SortKey> keys = new ArrayList<>(sortKeys);
+      keys.add(new SortKey(Objects.requireNonNull(property, "property"), direction));
+      return new KeysetPage(token, size, Collections.unmodifiableList(keys));
+   }
+}
@@ -0,0 +1,47 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.Optional;
+
+import lombok.Getter;
+
+/**
+ * Single page of results of keyset pagination.
+ *
+ * @param <ENTITY> the entity type
+ * @see KeysetPage
+ */
+@Getter
+public final class KeysetResult<ENTITY>
+{
+   private final List<ENTITY> content;
+   private final String nextToken;
+   private final KeysetPage page;
+
+   KeysetResult(List<ENTITY> content, String nextToken, KeysetPage page)
+   {
+      this.content = content;
+      this.nextToken = nextToken;
+      this.page = page;
+   }
+
+   /**
+    * Returns whether more results follow this page.
+    *
+    * @return {@code true} if a next page exists
+    */
+   public boolean hasNext()
+   {
+      return nextToken != null;
+   }
+
+   /**
+    * Returns the request for the next page, keeping the size and sort orders of this page.
+    *
+    * @return the next page request, empty if this is the last page
+    */
+   public Optional<KeysetPage> nextPage()
+   {
+      return Optional.ofNullable(nextToken).map(page::continuedAfter);
+   }
+}
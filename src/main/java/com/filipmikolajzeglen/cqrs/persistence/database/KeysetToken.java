@@ -0,0 +1,192 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encodes sort key values of keyset pagination into opaque, URL-safe continuation tokens.
+ * <p>
+ * A token stores the sort order shape it was issued for and the textual form of each value. Values are parsed back
+ * according to the Java type of the sorted attribute, so tokens never carry class names or serialized objects.
+ * </p>
+ */
+final class KeysetToken
+{
+   private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+   private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+   private KeysetToken()
+   {
+   }
+
+   /**
+    * Encodes the given sort key values.
+    *
+    * @param shape  the shape of the sort orders
+    * @param values the sort key values of the last row on the page
+    * @return the continuation token
+    * @throws IllegalArgumentException if a value has a type which {@link #decode} cannot parse, so that unsupported
+    *       sort keys fail on the page issuing the token rather than on the next one
+    */
+   static String encode(List<String> shape, List<Object> values)
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream output = new DataOutputStream(bytes))
+      {
+         output.writeUTF(String.join(",", shape));
+         output.writeInt(values.size());
+         for (Object value : values)
+         {
+            output.writeUTF(format(value));
+         }
+      }
+      catch (IOException exception)
+      {
+         throw new UncheckedIOException(exception);
+      }
+      return ENCODER.encodeToString(bytes.toByteArray());
+   }
+
+   /**
+    * Decodes sort key values from the given token.
+    *
+    * @param token the continuation token
+    * @param shape the shape of the sort orders of the current request
+    * @param types the Java types of the sort keys
+    * @return the sort key values
+    * @throws IllegalArgumentException if the token is malformed or was issued for different sort orders
+    */
+   static List<Object> decode(String token, List<String> shape, List<Class<?>> types)
+   {
+      try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(DECODER.decode(token))))
+      {
+         if (!input.readUTF().equals(String.join(",", shape)) || input.readInt() != types.size())
+         {
+            throw new IllegalArgumentException("Keyset token was issued for different sort orders");
+         }
+         List<Object> values = new ArrayList<>(types.size());
+         for (Class<?> type : types)
+         {
+            values.add(parse(input.readUTF(), type));
+         }
+         return values;
+      }
+      catch (IOException | RuntimeException exception)
+      {
+         throw exception instanceof IllegalArgumentException illegalArgument
+               ? illegalArgument
+               : new IllegalArgumentException("Malformed keyset token", exception);
+      }
+   }
+
+   private static String format(Object value)
+   {
+      if (value instanceof Enum<?> constant)
+      {
+         return constant.name();
+      }
+      String text = value.toString();
+      parse(text, value.getClass());
+      return text;
+   }
+
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private static Object parse(String text, Class<?> type)
+   {
+      Class<?> boxed = MethodType.methodType(type).wrap().returnType();
+      if (boxed == String.class)
+      {
+         return text;
+      }
+      if (boxed == Long.class)
+      {
+         return Long.valueOf(text);
+      }
+      if (boxed == Integer.class)
+      {
+         return Integer.valueOf(text);
+      }
+      if (boxed == Short.class)
+      {
+         return Short.valueOf(text);
+      }
+      if (boxed == Byte.class)
+      {
+         return Byte.valueOf(text);
+      }
+      if (boxed == Double.class)
+      {
+         return Double.valueOf(text);
+      }
+      if (boxed == Float.class)
+      {
+         return Float.valueOf(text);
+      }
+      if (boxed == Boolean.class)
+      {
+         return Boolean.valueOf(text);
+      }
+      if (boxed == Character.class)
+      {
+         return text.charAt(0);
+      }
+      if (boxed == BigDecimal.class)
+      {
+         return new BigDecimal(text);
+      }
+      if (boxed == BigInteger.class)
+      {
+         return new BigInteger(text);
+      }
+      if (boxed == UUID.class)
+      {
+         return UUID.fromString(text);
+      }
+      if (boxed == LocalDate.class)
+      {
+         return LocalDate.parse(text);
+      }
+      if (boxed == LocalDateTime.class)
+      {
+         return LocalDateTime.parse(text);
+      }
+      if (boxed == LocalTime.class)
+      {
+         return LocalTime.parse(text);
+      }
+      if (boxed == Instant.class)
+      {
+         return Instant.parse(text);
+      }
+      if (boxed == OffsetDateTime.class)
+      {
+         return OffsetDateTime.parse(text);
+      }
+      if (boxed == ZonedDateTime.class)
+      {
+         return ZonedDateTime.parse(text);
+      }
+      if (boxed.isEnum())
+      {
+         return Enum.valueOf((Class<? extends Enum>) boxed, text);
+      }
+      throw new IllegalArgumentException("Keyset pagination does not support sort keys of type " + type.getName());
+   }
+}
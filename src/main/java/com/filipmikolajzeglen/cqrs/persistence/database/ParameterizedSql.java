@@ -0,0 +1,54 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+/**
+ * The SQL of a query with JDBC {@code ?} placeholders, and the values bound to them in placeholder order.
+ * <p>
+ * JPA does not expose the SQL of a typed query, so {@link QueryPlanExplainer#postgres} and
+ * {@link RowEstimator#postgres} take a function rendering it, e.g. from the SQL inspected by the persistence provider.
+ * Values are always bound as parameters, never inlined into the statement.
+ * </p>
+ *
+ * @param sql        the select statement with {@code ?} placeholders
+ * @param parameters the values of the placeholders, in order
+ */
+public record ParameterizedSql(String sql, List<Object> parameters)
+{
+   private static final Pattern SELECT = Pattern.compile("\\s*select\\s", Pattern.CASE_INSENSITIVE);
+
+   public ParameterizedSql
+   {
+      Objects.requireNonNull(sql, "sql");
+      parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+   }
+
+   /**
+    * Creates a native query prefixing this statement with the given {@code EXPLAIN} command, and binds the values.
+    *
+    * @param entityManager the entity manager
+    * @param explain       the explain command, e.g. {@code EXPLAIN}
+    * @return the native query
+    * @throws IllegalArgumentException if this statement is not a select, which the explain command could execute
+    */
+   Query explain(EntityManager entityManager, String explain)
+   {
+      if (!SELECT.matcher(sql).lookingAt())
+      {
+         throw new IllegalArgumentException("Only select statements can be explained");
+      }
+      Query query = entityManager.createNativeQuery(explain + " " + sql);
+      for (int i = 0; i < parameters.size(); i++)
+      {
+         query.setParameter(i + 1, parameters.get(i));
+      }
+      return query;
+   }
+}
@@ -0,0 +1,70 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Table;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Estimates numbers of rows from PostgreSQL planner statistics.
+ */
+final class PostgresRowEstimator implements RowEstimator
+{
+   private static final String TABLE_ESTIMATE =
+         "select cast(reltuples as bigint) from pg_class where oid = to_regclass(?1)";
+   private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+
+   private final Function<TypedQuery<?>, ParameterizedSql> sql;
+   private final Function<Class<?>, String> tableName;
+
+   PostgresRowEstimator(Function<TypedQuery<?>, ParameterizedSql> sql, Function<Class<?>, String> tableName)
+   {
+      this.sql = sql;
+      this.tableName = tableName;
+   }
+
+   @Override
+   public OptionalLong estimateTable(EntityManager entityManager, Class<?> entityType)
+   {
+      List<?> rows = entityManager.createNativeQuery(TABLE_ESTIMATE)
+            .setParameter(1, tableName.apply(entityType))
+            .getResultList();
+      if (rows.isEmpty() || rows.get(0) == null)
+      {
+         return OptionalLong.empty();
+      }
+      long estimate = ((Number) rows.get(0)).longValue();
+      // Tables never analyzed report -1 since PostgreSQL 14, and 0 before.
+      return estimate > 0 ? OptionalLong.of(estimate) : OptionalLong.empty();
+   }
+
+   @Override
+   public OptionalLong estimateQuery(EntityManager entityManager, TypedQuery<?> query)
+   {
+      List<?> plan = sql.apply(query).explain(entityManager, "EXPLAIN").getResultList();
+      if (plan.isEmpty())
+      {
+         return OptionalLong.empty();
+      }
+      Matcher rows = PLAN_ROWS.matcher(String.valueOf(plan.get(0)));
+      return rows.find() ? OptionalLong.of(Long.parseLong(rows.group(1))) : OptionalLong.empty();
+   }
+
+   /**
+    * Derives the table name from {@link Table}, as mapped without a physical naming strategy.
+    */
+   static String tableName(Class<?> entityType)
+   {
+      Table table = entityType.getAnnotation(Table.class);
+      if (table == null || table.name().isEmpty())
+      {
+         return entityType.getSimpleName();
+      }
+      return table.schema().isEmpty() ? table.name() : table.schema() + "." + table.name();
+   }
+}
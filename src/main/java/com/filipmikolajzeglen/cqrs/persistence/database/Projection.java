@@ -0,0 +1,274 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+/**
+ * Describes what a {@link DatabaseQuery} selects, handled by
+ * {@link DatabaseQueryHandler#handle(DatabaseQuery, Projection, com.filipmikolajzeglen.cqrs.core.ResultStrategy)}.
+ * <p>
+ * Selecting whole entities hydrates every column into managed entities, which the persistence context snapshots for
+ * dirty checking. Read models needing only a few columns can instead select them into a DTO or record through its
+ * constructor, or into a {@link Tuple} whose elements are aliased by property name. Entities that are only read can
+ * be loaded read-only, which skips the snapshots.
+ * </p>
+ *
+ * <pre>{@code
+ * List<NameView> views = handler.handle(query,
+ *       Projection.into(NameView.class, MyEntity::getName, MyEntity::getNumber), ResultStrategy.all());
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ * @param <VIEW>   the type of selected elements
+ */
+public final class Projection<ENTITY, VIEW>
+{
+   /**
+    * Hint marking the entities loaded by a query as read-only in Hibernate.
+    */
+   static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+
+   private final SelectionStrategy<ENTITY, VIEW> selectionStrategy;
+   private final boolean readOnly;
+
+   private Projection(SelectionStrategy<ENTITY, VIEW> selectionStrategy, boolean readOnly)
+   {
+      this.selectionStrategy = selectionStrategy;
+      this.readOnly = readOnly;
+   }
+
+   /**
+    * Selects managed entities, the default of {@link DatabaseQueryHandler}.
+    *
+    * @param entityType the entity type
+    * @param <ENTITY>   the entity type
+    * @return the projection
+    */
+   public static <ENTITY> Projection<ENTITY, ENTITY> entities(Class<ENTITY> entityType)
+   {
+      return new Projection<>(new SelectionStrategy.EntitySelection<>(entityType), false);
+   }
+
+   /**
+    * Selects read-only entities, which the persistence context does not snapshot for dirty checking. Changes made to
+    * them are not flushed.
+    *
+    * @param entityType the entity type
+    * @param <ENTITY>   the entity type
+    * @return the projection
+    */
+   public static <ENTITY> Projection<ENTITY, ENTITY> readOnlyEntities(Class<ENTITY> entityType)
+   {
+      return entities(entityType).readOnly();
+   }
+
+   /**
+    * Selects the given properties into instances of the view type, created through the constructor accepting the
+    * properties in the given order.
+    *
+    * @param viewType the view type, e.g. a record
+    * @param getters  the getter method references of the selected properties
+    * @param <ENTITY> the entity type
+    * @param <VIEW>   the view type
+    * @return the projection
+    */
+   @SafeVarargs
+   public static <ENTITY, VIEW> Projection<ENTITY, VIEW> into(Class<VIEW> viewType,
+         PropertyBuilder.Getter<ENTITY, ?>... getters)
+   {
+      return into(viewType, propertyNames(getters));
+   }
+
+   /**
+    * Selects the given properties into instances of the view type, created through the constructor accepting the
+    * properties in the given order.
+    *
+    * @param viewType   the view type, e.g. a record
+    * @param properties the names of the selected properties, nested properties separated by dots
+    * @param <ENTITY>   the entity type
+    * @param <VIEW>     the view type
+    * @return the projection
+    */
+   public static <ENTITY, VIEW> Projection<ENTITY, VIEW> into(Class<VIEW> viewType, String... properties)
+   {
+      return new Projection<>(new SelectionStrategy.ConstructorSelection<>(viewType, List.of(properties)), false);
+   }
+
+   /**
+    * Selects the given properties into tuples whose elements are aliased by property name.
+    *
+    * @param getters  the getter method references of the selected properties
+    * @param <ENTITY> the entity type
+    * @return the projection
+    */
+   @SafeVarargs
+   public static <ENTITY> Projection<ENTITY, Tuple> tuple(PropertyBuilder.Getter<ENTITY, ?>... getters)
+   {
+      return tuple(propertyNames(getters));
+   }
+
+   /**
+    * Selects the given properties into tuples whose elements are aliased by property name.
+    *
+    * @param properties the names of the selected properties, nested properties separated by dots
+    * @param <ENTITY>   the entity type
+    * @return the projection
+    */
+   public static <ENTITY> Projection<ENTITY, Tuple> tuple(String... properties)
+   {
+      return new Projection<>(new SelectionStrategy.TupleSelection<>(List.of(properties)), false);
+   }
+
+   /**
+    * Returns a copy of this projection marking loaded entities as read-only. Has no effect on projections selecting
+    * only property values, which are never managed.
+    *
+    * @return the read-only projection
+    */
+   public Projection<ENTITY, VIEW> readOnly()
+   {
+      return new Projection<>(selectionStrategy, true);
+   }
+
+   Class<VIEW> getResultType()
+   {
+      return selectionStrategy.resultType();
+   }
+
+   Selection<? extends VIEW> select(CriteriaBuilder cb, Root<ENTITY> root)
+   {
+      return selectionStrategy.select(cb, root);
+   }
+
+   /**
+    * Describes the selection independently of any query root.
+    *
+    * @return the shape of the selection
+    */
+   String shape()
+   {
+      return selectionStrategy.shape();
+   }
+
+   /**
+    * Tells whether this projection selects the entities themselves, which is the only selection fetch joins apply to.
+    *
+    * @return true for entity projections
+    */
+   boolean selectsEntities()
+   {
+      return selectionStrategy instanceof SelectionStrategy.EntitySelection;
+   }
+
+   /**
+    * Applies the hints of this projection to a query created from it.
+    *
+    * @param typedQuery the query
+    * @return the query
+    */
+   TypedQuery<VIEW> configure(TypedQuery<VIEW> typedQuery)
+   {
+      return readOnly ? typedQuery.setHint(READ_ONLY_HINT, true) : typedQuery;
+   }
+
+   private static String[] propertyNames(PropertyBuilder.Getter<?, ?>[] getters)
+   {
+      return Arrays.stream(getters)
+            .map(PropertyNameCache::propertyNameOf)
+            .toArray(String[]::new);
+   }
+
+   private static Path<?> resolve(Root<?> root, String property)
+   {
+      Path<?> path = root;
+      for (String step : property.split("\\."))
+      {
+         path = path.get(step);
+      }
+      return path;
+   }
+
+   private sealed interface SelectionStrategy<ENTITY, VIEW>
+   {
+      Class<VIEW> resultType();
+
+      Selection<? extends VIEW> select(CriteriaBuilder cb, Root<ENTITY> root);
+
+      String shape();
+
+      record EntitySelection<ENTITY>(Class<ENTITY> entityType) implements SelectionStrategy<ENTITY, ENTITY>
+      {
+         @Override
+         public Class<ENTITY> resultType()
+         {
+            return entityType;
+         }
+
+         @Override
+         public Selection<? extends ENTITY> select(CriteriaBuilder cb, Root<ENTITY> root)
+         {
+            return root;
+         }
+
+         @Override
+         public String shape()
+         {
+            return "entity";
+         }
+      }
+
+      record ConstructorSelection<ENTITY, VIEW>(Class<VIEW> viewType, List<String> properties)
+            implements SelectionStrategy<ENTITY, VIEW>
+      {
+         @Override
+         public Class<VIEW> resultType()
+         {
+            return viewType;
+         }
+
+         @Override
+         public Selection<? extends VIEW> select(CriteriaBuilder cb, Root<ENTITY> root)
+         {
+            return cb.construct(viewType, properties.stream()
+                  .map(property -> resolve(root, property))
+                  .toArray(Selection<?>[]::new));
+         }
+
+         @Override
+         public String shape()
+         {
+            return "new " + viewType.getName() + properties;
+         }
+      }
+
+      record TupleSelection<ENTITY>(List<String> properties) implements SelectionStrategy<ENTITY, Tuple>
+      {
+         @Override
+         public Class<Tuple> resultType()
+         {
+            return Tuple.class;
+         }
+
+         @Override
+         public Selection<? extends Tuple> select(CriteriaBuilder cb, Root<ENTITY> root)
+         {
+            return cb.tuple(properties.stream()
+                  .map(property -> resolve(root, property).alias(property))
+                  .toArray(Selection<?>[]::new));
+         }
+
+         @Override
+         public String shape()
+         {
+            return "tuple" + properties;
+         }
+      }
+   }
+}
@@ -1,12 +1,11 @@
 package com.filipmikolajzeglen.cqrs.persistence.database;
 
-import java.beans.Introspector;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.function.BiFunction;
 
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Path;
@@ -117,10 +116,7 @@ public class PropertyBuilder<ENTITY, PROPERTY>
       {
          return parent;
       }
-      return addRestriction((criteriaBuilder, root) -> {
-         Path<?> path = resolvePath(root);
-         return criteriaBuilder.equal(path, property);
-      });
+      return addRestriction(PropertyRestriction.Operator.EQUAL, Collections.singletonList(property));
    }
 
    /**
@@ -136,10 +132,7 @@ public class PropertyBuilder<ENTITY, PROPERTY>
       {
          return parent;
       }
-      return addRestriction((criteriaBuilder, root) -> {
-         Path<?> path = resolvePath(root);
-         return criteriaBuilder.equal(path, propertyOpt.get());
-      });
+      return addRestriction(PropertyRestriction.Operator.EQUAL, Collections.singletonList(propertyOpt.get()));
    }
 
    /**
@@ -149,10 +142,7 @@ public class PropertyBuilder<ENTITY, PROPERTY>
     */
    public DatabaseQuery.Builder<ENTITY> isNull()
    {
-      return addRestriction((criteriaBuilder, root) -> {
-         Path<?> path = resolvePath(root);
-         return criteriaBuilder.isNull(path);
-      });
+      return addRestriction(PropertyRestriction.Operator.IS_NULL, List.of());
    }
 
    /**
@@ -162,17 +152,19 @@ public class PropertyBuilder<ENTITY, PROPERTY>
     */
    public DatabaseQuery.Builder<ENTITY> isNotNull()
    {
-      return addRestriction((criteriaBuilder, root) -> {
-         Path<?> path = resolvePath(root);
-         return criteriaBuilder.isNotNull(path);
-      });
+      return addRestriction(PropertyRestriction.Operator.IS_NOT_NULL, List.of());
    }
 
    /**
     * Adds an "in" restriction for the property.
+    * <p>
+    * At most {@value InList#MAXIMUM_VALUES} distinct values fit into the bind parameters of one statement; larger sets
+    * of values must be queried in batches, e.g. with {@link DatabaseBatchLoader}.
+    * </p>
     *
     * @param properties the collection of values
     * @return the parent builder
+    * @throws IllegalArgumentException if there are more than {@value InList#MAXIMUM_VALUES} distinct values
     */
    public DatabaseQuery.Builder<ENTITY> in(Collection<PROPERTY> properties)
    {
@@ -206,45 +198,355 @@ public class PropertyBuilder<ENTITY, PROPERTY>
    }
 
    /**
-    * Adds a restriction using a custom predicate for the given collection of properties.
+    * Adds a restriction that the property is greater than the given value. The property must be comparable.
+    *
+    * @param property the lower bound, exclusive
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> greaterThan(PROPERTY property)
+   {
+      return compareWith(PropertyRestriction.Operator.GREATER_THAN, property);
+   }
+
+   /**
+    * Adds a restriction that the property is greater than the given value using Optional.
+    *
+    * @param propertyOpt the optional lower bound, exclusive
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> greaterThan(Optional<PROPERTY> propertyOpt)
+   {
+      return compareWith(PropertyRestriction.Operator.GREATER_THAN, propertyOpt);
+   }
+
+   /**
+    * Adds a restriction that the property is greater than or equal to the given value. The property must be
+    * comparable.
+    *
+    * @param property the lower bound, inclusive
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> greaterThanOrEqualTo(PROPERTY property)
+   {
+      return compareWith(PropertyRestriction.Operator.GREATER_THAN_OR_EQUAL, property);
+   }
+
+   /**
+    * Adds a restriction that the property is greater than or equal to the given value using Optional.
+    *
+    * @param propertyOpt the optional lower bound, inclusive
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> greaterThanOrEqualTo(Optional<PROPERTY> propertyOpt)
+   {
+      return compareWith(PropertyRestriction.Operator.GREATER_THAN_OR_EQUAL, propertyOpt);
+   }
+
+   /**
+    * Adds a restriction that the property is less than the given value. The property must be comparable.
+    *
+    * @param property the upper bound, exclusive
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> lessThan(PROPERTY property)
+   {
+      return compareWith(PropertyRestriction.Operator.LESS_THAN, property);
+   }
+
+   /**
+    * Adds a restriction that the property is less than the given value using Optional.
+    *
+    * @param propertyOpt the optional upper bound, exclusive
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> lessThan(Optional<PROPERTY> propertyOpt)
+   {
+      return compareWith(PropertyRestriction.Operator.LESS_THAN, propertyOpt);
+   }
+
+   /**
+    * Adds a restriction that the property is less than or equal to the given value. The property must be comparable.
+    *
+    * @param property the upper bound, inclusive
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> lessThanOrEqualTo(PROPERTY property)
+   {
+      return compareWith(PropertyRestriction.Operator.LESS_THAN_OR_EQUAL, property);
+   }
+
+   /**
+    * Adds a restriction that the property is less than or equal to the given value using Optional.
+    *
+    * @param propertyOpt the optional upper bound, inclusive
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> lessThanOrEqualTo(Optional<PROPERTY> propertyOpt)
+   {
+      return compareWith(PropertyRestriction.Operator.LESS_THAN_OR_EQUAL, propertyOpt);
+   }
+
+   /**
+    * Adds a restriction that the property lies between the given values, both inclusive. The property must be
+    * comparable.
+    *
+    * @param from the lower bound, inclusive
+    * @param to   the upper bound, inclusive
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> between(PROPERTY from, PROPERTY to)
+   {
+      if (!optionality.shouldApply(from) || !optionality.shouldApply(to))
+      {
+         return parent;
+      }
+      return addRestriction(PropertyRestriction.Operator.BETWEEN, List.of(requireBound(from), requireBound(to)));
+   }
+
+   /**
+    * Adds a restriction that the property lies between the given values using Optional. An empty bound leaves that
+    * side of the range open, so a range with only one bound becomes an inclusive comparison and a range without
+    * bounds adds no restriction.
+    *
+    * @param fromOpt the optional lower bound, inclusive
+    * @param toOpt   the optional upper bound, inclusive
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> between(Optional<PROPERTY> fromOpt, Optional<PROPERTY> toOpt)
+   {
+      if (fromOpt.isEmpty())
+      {
+         return compareWith(PropertyRestriction.Operator.LESS_THAN_OR_EQUAL, toOpt);
+      }
+      if (toOpt.isEmpty())
+      {
+         return compareWith(PropertyRestriction.Operator.GREATER_THAN_OR_EQUAL, fromOpt);
+      }
+      if (!optionality.shouldApply(fromOpt) || !optionality.shouldApply(toOpt))
+      {
+         return parent;
+      }
+      return addRestriction(PropertyRestriction.Operator.BETWEEN, List.of(fromOpt.get(), toOpt.get()));
+   }
+
+   /**
+    * Adds a restriction that the text property starts with the given prefix. Wildcards in the prefix are matched
+    * literally.
+    * <p>
+    * The restriction is translated to {@code like 'prefix%'}, which the database can answer with a range scan of a
+    * btree index. On PostgreSQL this requires an index declared with {@code text_pattern_ops}, or a column using the
+    * {@code C} collation.
+    * </p>
+    *
+    * @param prefix the prefix
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> startsWith(String prefix)
+   {
+      if (!optionality.shouldApply(prefix))
+      {
+         return parent;
+      }
+      return addRestriction(PropertyRestriction.Operator.LIKE, List.of(escapeWildcards(requireBound(prefix)) + "%"));
+   }
+
+   /**
+    * Adds a restriction that the text property starts with the given prefix using Optional.
+    *
+    * @param prefixOpt the optional prefix
+    * @return the parent builder
+    * @see #startsWith(String)
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> startsWith(Optional<String> prefixOpt)
+   {
+      if (!optionality.shouldApply(prefixOpt) || prefixOpt.isEmpty())
+      {
+         return parent;
+      }
+      return addRestriction(PropertyRestriction.Operator.LIKE, List.of(escapeWildcards(prefixOpt.get()) + "%"));
+   }
+
+   /**
+    * Adds a restriction that the text property matches the given pattern, in which {@code %} matches any text,
+    * {@code _} any single character and {@code \} escapes the next character. Patterns starting with a wildcard
+    * cannot use an index.
+    *
+    * @param pattern the pattern
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> like(String pattern)
+   {
+      return match(PropertyRestriction.Operator.LIKE, pattern);
+   }
+
+   /**
+    * Adds a restriction that the text property matches the given pattern using Optional.
+    *
+    * @param patternOpt the optional pattern
+    * @return the parent builder
+    * @see #like(String)
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> like(Optional<String> patternOpt)
+   {
+      return match(PropertyRestriction.Operator.LIKE, patternOpt);
+   }
+
+   /**
+    * Adds a restriction that the text property matches the given pattern ignoring case. The syntax of the pattern is
+    * the same as in {@link #like(String)}.
+    * <p>
+    * The restriction compares the lower-cased property with the lower-cased pattern, so it can use an index on the
+    * lower-cased column.
+    * </p>
+    *
+    * @param pattern the pattern
+    * @return the parent builder
+    */
+   public DatabaseQuery.Builder<ENTITY> ilike(String pattern)
+   {
+      return match(PropertyRestriction.Operator.ILIKE, pattern == null ? null : pattern.toLowerCase(Locale.ROOT));
+   }
+
+   /**
+    * Adds a restriction that the text property matches the given pattern ignoring case using Optional.
+    *
+    * @param patternOpt the optional pattern
+    * @return the parent builder
+    * @see #ilike(String)
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   public DatabaseQuery.Builder<ENTITY> ilike(Optional<String> patternOpt)
+   {
+      return match(PropertyRestriction.Operator.ILIKE, patternOpt.map(pattern -> pattern.toLowerCase(Locale.ROOT)));
+   }
+
+   /**
+    * Adds an "in" restriction for the given collection of properties. Null elements match null property values.
     *
     * @param properties the collection of property values
     * @return the parent builder
     */
    private DatabaseQuery.Builder<ENTITY> getEntityBuilder(Collection<PROPERTY> properties)
    {
-      return addRestriction((criteriaBuilder, root) -> {
-         Path<?> path = resolvePath(root);
-         Collection<PROPERTY> filtered = properties.stream()
-               .filter(Objects::nonNull)
-               .toList();
+      return addRestriction(PropertyRestriction.Operator.IN, new ArrayList<>(properties));
+   }
 
-         Predicate predicate = path.in(filtered);
+   /**
+    * Adds a restriction comparing the property with the given value.
+    *
+    * @param operator the comparison operator
+    * @param property the compared value
+    * @return the parent builder
+    */
+   private DatabaseQuery.Builder<ENTITY> compareWith(PropertyRestriction.Operator operator, PROPERTY property)
+   {
+      if (!optionality.shouldApply(property))
+      {
+         return parent;
+      }
+      return addRestriction(operator, List.of(requireBound(property)));
+   }
 
-         if (properties.contains(null))
-         {
-            predicate = criteriaBuilder.or(predicate, criteriaBuilder.isNull(path));
-         }
+   /**
+    * Adds a restriction comparing the property with the given value, if present.
+    *
+    * @param operator    the comparison operator
+    * @param propertyOpt the optional compared value
+    * @return the parent builder
+    */
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   private DatabaseQuery.Builder<ENTITY> compareWith(PropertyRestriction.Operator operator,
+         Optional<PROPERTY> propertyOpt)
+   {
+      if (!optionality.shouldApply(propertyOpt) || propertyOpt.isEmpty())
+      {
+         return parent;
+      }
+      return addRestriction(operator, List.of(propertyOpt.get()));
+   }
 
-         return predicate;
-      });
+   /**
+    * Adds a restriction matching the property with the given pattern.
+    *
+    * @param operator the pattern operator
+    * @param pattern  the pattern
+    * @return the parent builder
+    */
+   private DatabaseQuery.Builder<ENTITY> match(PropertyRestriction.Operator operator, String pattern)
+   {
+      if (!optionality.shouldApply(pattern))
+      {
+         return parent;
+      }
+      return addRestriction(operator, List.of(requireBound(pattern)));
    }
 
    /**
-    * Adds a restriction using the provided predicate function.
+    * Adds a restriction matching the property with the given pattern, if present.
     *
-    * @param predicateFn the function to create a predicate
+    * @param operator   the pattern operator
+    * @param patternOpt the optional pattern
     * @return the parent builder
     */
-   private DatabaseQuery.Builder<ENTITY> addRestriction(
-         BiFunction<CriteriaBuilder, Root<ENTITY>, Predicate> predicateFn)
+   @SuppressWarnings({ "OptionalUsedAsFieldOrParameterType" })
+   private DatabaseQuery.Builder<ENTITY> match(PropertyRestriction.Operator operator, Optional<String> patternOpt)
    {
-      parent.withRestriction((criteriaBuilder, root) -> {
-         Predicate rawPredicate = predicateFn.apply(criteriaBuilder, root);
-         return negationStrategy.apply(criteriaBuilder, rawPredicate);
-      });
+      if (!optionality.shouldApply(patternOpt) || patternOpt.isEmpty())
+      {
+         return parent;
+      }
+      return addRestriction(operator, List.of(patternOpt.get()));
+   }
 
-      return parent;
+   /**
+    * Rejects null comparison values, which would never match.
+    */
+   private static <T> T requireBound(T value)
+   {
+      if (value == null)
+      {
+         throw new IllegalArgumentException("Comparison value must not be null, use isNull() to match null values");
+      }
+      return value;
+   }
+
+   /**
+    * Escapes the wildcards of a pattern, so that it matches the given text literally.
+    */
+   private static String escapeWildcards(String text)
+   {
+      StringBuilder escaped = new StringBuilder(text.length() + 4);
+      for (int i = 0; i < text.length(); i++)
+      {
+         char c = text.charAt(i);
+         if (c == '%' || c == '_' || c == PropertyRestriction.Operator.ESCAPE)
+         {
+            escaped.append(PropertyRestriction.Operator.ESCAPE);
+         }
+         escaped.append(c);
+      }
+      return escaped.toString();
+   }
+
+   /**
+    * Adds a property restriction with the given operator and values.
+    *
+    * @param operator the restriction operator
+    * @param values   the values compared with the property
+    * @return the parent builder
+    */
+   private DatabaseQuery.Builder<ENTITY> addRestriction(PropertyRestriction.Operator operator, List<?> values)
+   {
+      return parent.addRestriction(
+            new PropertyRestriction<>(new PropertyPath<>(accessorStrategy, pathStepStrategies), operator, values,
+                  negationStrategy));
    }
 
    /**
@@ -296,6 +598,13 @@ public class PropertyBuilder<ENTITY, PROPERTY>
        */
       Path<?> resolve(Root<ENTITY> root);
 
+      /**
+       * Returns the name of the accessed property.
+       *
+       * @return the property name
+       */
+      String propertyName();
+
       /**
        * Creates an accessor strategy using a property getter.
        *
@@ -333,15 +642,13 @@ public class PropertyBuilder<ENTITY, PROPERTY>
          @Override
          public Path<?> resolve(Root<ENTITY> root)
          {
-            String propertyName = propertyNameFrom(getter);
-            return root.get(propertyName);
+            return root.get(propertyName());
          }
 
-         private String propertyNameFrom(PropertyBuilder.Getter<ENTITY, PROPERTY> getter)
+         @Override
+         public String propertyName()
          {
-            FunctionalReference.Introspection introspection = getter.introspect();
-            String methodName = introspection.referencedMethod().getName();
-            return Introspector.decapitalize(methodName.replaceFirst("^(get|is)", ""));
+            return PropertyNameCache.propertyNameOf(getter);
          }
       }
 
@@ -362,6 +669,12 @@ public class PropertyBuilder<ENTITY, PROPERTY>
          {
             return root.get(path);
          }
+
+         @Override
+         public String propertyName()
+         {
+            return path;
+         }
       }
    }
 
@@ -498,22 +811,69 @@ public class PropertyBuilder<ENTITY, PROPERTY>
    }
 
    /**
-    * Resolves the full property path, including all nested steps.
+    * Full property path, including all nested steps.
     *
-    * @param root the root entity
-    * @return the resolved property path
+    * @param <ENTITY> the entity type
     */
-   private Path<?> resolvePath(Root<ENTITY> root)
+   static final class PropertyPath<ENTITY>
    {
-      Path<?> path = accessorStrategy.resolve(root);
-      if (!pathStepStrategies.isEmpty())
+      private final AccessorStrategy<ENTITY> accessorStrategy;
+      private final List<PathStepStrategy> pathStepStrategies;
+
+      private PropertyPath(AccessorStrategy<ENTITY> accessorStrategy, List<PathStepStrategy> pathStepStrategies)
       {
+         this.accessorStrategy = accessorStrategy;
+         this.pathStepStrategies = pathStepStrategies;
+      }
+
+      /**
+       * Resolves the full property path, including all nested steps.
+       *
+       * @param root the root entity
+       * @return the resolved property path
+       */
+      Path<?> resolve(Root<ENTITY> root)
+      {
+         Path<?> path = accessorStrategy.resolve(root);
+         if (!pathStepStrategies.isEmpty())
+         {
+            for (int i = 1; i < pathStepStrategies.size(); i++)
+            {
+               path = pathStepStrategies.get(i).apply(path);
+            }
+         }
+         return path;
+      }
+
+      /**
+       * Returns the dot-separated property names of the path.
+       *
+       * @return the path name
+       */
+      String name()
+      {
+         StringBuilder name = new StringBuilder(accessorStrategy.propertyName());
          for (int i = 1; i < pathStepStrategies.size(); i++)
          {
-            path = pathStepStrategies.get(i).apply(path);
+            name.append('.').append(pathStepStrategies.get(i).propertyName());
          }
+         return name.toString();
+      }
+
+      /**
+       * Paths are equal if they navigate the same property names, whether given by getters or by names.
+       */
+      @Override
+      public boolean equals(Object o)
+      {
+         return this == o || o instanceof PropertyPath<?> other && name().equals(other.name());
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return name().hashCode();
       }
-      return path;
    }
 
    /**
@@ -529,6 +889,13 @@ public class PropertyBuilder<ENTITY, PROPERTY>
        */
       Path<?> apply(Path<?> from);
 
+      /**
+       * Returns the name of the property this step navigates to.
+       *
+       * @return the property name
+       */
+      String propertyName();
+
       /**
        * Creates a step using a getter reference.
        *
@@ -561,15 +928,13 @@ public class PropertyBuilder<ENTITY, PROPERTY>
          @Override
          public Path<?> apply(Path<?> from)
          {
-            String propertyName = propertyNameFrom(getter);
-            return from.get(propertyName);
+            return from.get(propertyName());
          }
 
-         private String propertyNameFrom(Getter<?, ?> getter)
+         @Override
+         public String propertyName()
          {
-            FunctionalReference.Introspection introspection = getter.introspect();
-            String methodName = introspection.referencedMethod().getName();
-            return Introspector.decapitalize(methodName.replaceFirst("^(get|is)", ""));
+            return PropertyNameCache.propertyNameOf(getter);
          }
       }
 
@@ -587,6 +952,12 @@ public class PropertyBuilder<ENTITY, PROPERTY>
          {
             return from.get(propertyName);
          }
+
+         @Override
+         public String propertyName()
+         {
+            return propertyName;
+         }
       }
    }
 }
@@ -0,0 +1,139 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.beans.Introspector;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.perfectable.introspection.FunctionalReference;
+
+/**
+ * Shared cache of property names resolved from {@link PropertyBuilder.Getter} and {@link PropertyBuilder.Setter}
+ * method references.
+ * <p>
+ * Resolving a method reference requires introspecting the serialized lambda, which is too expensive to repeat every
+ * time a predicate is built. Resolved names are cached under the implementation class of the lambda, so each call site
+ * is introspected only once. The cache is bounded; when it is full the oldest entries are evicted.
+ * </p>
+ * <p>
+ * Only lambda implementation classes are cached, because they are the only classes guaranteed to reference a single
+ * method. Other {@link FunctionalReference} implementations are resolved on every call.
+ * </p>
+ */
+public final class PropertyNameCache
+{
+   /**
+    * Maximum number of method references kept in the cache.
+    */
+   static final int MAXIMUM_SIZE = 4096;
+
+   private static final Pattern GETTER_PREFIX = Pattern.compile("^(get|is)");
+   private static final Pattern SETTER_PREFIX = Pattern.compile("^set");
+
+   private static final BoundedCache<Class<?>, String> REFERENCES = new BoundedCache<>(MAXIMUM_SIZE);
+   private static final Map<Method, String> ACCESSORS = new ConcurrentHashMap<>();
+
+   private PropertyNameCache()
+   {
+   }
+
+   /**
+    * Pre-computes property names for the accessors of the given entity types.
+    * <p>
+    * Intended to be called at startup. Afterward, the first use of a method reference to any of these accessors only
+    * pays for the lambda introspection.
+    * </p>
+    *
+    * @param entityTypes the entity classes to warm up
+    */
+   public static void warmUp(Class<?>... entityTypes)
+   {
+      for (Class<?> entityType : entityTypes)
+      {
+         for (Method method : entityType.getMethods())
+         {
+            if (Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class)
+            {
+               continue;
+            }
+            if (method.getParameterCount() == 0 && GETTER_PREFIX.matcher(method.getName()).find())
+            {
+               ACCESSORS.put(method, toPropertyName(method.getName(), GETTER_PREFIX));
+            }
+            else if (method.getParameterCount() == 1 && SETTER_PREFIX.matcher(method.getName()).find())
+            {
+               ACCESSORS.put(method, toPropertyName(method.getName(), SETTER_PREFIX));
+            }
+         }
+      }
+   }
+
+   /**
+    * Removes all cached names.
+    */
+   public static void clear()
+   {
+      REFERENCES.clear();
+      ACCESSORS.clear();
+   }
+
+   /**
+    * Resolves the property name referenced by the given getter.
+    *
+    * @param getter the getter method reference
+    * @return the property name
+    */
+   static String propertyNameOf(PropertyBuilder.Getter<?, ?> getter)
+   {
+      return resolve(getter, GETTER_PREFIX);
+   }
+
+   /**
+    * Resolves the property name referenced by the given setter.
+    *
+    * @param setter the setter method reference
+    * @return the property name
+    */
+   static String propertyNameOf(PropertyBuilder.Setter<?, ?> setter)
+   {
+      return resolve(setter, SETTER_PREFIX);
+   }
+
+   /**
+    * Returns the number of cached method references.
+    *
+    * @return the number of cached method references
+    */
+   static int size()
+   {
+      return REFERENCES.size();
+   }
+
+   private static String resolve(FunctionalReference reference, Pattern prefix)
+   {
+      Class<?> referenceType = reference.getClass();
+      boolean cacheable = referenceType.isHidden();
+      if (cacheable)
+      {
+         String cached = REFERENCES.get(referenceType);
+         if (cached != null)
+         {
+            return cached;
+         }
+      }
+      Method method = reference.introspect().referencedMethod();
+      String propertyName = ACCESSORS.get(method);
+      if (propertyName == null)
+      {
+         propertyName = toPropertyName(method.getName(), prefix);
+      }
+      return cacheable ? REFERENCES.put(referenceType, propertyName) : propertyName;
+   }
+
+   private static String toPropertyName(String methodName, Pattern prefix)
+   {
+      return Introspector.decapitalize(prefix.matcher(methodName).replaceFirst(""));
+   }
+}
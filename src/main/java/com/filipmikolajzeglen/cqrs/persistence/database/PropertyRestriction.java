@@ -0,0 +1,479 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Restriction on a single property built by {@link PropertyBuilder}.
+ * <p>
+ * Unlike restrictions added through {@link DatabaseQuery.Builder#withRestriction}, a property restriction knows its
+ * property path, operator and values. This allows it to describe its shape independently of the values, and to
+ * translate itself into a predicate whose values are bound through query parameters.
+ * </p>
+ * <p>
+ * Property restrictions are immutable and equal if they restrict the same property path with the same operator,
+ * values and negation, regardless of whether the path was given by getters or by names. The values of {@code in}
+ * restrictions are held in an {@link InList}, which splits them into chunks once, when the restriction is created.
+ * </p>
+ *
+ * @param <ENTITY> the entity type
+ */
+final class PropertyRestriction<ENTITY> implements Restriction<ENTITY>
+{
+   private final PropertyBuilder.PropertyPath<ENTITY> path;
+   private final Operator operator;
+   private final List<Object> values;
+   private final PropertyBuilder.NegationStrategy negationStrategy;
+
+   PropertyRestriction(PropertyBuilder.PropertyPath<ENTITY> path, Operator operator, List<?> values,
+         PropertyBuilder.NegationStrategy negationStrategy)
+   {
+      this.path = path;
+      this.operator = operator;
+      this.values = operator == Operator.IN ? InList.of(values) : Collections.unmodifiableList(new ArrayList<>(values));
+      this.negationStrategy = negationStrategy;
+   }
+
+   @Override
+   public Predicate toPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root)
+   {
+      Predicate predicate = operator.toPredicate(criteriaBuilder, path.resolve(root), values);
+      return negationStrategy.apply(criteriaBuilder, predicate);
+   }
+
+   @Override
+   public boolean isParameterizable()
+   {
+      return true;
+   }
+
+   @Override
+   public Predicate toParameterizedPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root,
+         QueryParameters parameters)
+   {
+      Predicate predicate = operator.toParameterizedPredicate(criteriaBuilder, path.resolve(root), values, parameters);
+      return negationStrategy.apply(criteriaBuilder, predicate);
+   }
+
+   @Override
+   public void collectParameterValues(List<Object> target)
+   {
+      operator.collectParameterValues(values, target);
+   }
+
+   @Override
+   public String shape()
+   {
+      String shape = path.name() + " " + operator.shape(values);
+      return isNegated() ? "not " + shape : shape;
+   }
+
+   @Override
+   public Restriction<ENTITY> negate()
+   {
+      return new PropertyRestriction<>(path, operator, values, negationStrategy.negate());
+   }
+
+   @Override
+   public boolean equals(Object o)
+   {
+      if (this == o)
+      {
+         return true;
+      }
+      if (!(o instanceof PropertyRestriction<?> other))
+      {
+         return false;
+      }
+      return operator == other.operator
+            && negationStrategy == other.negationStrategy
+            && path.equals(other.path)
+            && values.equals(other.values);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return Objects.hash(path, operator, values, negationStrategy);
+   }
+
+   boolean isNegated()
+   {
+      return negationStrategy != PropertyBuilder.NegationStrategy.INITIAL;
+   }
+
+   /**
+    * Tells whether this restriction matches the property against a list of non-null values, so that it can be
+    * merged with other such restrictions on the same property.
+    *
+    * @return true for {@code equalTo} and {@code in} restrictions without null values
+    */
+   boolean isMembership()
+   {
+      return (operator == Operator.EQUAL || operator == Operator.IN) && !values.contains(null);
+   }
+
+   /**
+    * Returns the dot-separated property names of the restricted path.
+    *
+    * @return the path name
+    */
+   String pathName()
+   {
+      return path.name();
+   }
+
+   /**
+    * Merges two {@link #isMembership() membership} restrictions on the same property into one restriction matching
+    * the values of both, with the negation of this restriction.
+    *
+    * @param other the restriction to merge
+    * @return an {@code equalTo} restriction if a single distinct value remains, an {@code in} restriction otherwise
+    */
+   PropertyRestriction<ENTITY> union(PropertyRestriction<ENTITY> other)
+   {
+      Set<Object> union = new LinkedHashSet<>(values);
+      union.addAll(other.values);
+      Operator merged = union.size() == 1 ? Operator.EQUAL : Operator.IN;
+      return new PropertyRestriction<>(path, merged, new ArrayList<>(union), negationStrategy);
+   }
+
+   /**
+    * Operators supported by property restrictions.
+    */
+   enum Operator
+   {
+      EQUAL
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.equal(path, values.get(0));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.equal(path, parameters.next(path));
+               }
+
+               @Override
+               void collectParameterValues(List<Object> values, List<Object> target)
+               {
+                  target.add(values.get(0));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "= ?";
+               }
+            },
+      IN
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  List<Predicate> chunks = new ArrayList<>();
+                  for (List<Object> chunk : InList.of(values).chunks())
+                  {
+                     chunks.add(path.in(chunk));
+                  }
+                  return orNull(cb, path, values, chunks);
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  List<Predicate> chunks = new ArrayList<>();
+                  for (List<Object> chunk : InList.of(values).chunks())
+                  {
+                     Expression<?>[] expressions = new Expression<?>[chunk.size()];
+                     for (int i = 0; i < expressions.length; i++)
+                     {
+                        expressions[i] = parameters.next(path);
+                     }
+                     chunks.add(path.in(expressions));
+                  }
+                  return orNull(cb, path, values, chunks);
+               }
+
+               @Override
+               void collectParameterValues(List<Object> values, List<Object> target)
+               {
+                  InList.of(values).chunks().forEach(target::addAll);
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  List<String> chunks = new ArrayList<>();
+                  for (List<Object> chunk : InList.of(values).chunks())
+                  {
+                     chunks.add("in (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")");
+                  }
+                  return String.join(" or ", chunks) + (values.contains(null) ? " or is null" : "");
+               }
+            },
+      GREATER_THAN
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.greaterThan(comparable(path), comparableValue(values.get(0)));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.greaterThan(comparable(path), comparable(parameters.next(path)));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "> ?";
+               }
+            },
+      GREATER_THAN_OR_EQUAL
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.greaterThanOrEqualTo(comparable(path), comparableValue(values.get(0)));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.greaterThanOrEqualTo(comparable(path), comparable(parameters.next(path)));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return ">= ?";
+               }
+            },
+      LESS_THAN
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.lessThan(comparable(path), comparableValue(values.get(0)));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.lessThan(comparable(path), comparable(parameters.next(path)));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "< ?";
+               }
+            },
+      LESS_THAN_OR_EQUAL
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.lessThanOrEqualTo(comparable(path), comparableValue(values.get(0)));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.lessThanOrEqualTo(comparable(path), comparable(parameters.next(path)));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "<= ?";
+               }
+            },
+      BETWEEN
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.between(comparable(path), comparableValue(values.get(0)), comparableValue(values.get(1)));
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.between(comparable(path), comparable(parameters.next(path)),
+                        comparable(parameters.next(path)));
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "between ? and ?";
+               }
+            },
+      /**
+       * Pattern match with {@code \} as the escape character. Prefix patterns without leading wildcards can be
+       * answered from a btree index.
+       */
+      LIKE
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.like(text(path), (String) values.get(0), ESCAPE);
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  return cb.like(text(path), text(parameters.next(path)), ESCAPE);
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "like ?";
+               }
+            },
+      /**
+       * Case-insensitive pattern match of the lower-cased property against a lower-cased pattern.
+       */
+      ILIKE
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.like(cb.lower(text(path)), (String) values.get(0), ESCAPE);
+               }
+
+               @Override
+               Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                     QueryParameters parameters)
+               {
+                  Expression<String> lower = cb.lower(text(path));
+                  return cb.like(lower, text(parameters.next(lower)), ESCAPE);
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "ilike ?";
+               }
+            },
+      IS_NULL
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.isNull(path);
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "is null";
+               }
+            },
+      IS_NOT_NULL
+            {
+               @Override
+               Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values)
+               {
+                  return cb.isNotNull(path);
+               }
+
+               @Override
+               String shape(List<Object> values)
+               {
+                  return "is not null";
+               }
+            };
+
+      /**
+       * Builds the predicate with the values inlined into the criteria tree.
+       */
+      abstract Predicate toPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values);
+
+      /**
+       * Builds the predicate with the values replaced by parameters. Operators without values build the same
+       * predicate in both modes.
+       */
+      Predicate toParameterizedPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+            QueryParameters parameters)
+      {
+         return toPredicate(cb, path, values);
+      }
+
+      /**
+       * Collects the values bound to the parameters created by {@link #toParameterizedPredicate}, by default all
+       * values in order.
+       */
+      void collectParameterValues(List<Object> values, List<Object> target)
+      {
+         target.addAll(values);
+      }
+
+      /**
+       * Describes the operator and the number of its parameters.
+       */
+      abstract String shape(List<Object> values);
+
+      /**
+       * Escape character of {@link #LIKE} and {@link #ILIKE} patterns.
+       */
+      static final char ESCAPE = '\\';
+
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      private static Expression<Comparable> comparable(Expression<?> expression)
+      {
+         return (Expression<Comparable>) expression;
+      }
+
+      @SuppressWarnings("rawtypes")
+      private static Comparable comparableValue(Object value)
+      {
+         return (Comparable) value;
+      }
+
+      @SuppressWarnings("unchecked")
+      private static Expression<String> text(Expression<?> expression)
+      {
+         return (Expression<String>) expression;
+      }
+
+      /**
+       * Combines the chunks of an {@code in} restriction, matching null property values if the values contain null.
+       */
+      private static Predicate orNull(CriteriaBuilder cb, Path<?> path, List<Object> values, List<Predicate> chunks)
+      {
+         if (values.contains(null))
+         {
+            chunks.add(cb.isNull(path));
+         }
+         return chunks.size() == 1 ? chunks.get(0) : cb.or(chunks.toArray(Predicate[]::new));
+      }
+   }
+}
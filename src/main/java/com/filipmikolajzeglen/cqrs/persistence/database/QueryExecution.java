@@ -0,0 +1,174 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Tracks the statements issued while {@link DatabaseQueryHandler} handles one query and reports them to
+ * {@link DatabaseMetrics} and {@link SlowQueryWatchdog}.
+ */
+sealed interface QueryExecution
+{
+   /**
+    * Creates a typed query, measuring the time spent building its criteria tree.
+    *
+    * @param factory creates the typed query
+    * @param <T>     the type of the created query
+    * @return the created query
+    */
+   <T> T build(Supplier<T> factory);
+
+   /**
+    * Executes the given query, returning all rows.
+    *
+    * @param typedQuery the query to execute
+    * @param <RESULT>   the row type
+    * @return the rows
+    */
+   <RESULT> List<RESULT> list(TypedQuery<RESULT> typedQuery);
+
+   /**
+    * Executes the given query, returning its single row.
+    *
+    * @param typedQuery the query to execute
+    * @param <RESULT>   the row type
+    * @return the row
+    */
+   <RESULT> RESULT single(TypedQuery<RESULT> typedQuery);
+
+   /**
+    * Reports the statements issued so far as one query.
+    *
+    * @param shape supplies the shape of the query, called only if measured
+    */
+   void complete(Supplier<QueryShape> shape);
+
+   /**
+    * Executes queries without measuring them.
+    */
+   final class Unmeasured implements QueryExecution
+   {
+      static final QueryExecution INSTANCE = new Unmeasured();
+
+      @Override
+      public <T> T build(Supplier<T> factory)
+      {
+         return factory.get();
+      }
+
+      @Override
+      public <RESULT> List<RESULT> list(TypedQuery<RESULT> typedQuery)
+      {
+         return typedQuery.getResultList();
+      }
+
+      @Override
+      public <RESULT> RESULT single(TypedQuery<RESULT> typedQuery)
+      {
+         return typedQuery.getSingleResult();
+      }
+
+      @Override
+      public void complete(Supplier<QueryShape> shape)
+      {
+      }
+   }
+
+   /**
+    * Sums build and execution times, rows and statements of one query, and remembers its slowest statement. Not
+    * thread-safe, a new instance is used for every handled query.
+    * <p>
+    * Without metrics, the shape of a query is only computed if the query is slow, so watching fast queries costs one
+    * comparison.
+    * </p>
+    */
+   final class Measured implements QueryExecution
+   {
+      private final DatabaseMetrics metrics;
+      private final SlowQueryWatchdog watchdog;
+      private final EntityManager entityManager;
+      private long buildNanos;
+      private long executionNanos;
+      private long rows;
+      private int statements;
+      private long slowestNanos = -1;
+      private TypedQuery<?> slowestStatement;
+
+      /**
+       * @param metrics       the metrics receiving every query, or null if only slow queries are reported
+       * @param watchdog      the watchdog reporting slow queries
+       * @param entityManager the entity manager executing the query
+       */
+      Measured(DatabaseMetrics metrics, SlowQueryWatchdog watchdog, EntityManager entityManager)
+      {
+         this.metrics = metrics;
+         this.watchdog = watchdog;
+         this.entityManager = entityManager;
+      }
+
+      @Override
+      public <T> T build(Supplier<T> factory)
+      {
+         long start = System.nanoTime();
+         T built = factory.get();
+         buildNanos += System.nanoTime() - start;
+         return built;
+      }
+
+      @Override
+      public <RESULT> List<RESULT> list(TypedQuery<RESULT> typedQuery)
+      {
+         long start = System.nanoTime();
+         List<RESULT> results = typedQuery.getResultList();
+         executed(typedQuery, start, results.size());
+         return results;
+      }
+
+      @Override
+      public <RESULT> RESULT single(TypedQuery<RESULT> typedQuery)
+      {
+         long start = System.nanoTime();
+         RESULT result = typedQuery.getSingleResult();
+         executed(typedQuery, start, 1);
+         return result;
+      }
+
+      @Override
+      public void complete(Supplier<QueryShape> shape)
+      {
+         boolean slow = watchdog.isSlow(executionNanos);
+         if (metrics == null && !slow)
+         {
+            return;
+         }
+         QueryShape queryShape = shape.get();
+         Duration executionTime = Duration.ofNanos(executionNanos);
+         if (metrics != null)
+         {
+            metrics.queryExecuted(new QueryMeasurement(queryShape.entityType(), queryShape.operation(),
+                  queryShape.fingerprint(), Duration.ofNanos(buildNanos), executionTime, rows, statements));
+         }
+         if (slow)
+         {
+            watchdog.report(entityManager, queryShape, executionTime, statements, slowestStatement);
+         }
+      }
+
+      private void executed(TypedQuery<?> typedQuery, long start, int rowCount)
+      {
+         long elapsed = System.nanoTime() - start;
+         executionNanos += elapsed;
+         rows += rowCount;
+         statements++;
+         if (elapsed > slowestNanos)
+         {
+            slowestNanos = elapsed;
+            slowestStatement = typedQuery;
+         }
+      }
+   }
+}
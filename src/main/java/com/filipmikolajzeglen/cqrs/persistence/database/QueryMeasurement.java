@@ -0,0 +1,24 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+
+/**
+ * Measurement of one query handled by {@link DatabaseQueryHandler}.
+ * <p>
+ * A query may issue several statements, e.g. a page and its total count. Times and rows are summed over all of them.
+ * Statements issued by the persistence provider on its own, like lazy loads of associations, are not included.
+ * </p>
+ *
+ * @param entityType    the queried entity type
+ * @param operation     the kind of result, e.g. {@code list}, {@code paged} or {@code count}
+ * @param fingerprint   identifies the shape of the query: its restrictions, fetch paths, selection, sort orders and
+ *                      operation, independently of the values
+ * @param buildTime     the time spent building criteria trees and creating typed queries
+ * @param executionTime the time spent executing statements and reading their results
+ * @param rows          the number of rows returned by all statements
+ * @param statements    the number of statements issued
+ */
+public record QueryMeasurement(Class<?> entityType, String operation, String fingerprint, Duration buildTime,
+                               Duration executionTime, long rows, int statements)
+{
+}
@@ -0,0 +1,49 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.ParameterExpression;
+
+/**
+ * Collects the {@link ParameterExpression}s created while compiling a {@link QueryTemplate}, in the order in which
+ * their values are bound.
+ */
+final class QueryParameters
+{
+   private final CriteriaBuilder criteriaBuilder;
+   private final List<ParameterExpression<?>> expressions = new ArrayList<>();
+
+   QueryParameters(CriteriaBuilder criteriaBuilder)
+   {
+      this.criteriaBuilder = criteriaBuilder;
+   }
+
+   /**
+    * Creates the next parameter, typed after the expression it will be compared with.
+    *
+    * @param comparedWith the expression the parameter is compared with
+    * @return the new parameter
+    */
+   ParameterExpression<?> next(Expression<?> comparedWith)
+   {
+      Class<?> type = MethodType.methodType(comparedWith.getJavaType()).wrap().returnType();
+      ParameterExpression<?> parameter = criteriaBuilder.parameter(type);
+      expressions.add(parameter);
+      return parameter;
+   }
+
+   /**
+    * Returns the created parameters in binding order.
+    *
+    * @return the parameters
+    */
+   List<ParameterExpression<?>> expressions()
+   {
+      return Collections.unmodifiableList(expressions);
+   }
+}
@@ -0,0 +1,48 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Captures the execution plan of a slow query for {@link SlowQueryWatchdog}.
+ * <p>
+ * JPA does not expose the SQL of a typed query, so explainers depend on the persistence provider or on the database.
+ * </p>
+ */
+@FunctionalInterface
+public interface QueryPlanExplainer
+{
+   /**
+    * Captures the execution plan of the given query.
+    *
+    * @param entityManager a separate entity manager of the factory which executed the query, without a transaction
+    * @param query         the executed query
+    * @return the lines of the plan
+    */
+   List<String> explain(EntityManager entityManager, TypedQuery<?> query);
+
+   /**
+    * Returns an explainer running {@code EXPLAIN (ANALYZE, BUFFERS)} on PostgreSQL.
+    * <p>
+    * {@code ANALYZE} executes the statement again to measure it, so only select statements are explained. The given
+    * function renders the SQL of a query with placeholders and the values to bind to them. The statement runs on the
+    * separate entity manager given by {@link SlowQueryWatchdog}, so it does not see uncommitted changes of the
+    * transaction which executed the query, and a failing statement does not abort that transaction.
+    * </p>
+    *
+    * @param sql renders the SQL of a query
+    * @return the explainer, throwing {@link IllegalArgumentException} if the rendered SQL is not a select statement
+    */
+   static QueryPlanExplainer postgres(Function<TypedQuery<?>, ParameterizedSql> sql)
+   {
+      return (entityManager, query) -> sql.apply(query)
+            .explain(entityManager, "EXPLAIN (ANALYZE, BUFFERS)")
+            .getResultList()
+            .stream()
+            .map(String::valueOf)
+            .toList();
+   }
+}
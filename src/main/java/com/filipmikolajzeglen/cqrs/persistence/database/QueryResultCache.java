@@ -0,0 +1,293 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategyType;
+
+/**
+ * Cache of query results kept by {@link CachingDatabaseQueryHandler}.
+ * <p>
+ * Results are kept for the time to live of their entity type and evicted least recently used first once the cache is
+ * full. Registered as the {@link EntityChangeListener} of command handlers, the cache drops all results of an entity
+ * type whenever a command changes entities of that type, of one of its subtypes or of one of its supertypes.
+ * </p>
+ * <p>
+ * Results are dropped once the changing transaction has committed, so queries starting afterward read the new state.
+ * A query which started before the commit may have read the previous state; its result is returned but not cached.
+ * Results are shared between callers and must not be modified.
+ * </p>
+ *
+ * <pre>{@code
+ * QueryResultCache cache = QueryResultCache.builder()
+ *       .timeToLive(Duration.ofMinutes(1))
+ *       .timeToLive(Country.class, Duration.ofHours(1))
+ *       .build();
+ * }</pre>
+ */
+public final class QueryResultCache implements EntityChangeListener
+{
+   /**
+    * Default maximum number of results kept by the cache.
+    */
+   public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+   private final int maximumSize;
+   private final long defaultTimeToLiveNanos;
+   private final Map<Class<?>, Long> timeToLiveNanos;
+   private final LongSupplier nanoClock;
+   private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+   private final LongAdder hitCount = new LongAdder();
+   private final LongAdder missCount = new LongAdder();
+   private final LongAdder evictionCount = new LongAdder();
+   private long generation;
+
+   private QueryResultCache(Builder builder, LongSupplier nanoClock)
+   {
+      this.maximumSize = builder.maximumSize;
+      this.defaultTimeToLiveNanos = builder.defaultTimeToLive.toNanos();
+      this.timeToLiveNanos = Map.copyOf(builder.timeToLiveNanos);
+      this.nanoClock = nanoClock;
+   }
+
+   /**
+    * Creates a new builder.
+    *
+    * @return a new builder
+    */
+   public static Builder builder()
+   {
+      return new Builder();
+   }
+
+   /**
+    * Drops all results of queries on entities related to the given type.
+    *
+    * @param entityType the changed entity type
+    */
+   @Override
+   public void entitiesChanged(Class<?> entityType)
+   {
+      synchronized (entries)
+      {
+         generation++;
+         entries.keySet().removeIf(key -> isRelated(key.entityType(), entityType));
+      }
+   }
+
+   /**
+    * Drops all results.
+    */
+   public void clear()
+   {
+      entitiesChanged(Object.class);
+   }
+
+   /**
+    * Returns a snapshot of the cache statistics.
+    *
+    * @return the statistics
+    */
+   public Statistics statistics()
+   {
+      return new Statistics(hitCount.sum(), missCount.sum(), evictionCount.sum());
+   }
+
+   /**
+    * Returns the result cached under the given key, computing it with the given query if absent or expired.
+    * <p>
+    * A result computed while the cache was invalidated is returned but not cached, because it may reflect the state
+    * from before the change.
+    * </p>
+    *
+    * @param key   identifies the query
+    * @param query computes the result
+    * @return the result
+    */
+   @SuppressWarnings("unchecked")
+   <RESULT> RESULT get(Key key, Supplier<RESULT> query)
+   {
+      long observedGeneration;
+      synchronized (entries)
+      {
+         Entry entry = entries.get(key);
+         if (entry != null && !entry.isExpired(nanoClock.getAsLong()))
+         {
+            hitCount.increment();
+            return (RESULT) entry.result();
+         }
+         observedGeneration = generation;
+      }
+      missCount.increment();
+      RESULT result = query.get();
+      synchronized (entries)
+      {
+         if (generation == observedGeneration)
+         {
+            entries.put(key, new Entry(result, nanoClock.getAsLong() + timeToLiveOf(key.entityType())));
+            evictOverflow();
+         }
+      }
+      return result;
+   }
+
+   int size()
+   {
+      synchronized (entries)
+      {
+         return entries.size();
+      }
+   }
+
+   private long timeToLiveOf(Class<?> entityType)
+   {
+      return timeToLiveNanos.getOrDefault(entityType, defaultTimeToLiveNanos);
+   }
+
+   private void evictOverflow()
+   {
+      Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+      while (entries.size() > maximumSize && leastRecentlyUsed.hasNext())
+      {
+         leastRecentlyUsed.next();
+         leastRecentlyUsed.remove();
+         evictionCount.increment();
+      }
+   }
+
+   private static boolean isRelated(Class<?> cachedType, Class<?> changedType)
+   {
+      return cachedType.isAssignableFrom(changedType) || changedType.isAssignableFrom(cachedType);
+   }
+
+   /**
+    * Identifies a query by its shape, its values and what its result strategy selects.
+    *
+    * @param entityType   the queried entity type
+    * @param restrictions the value-free shapes of the restrictions
+    * @param values       the values bound to the restrictions
+    * @param fetches      the fetched association paths
+    * @param strategy     the type of the result strategy
+    * @param orders       the sort orders of the result strategy
+    * @param window       the offset, limit, page and size of the result strategy, {@code null} where unsupported
+    */
+   record Key(Class<?> entityType, List<String> restrictions, List<Object> values, List<String> fetches,
+              ResultStrategyType strategy, List<String> orders, List<Integer> window)
+   {
+   }
+
+   /**
+    * Snapshot of cache statistics.
+    *
+    * @param hitCount      the number of results served from the cache
+    * @param missCount     the number of results computed by the query
+    * @param evictionCount the number of results evicted because the cache was full
+    */
+   public record Statistics(long hitCount, long missCount, long evictionCount)
+   {
+      /**
+       * Returns the ratio of hits to all requests.
+       *
+       * @return the hit rate, or 0 if there were no requests
+       */
+      public double hitRate()
+      {
+         long requestCount = hitCount + missCount;
+         return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+      }
+   }
+
+   private record Entry(Object result, long expiresAt)
+   {
+      boolean isExpired(long now)
+      {
+         return now - expiresAt >= 0;
+      }
+   }
+
+   /**
+    * Builder for {@link QueryResultCache}.
+    */
+   public static final class Builder
+   {
+      private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+      private Duration defaultTimeToLive = Duration.ofMinutes(1);
+      private final Map<Class<?>, Long> timeToLiveNanos = new HashMap<>();
+
+      private Builder()
+      {
+      }
+
+      /**
+       * Sets the maximum number of results kept by the cache.
+       *
+       * @param maximumSize the maximum number of results
+       * @return this builder
+       */
+      public Builder maximumSize(int maximumSize)
+      {
+         if (maximumSize <= 0)
+         {
+            throw new IllegalArgumentException("Maximum size must be positive, was " + maximumSize);
+         }
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      /**
+       * Sets how long results are kept unless configured for their entity type. Defaults to one minute.
+       *
+       * @param timeToLive how long a result stays valid
+       * @return this builder
+       */
+      public Builder timeToLive(Duration timeToLive)
+      {
+         this.defaultTimeToLive = requirePositive(timeToLive);
+         return this;
+      }
+
+      /**
+       * Sets how long results of queries on the given entity type are kept.
+       *
+       * @param entityType the queried entity type
+       * @param timeToLive how long a result stays valid
+       * @return this builder
+       */
+      public Builder timeToLive(Class<?> entityType, Duration timeToLive)
+      {
+         timeToLiveNanos.put(entityType, requirePositive(timeToLive).toNanos());
+         return this;
+      }
+
+      /**
+       * Builds the {@link QueryResultCache} instance.
+       *
+       * @return the cache
+       */
+      public QueryResultCache build()
+      {
+         return build(System::nanoTime);
+      }
+
+      QueryResultCache build(LongSupplier nanoClock)
+      {
+         return new QueryResultCache(this, nanoClock);
+      }
+
+      private static Duration requirePositive(Duration timeToLive)
+      {
+         if (timeToLive.isNegative() || timeToLive.isZero())
+         {
+            throw new IllegalArgumentException("Time to live must be positive, was " + timeToLive);
+         }
+         return timeToLive;
+      }
+   }
+}
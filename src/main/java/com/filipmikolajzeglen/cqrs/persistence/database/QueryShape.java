@@ -0,0 +1,26 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+
+/**
+ * Value-free description of a handled query, used for metric fingerprints and slow query reports.
+ *
+ * @param entityType   the queried entity type
+ * @param operation    the kind of result, e.g. {@code list} or {@code count batch}
+ * @param selection    the shape of the selection
+ * @param restrictions the shapes of the restrictions, with custom restrictions described as {@code custom}
+ * @param orders       the shapes of the sort orders
+ */
+record QueryShape(Class<?> entityType, String operation, String selection, List<String> restrictions,
+                  List<String> orders)
+{
+   /**
+    * Computes the fingerprint of this shape, equal for queries differing only in their values.
+    *
+    * @return the fingerprint
+    */
+   String fingerprint()
+   {
+      return Fingerprint.of(List.of(entityType.getName(), operation, selection, restrictions, orders));
+   }
+}
@@ -0,0 +1,56 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.ParameterExpression;
+
+/**
+ * A {@link CriteriaQuery} compiled once for a query shape, whose values are bound through parameters on every
+ * execution.
+ * <p>
+ * One template is shared by all threads and entity managers using the same {@link QueryTemplateCache}. The criteria
+ * tree is therefore complete when the template is created and never modified afterwards: it is only handed to
+ * {@link EntityManager#createQuery(CriteriaQuery)}, and values are bound on the resulting {@link TypedQuery}, which
+ * belongs to a single execution. The tree and its parameters are never exposed outside of this class.
+ * </p>
+ *
+ * @param <RESULT> the result type of the criteria query
+ */
+final class QueryTemplate<RESULT>
+{
+   private final CriteriaQuery<RESULT> criteriaQuery;
+   private final List<ParameterExpression<?>> parameters;
+
+   QueryTemplate(CriteriaQuery<RESULT> criteriaQuery, List<ParameterExpression<?>> parameters)
+   {
+      this.criteriaQuery = criteriaQuery;
+      this.parameters = List.copyOf(parameters);
+   }
+
+   /**
+    * Creates a typed query from this template and binds the given values.
+    *
+    * @param entityManager the entity manager
+    * @param values        the parameter values, in binding order
+    * @return the typed query ready for execution
+    */
+   TypedQuery<RESULT> createQuery(EntityManager entityManager, List<Object> values)
+   {
+      if (values.size() != parameters.size())
+      {
+         throw new IllegalArgumentException(
+               "Query template expects " + parameters.size() + " parameter values, got " + values.size());
+      }
+      TypedQuery<RESULT> typedQuery = entityManager.createQuery(criteriaQuery);
+      for (int i = 0; i < parameters.size(); i++)
+      {
+         @SuppressWarnings("unchecked")
+         ParameterExpression<Object> parameter = (ParameterExpression<Object>) parameters.get(i);
+         typedQuery.setParameter(parameter, values.get(i));
+      }
+      return typedQuery;
+   }
+}
@@ -0,0 +1,132 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Cache of compiled query templates, enabling the prepared query mode of {@link DatabaseQueryHandler}.
+ * <p>
+ * A query built only from {@link PropertyBuilder} restrictions is compiled once per shape (entity type, restriction
+ * structure, selection and ordering) into a {@link jakarta.persistence.criteria.CriteriaQuery} using parameters.
+ * Later executions of queries with the same shape only bind their values, skipping criteria construction and letting
+ * the persistence provider reuse its translation. Queries containing custom restrictions added through
+ * {@link DatabaseQuery.Builder#withRestriction} are always built from scratch.
+ * </p>
+ * <p>
+ * The cache is thread-safe and meant to be shared by all handlers created for entity managers of the same
+ * {@link jakarta.persistence.EntityManagerFactory}. It must not be shared between factories.
+ * </p>
+ * <p>
+ * Templates are shared across threads and entity managers, so the persistence provider must not modify a criteria
+ * query when it creates a typed query from it. Hibernate interprets the shared tree directly unless it is configured
+ * to copy it, and caches its translation only if the plan cache is enabled for criteria queries. Set both properties
+ * on the factory using this cache; {@link DatabaseQueryHandler.Builder#preparedQueries} fails on a Hibernate factory
+ * which does not copy criteria trees:
+ * </p>
+ *
+ * <pre>{@code
+ * hibernate.criteria.copy_tree=true
+ * hibernate.criteria.plan_cache_enabled=true
+ * }</pre>
+ */
+public final class QueryTemplateCache
+{
+   /**
+    * Default maximum number of cached templates.
+    */
+   public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+   private static final String COPY_TREE = "hibernate.criteria.copy_tree";
+   private static final String HIBERNATE_PREFIX = "hibernate.";
+
+   private final BoundedCache<Key, QueryTemplate<?>> templates;
+
+   /**
+    * Creates a cache holding at most {@link #DEFAULT_MAXIMUM_SIZE} templates.
+    */
+   public QueryTemplateCache()
+   {
+      this(DEFAULT_MAXIMUM_SIZE);
+   }
+
+   /**
+    * Creates a cache holding at most the given number of templates.
+    *
+    * @param maximumSize the maximum number of templates
+    */
+   public QueryTemplateCache(int maximumSize)
+   {
+      this.templates = new BoundedCache<>(maximumSize);
+   }
+
+   /**
+    * Verifies that the persistence provider of the given factory copies criteria queries instead of interpreting the
+    * shared templates directly. Factories configured with Hibernate settings must set
+    * {@code hibernate.criteria.copy_tree=true}; other providers are trusted not to modify criteria queries.
+    *
+    * @param entityManagerFactory the factory of the entity managers using the templates
+    * @throws IllegalStateException if Hibernate is configured without copying criteria trees
+    */
+   static void requireCopiedCriteria(EntityManagerFactory entityManagerFactory)
+   {
+      Map<String, Object> properties = entityManagerFactory.getProperties();
+      boolean hibernate = properties.keySet().stream().anyMatch(key -> key.startsWith(HIBERNATE_PREFIX));
+      if (hibernate && !Boolean.parseBoolean(String.valueOf(properties.get(COPY_TREE))))
+      {
+         throw new IllegalStateException("Prepared queries share criteria queries between entity managers and "
+               + "require " + COPY_TREE + "=true");
+      }
+   }
+
+   /**
+    * Returns the number of cached templates.
+    *
+    * @return the number of templates
+    */
+   public int size()
+   {
+      return templates.size();
+   }
+
+   /**
+    * Removes all cached templates.
+    */
+   public void clear()
+   {
+      templates.clear();
+   }
+
+   /**
+    * Returns the template cached under the given key, compiling and caching it if absent.
+    *
+    * @param key      the template key
+    * @param compiler compiles the template on a cache miss
+    * @param <RESULT> the result type of the template
+    * @return the cached template
+    */
+   @SuppressWarnings("unchecked")
+   <RESULT> QueryTemplate<RESULT> get(Key key, Supplier<QueryTemplate<RESULT>> compiler)
+   {
+      QueryTemplate<?> template = templates.get(key);
+      if (template == null)
+      {
+         template = templates.put(key, compiler.get());
+      }
+      return (QueryTemplate<RESULT>) template;
+   }
+
+   /**
+    * Identifies a query shape.
+    *
+    * @param entityType   the queried entity type
+    * @param selection    what the query selects, e.g. entities or their count
+    * @param restrictions the value-free shapes of the restrictions
+    * @param orders       the value-free shapes of the sort orders
+    */
+   record Key(Class<?> entityType, String selection, List<String> restrictions, List<String> orders)
+   {
+   }
+}
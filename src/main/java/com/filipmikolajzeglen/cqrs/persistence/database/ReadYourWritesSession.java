@@ -0,0 +1,82 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which entity types a session changed recently, so that {@link RoutingDatabaseQueryHandler} reads them
+ * from the primary until replicas have caught up.
+ * <p>
+ * Registered as the {@link EntityChangeListener} of the session's command handlers, it pins queries on an entity type
+ * to the primary for the given window after a command changing entities of that type, of one of its subtypes or of one
+ * of its supertypes is committed. The window, which starts at the commit, should exceed the usual replication lag. A
+ * session is typically kept per user session and shared by its requests.
+ * </p>
+ *
+ * <pre>{@code
+ * ReadYourWritesSession session = new ReadYourWritesSession(Duration.ofSeconds(5));
+ * CommandHandler<DatabaseCommand<Order>, Order> commandHandler =
+ *       new DatabaseCommandHandler<>(primary, session, afterCommit);
+ * }</pre>
+ */
+public final class ReadYourWritesSession implements EntityChangeListener
+{
+   private final long windowNanos;
+   private final LongSupplier nanoClock;
+   private final Map<Class<?>, Long> lastChanges = new ConcurrentHashMap<>();
+
+   /**
+    * Creates a session pinning changed entity types to the primary for the given window.
+    *
+    * @param window how long reads of a changed entity type go to the primary
+    */
+   public ReadYourWritesSession(Duration window)
+   {
+      this(window, System::nanoTime);
+   }
+
+   ReadYourWritesSession(Duration window, LongSupplier nanoClock)
+   {
+      if (window.isNegative())
+      {
+         throw new IllegalArgumentException("Window must not be negative, was " + window);
+      }
+      this.windowNanos = window.toNanos();
+      this.nanoClock = nanoClock;
+   }
+
+   /**
+    * Records that changes to entities of the given type were committed now.
+    *
+    * @param entityType the changed entity type
+    */
+   @Override
+   public void entitiesChanged(Class<?> entityType)
+   {
+      lastChanges.put(entityType, nanoClock.getAsLong());
+   }
+
+   /**
+    * Tells whether queries on the given entity type must read from the primary.
+    *
+    * @param entityType the queried entity type
+    * @return true if a related entity type was changed within the window
+    */
+   boolean isPinned(Class<?> entityType)
+   {
+      if (lastChanges.isEmpty())
+      {
+         return false;
+      }
+      long now = nanoClock.getAsLong();
+      lastChanges.values().removeIf(changedAt -> now - changedAt >= windowNanos);
+      return lastChanges.keySet().stream().anyMatch(changed -> isRelated(entityType, changed));
+   }
+
+   private static boolean isRelated(Class<?> queriedType, Class<?> changedType)
+   {
+      return queriedType.isAssignableFrom(changedType) || changedType.isAssignableFrom(queriedType);
+   }
+}
@@ -0,0 +1,84 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Read replicas serving queries routed by {@link RoutingDatabaseQueryHandler}.
+ * <p>
+ * Every query runs with its own {@link EntityManager} created from the selected replica's factory and closed when the
+ * query completes, so returned entities are detached. A pool is shared by all handlers of the application, so that
+ * selection spreads the load of all of them.
+ * </p>
+ *
+ * <pre>{@code
+ * ReplicaPool replicas = ReplicaPool.of(List.of(replicaA, replicaB), ReplicaSelection.LEAST_LOADED);
+ * }</pre>
+ */
+public final class ReplicaPool
+{
+   private final List<EntityManagerFactory> replicas;
+   private final ReplicaSelection selection;
+   private final List<AtomicInteger> inFlight;
+   private final AtomicLong selections = new AtomicLong();
+
+   private ReplicaPool(List<EntityManagerFactory> replicas, ReplicaSelection selection)
+   {
+      if (replicas.isEmpty())
+      {
+         throw new IllegalArgumentException("At least one replica is required");
+      }
+      this.replicas = replicas;
+      this.selection = selection;
+      this.inFlight = new ArrayList<>(replicas.size());
+      replicas.forEach(replica -> inFlight.add(new AtomicInteger()));
+   }
+
+   /**
+    * Creates a pool of the given replicas.
+    *
+    * @param replicas  the entity manager factories of the replicas
+    * @param selection the strategy choosing the replica of each query
+    * @return the replica pool
+    */
+   public static ReplicaPool of(List<EntityManagerFactory> replicas, ReplicaSelection selection)
+   {
+      return new ReplicaPool(List.copyOf(replicas), selection);
+   }
+
+   /**
+    * Runs the given work on a selected replica.
+    *
+    * @param work     the work using an entity manager of the replica
+    * @param <RESULT> the result type
+    * @return the result of the work
+    */
+   <RESULT> RESULT execute(Function<EntityManager, RESULT> work)
+   {
+      int replica = selection.select(inFlight, selections);
+      AtomicInteger load = inFlight.get(replica);
+      load.incrementAndGet();
+      try
+      {
+         EntityManager entityManager = replicas.get(replica).createEntityManager();
+         try
+         {
+            return work.apply(entityManager);
+         }
+         finally
+         {
+            entityManager.close();
+         }
+      }
+      finally
+      {
+         load.decrementAndGet();
+      }
+   }
+}
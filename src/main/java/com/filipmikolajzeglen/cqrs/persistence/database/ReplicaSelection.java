@@ -0,0 +1,54 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strategy for choosing the replica of a {@link ReplicaPool} which executes the next query.
+ */
+public enum ReplicaSelection
+{
+   /**
+    * Uses the replicas in turn.
+    */
+   ROUND_ROBIN
+         {
+            @Override
+            int select(List<AtomicInteger> inFlight, AtomicLong selections)
+            {
+               return (int) Math.floorMod(selections.getAndIncrement(), (long) inFlight.size());
+            }
+         },
+   /**
+    * Uses the replica executing the fewest queries, the first one on ties.
+    */
+   LEAST_LOADED
+         {
+            @Override
+            int select(List<AtomicInteger> inFlight, AtomicLong selections)
+            {
+               int selected = 0;
+               int lowest = Integer.MAX_VALUE;
+               for (int i = 0; i < inFlight.size(); i++)
+               {
+                  int load = inFlight.get(i).get();
+                  if (load < lowest)
+                  {
+                     selected = i;
+                     lowest = load;
+                  }
+               }
+               return selected;
+            }
+         };
+
+   /**
+    * Selects a replica.
+    *
+    * @param inFlight   the number of queries executing on each replica
+    * @param selections the number of selections made so far
+    * @return the index of the selected replica
+    */
+   abstract int select(List<AtomicInteger> inFlight, AtomicLong selections);
+}
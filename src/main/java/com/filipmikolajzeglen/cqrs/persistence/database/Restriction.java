@@ -1,11 +1,18 @@
 package com.filipmikolajzeglen.cqrs.persistence.database;
 
+import java.util.List;
+
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 
 /**
  * Represents a restriction that can be converted to a JPA {@link Predicate}.
+ * <p>
+ * Restrictions added through {@link DatabaseQuery.Builder#withRestriction} are opaque: they can only be translated
+ * with their values inlined, and all share the same shape. Restrictions built by {@link PropertyBuilder} and the
+ * groups combining them override the default methods to support parameterized translation.
+ * </p>
  *
  * @param <ENTITY> the entity type
  */
@@ -19,4 +26,61 @@ interface Restriction<ENTITY>
     * @return the predicate representing this restriction
     */
    Predicate toPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root);
-}
\ No newline at end of file
+
+   /**
+    * Tells whether this restriction can be translated into a parameterized predicate.
+    *
+    * @return false for custom restrictions
+    */
+   default boolean isParameterizable()
+   {
+      return false;
+   }
+
+   /**
+    * Converts this restriction to a JPA predicate whose values are replaced by parameters.
+    * <p>
+    * Parameters are registered in the same order in which {@link #collectParameterValues} collects the values.
+    * </p>
+    *
+    * @param criteriaBuilder the criteria builder
+    * @param root            the root entity
+    * @param parameters      the parameters of the query being compiled
+    * @return the parameterized predicate
+    * @throws IllegalStateException if this restriction is not {@link #isParameterizable() parameterizable}
+    */
+   default Predicate toParameterizedPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root,
+         QueryParameters parameters)
+   {
+      throw new IllegalStateException("Custom restrictions cannot be parameterized");
+   }
+
+   /**
+    * Adds the values bound to the parameters of this restriction to the given list.
+    *
+    * @param target the list receiving parameter values
+    */
+   default void collectParameterValues(List<Object> target)
+   {
+   }
+
+   /**
+    * Describes the structure of this restriction without its values.
+    *
+    * @return the value-free shape, {@code custom} for custom restrictions
+    */
+   default String shape()
+   {
+      return "custom";
+   }
+
+   /**
+    * Returns the negation of this restriction.
+    *
+    * @return the negated restriction
+    */
+   default Restriction<ENTITY> negate()
+   {
+      return RestrictionGroup.negated(this);
+   }
+}
@@ -0,0 +1,258 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Restrictions combined by a conjunction or disjunction, built by {@link DatabaseQuery.Builder#allOf},
+ * {@link DatabaseQuery.Builder#anyOf} and {@link DatabaseQuery.Builder#noneOf}.
+ * <p>
+ * Groups are simplified when they are created, so that they translate into fewer and simpler predicates:
+ * </p>
+ * <ul>
+ *    <li>empty groups, typically left by {@link PropertyBuilder#optionally()}, are dropped,</li>
+ *    <li>groups of a single restriction are replaced by that restriction,</li>
+ *    <li>groups nested in a group of the same junction are inlined,</li>
+ *    <li>{@code equalTo} and {@code in} restrictions on the same property are merged into one {@code in} restriction
+ *    in a disjunction, and their negations in a conjunction,</li>
+ *    <li>negations are pushed into single restrictions, so that double negations cancel out.</li>
+ * </ul>
+ *
+ * @param <ENTITY> the entity type
+ */
+final class RestrictionGroup<ENTITY> implements Restriction<ENTITY>
+{
+   private final Junction junction;
+   private final List<Restriction<ENTITY>> restrictions;
+   private final PropertyBuilder.NegationStrategy negationStrategy;
+
+   private RestrictionGroup(Junction junction, List<Restriction<ENTITY>> restrictions,
+         PropertyBuilder.NegationStrategy negationStrategy)
+   {
+      this.junction = junction;
+      this.restrictions = List.copyOf(restrictions);
+      this.negationStrategy = negationStrategy;
+   }
+
+   /**
+    * Combines the given restrictions and simplifies the result.
+    *
+    * @param junction     how the restrictions are combined
+    * @param restrictions the restrictions of the group
+    * @param <ENTITY>     the entity type
+    * @return the simplified restriction, or empty if no restrictions were given
+    */
+   static <ENTITY> Optional<Restriction<ENTITY>> of(Junction junction, List<Restriction<ENTITY>> restrictions)
+   {
+      List<Restriction<ENTITY>> simplified = simplify(junction, restrictions);
+      return switch (simplified.size())
+      {
+         case 0 -> Optional.empty();
+         case 1 -> Optional.of(simplified.get(0));
+         default -> Optional.of(new RestrictionGroup<>(junction, simplified, PropertyBuilder.NegationStrategy.INITIAL));
+      };
+   }
+
+   /**
+    * Wraps a restriction which cannot negate itself into a negated group.
+    *
+    * @param restriction the restriction to negate
+    * @param <ENTITY>    the entity type
+    * @return the negated restriction
+    */
+   static <ENTITY> Restriction<ENTITY> negated(Restriction<ENTITY> restriction)
+   {
+      return new RestrictionGroup<>(Junction.ALL_OF, List.of(restriction),
+            PropertyBuilder.NegationStrategy.INITIAL.negate());
+   }
+
+   /**
+    * Simplifies restrictions combined by the given junction, without combining them into a group. This is used for
+    * the top-level restrictions of a query, which are combined by a conjunction.
+    *
+    * @param junction     how the restrictions are combined
+    * @param restrictions the restrictions
+    * @param <ENTITY>     the entity type
+    * @return the simplified restrictions
+    */
+   static <ENTITY> List<Restriction<ENTITY>> simplify(Junction junction, List<Restriction<ENTITY>> restrictions)
+   {
+      List<Restriction<ENTITY>> flattened = new ArrayList<>(restrictions.size());
+      for (Restriction<ENTITY> restriction : restrictions)
+      {
+         if (restriction instanceof RestrictionGroup<ENTITY> group && group.junction == junction && !group.isNegated())
+         {
+            flattened.addAll(group.restrictions);
+         }
+         else
+         {
+            flattened.add(restriction);
+         }
+      }
+      return mergeMemberships(junction, flattened);
+   }
+
+   @Override
+   public Predicate toPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root)
+   {
+      Predicate[] predicates = restrictions.stream()
+            .map(r -> r.toPredicate(criteriaBuilder, root))
+            .toArray(Predicate[]::new);
+      return negationStrategy.apply(criteriaBuilder, junction.combine(criteriaBuilder, predicates));
+   }
+
+   @Override
+   public boolean isParameterizable()
+   {
+      return restrictions.stream().allMatch(Restriction::isParameterizable);
+   }
+
+   @Override
+   public Predicate toParameterizedPredicate(CriteriaBuilder criteriaBuilder, Root<ENTITY> root,
+         QueryParameters parameters)
+   {
+      Predicate[] predicates = restrictions.stream()
+            .map(r -> r.toParameterizedPredicate(criteriaBuilder, root, parameters))
+            .toArray(Predicate[]::new);
+      return negationStrategy.apply(criteriaBuilder, junction.combine(criteriaBuilder, predicates));
+   }
+
+   @Override
+   public void collectParameterValues(List<Object> target)
+   {
+      restrictions.forEach(r -> r.collectParameterValues(target));
+   }
+
+   @Override
+   public String shape()
+   {
+      List<String> shapes = restrictions.stream()
+            .map(Restriction::shape)
+            .toList();
+      String shape = "(" + String.join(junction.separator, shapes) + ")";
+      return isNegated() ? "not " + shape : shape;
+   }
+
+   @Override
+   public Restriction<ENTITY> negate()
+   {
+      if (restrictions.size() == 1)
+      {
+         return isNegated() ? restrictions.get(0) : restrictions.get(0).negate();
+      }
+      return new RestrictionGroup<>(junction, restrictions, negationStrategy.negate());
+   }
+
+   @Override
+   public boolean equals(Object o)
+   {
+      if (this == o)
+      {
+         return true;
+      }
+      if (!(o instanceof RestrictionGroup<?> other))
+      {
+         return false;
+      }
+      return junction == other.junction
+            && negationStrategy == other.negationStrategy
+            && restrictions.equals(other.restrictions);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return Objects.hash(junction, restrictions, negationStrategy);
+   }
+
+   private boolean isNegated()
+   {
+      return negationStrategy != PropertyBuilder.NegationStrategy.INITIAL;
+   }
+
+   /**
+    * Merges the membership restrictions on the same property which the junction allows to merge, keeping the
+    * position of the first one.
+    */
+   private static <ENTITY> List<Restriction<ENTITY>> mergeMemberships(Junction junction,
+         List<Restriction<ENTITY>> restrictions)
+   {
+      Map<String, Integer> positions = new HashMap<>();
+      List<Restriction<ENTITY>> merged = new ArrayList<>(restrictions.size());
+      for (Restriction<ENTITY> restriction : restrictions)
+      {
+         if (restriction instanceof PropertyRestriction<ENTITY> property && junction.merges(property))
+         {
+            Integer position = positions.putIfAbsent(property.pathName(), merged.size());
+            if (position != null)
+            {
+               merged.set(position, ((PropertyRestriction<ENTITY>) merged.get(position)).union(property));
+               continue;
+            }
+         }
+         merged.add(restriction);
+      }
+      return merged;
+   }
+
+   /**
+    * How the restrictions of a group are combined.
+    */
+   enum Junction
+   {
+      ALL_OF(" and ")
+            {
+               @Override
+               Predicate combine(CriteriaBuilder cb, Predicate[] predicates)
+               {
+                  return cb.and(predicates);
+               }
+
+               @Override
+               boolean merges(PropertyRestriction<?> restriction)
+               {
+                  return restriction.isMembership() && restriction.isNegated();
+               }
+            },
+      ANY_OF(" or ")
+            {
+               @Override
+               Predicate combine(CriteriaBuilder cb, Predicate[] predicates)
+               {
+                  return cb.or(predicates);
+               }
+
+               @Override
+               boolean merges(PropertyRestriction<?> restriction)
+               {
+                  return restriction.isMembership() && !restriction.isNegated();
+               }
+            };
+
+      private final String separator;
+
+      Junction(String separator)
+      {
+         this.separator = separator;
+      }
+
+      /**
+       * Combines the predicates of the group.
+       */
+      abstract Predicate combine(CriteriaBuilder cb, Predicate[] predicates);
+
+      /**
+       * Tells whether the restriction can be merged with other restrictions on the same property: {@code a = 1 or
+       * a = 2} is {@code a in (1, 2)}, and {@code a <> 1 and a <> 2} is {@code a not in (1, 2)}.
+       */
+      abstract boolean merges(PropertyRestriction<?> restriction);
+   }
+}
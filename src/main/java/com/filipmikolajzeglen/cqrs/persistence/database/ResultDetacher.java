@@ -0,0 +1,104 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.filipmikolajzeglen.cqrs.core.PagedResult;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategyVisitor;
+import com.filipmikolajzeglen.cqrs.core.SliceResult;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Detaches the entities of a query result from the entity manager which loaded them, so that the result can be shared
+ * between callers without sharing managed instances.
+ * <p>
+ * Only the entities of the result are detached; entities associated with them stay managed unless the association
+ * cascades detaching. Changes made to the detached entities are not flushed.
+ * </p>
+ *
+ * @param <ENTITY> the entity type
+ * @param <RESULT> the result type
+ */
+final class ResultDetacher<ENTITY, RESULT> implements ResultStrategyVisitor<ENTITY, RESULT, RESULT>
+{
+   private final EntityManager entityManager;
+
+   private ResultDetacher(EntityManager entityManager)
+   {
+      this.entityManager = entityManager;
+   }
+
+   /**
+    * Detaches the entities of the given result.
+    *
+    * @param entityManager  the entity manager which loaded the result
+    * @param resultStrategy the strategy which produced the result
+    * @param result         the result
+    * @param <ENTITY>       the entity type
+    * @param <RESULT>       the result type
+    * @return the same result, with its entities detached
+    */
+   static <ENTITY, RESULT> RESULT detach(EntityManager entityManager, ResultStrategy<ENTITY, RESULT> resultStrategy,
+         RESULT result)
+   {
+      return resultStrategy.accept(new ResultDetacher<>(entityManager), result);
+   }
+
+   @Override
+   public RESULT visitSingle(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      if (result != null)
+      {
+         entityManager.detach(result);
+      }
+      return result;
+   }
+
+   @Override
+   public RESULT visitOptional(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      ((Optional<?>) result).ifPresent(entityManager::detach);
+      return result;
+   }
+
+   @Override
+   public RESULT visitList(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      ((List<?>) result).forEach(entityManager::detach);
+      return result;
+   }
+
+   @Override
+   public RESULT visitExist(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      return result;
+   }
+
+   @Override
+   public RESULT visitCount(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      return result;
+   }
+
+   @Override
+   public RESULT visitFirst(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      ((Optional<?>) result).ifPresent(entityManager::detach);
+      return result;
+   }
+
+   @Override
+   public RESULT visitPaged(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      ((PagedResult<?>) result).getContent().forEach(entityManager::detach);
+      return result;
+   }
+
+   @Override
+   public RESULT visitSliced(ResultStrategy<ENTITY, RESULT> resultStrategy, RESULT result)
+   {
+      ((SliceResult<?>) result).getContent().forEach(entityManager::detach);
+      return result;
+   }
+}
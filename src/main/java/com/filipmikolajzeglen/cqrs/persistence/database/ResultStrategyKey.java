@@ -0,0 +1,63 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import com.filipmikolajzeglen.cqrs.core.Order;
+import com.filipmikolajzeglen.cqrs.core.OrderedResultStrategy;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategyType;
+
+/**
+ * Identifies what a result strategy selects, since result strategies do not implement equality themselves.
+ *
+ * @param type   the type of the result strategy
+ * @param orders the sort orders of the result strategy
+ * @param window the offset, limit, page and size of the result strategy, {@code null} where unsupported
+ */
+record ResultStrategyKey(ResultStrategyType type, List<String> orders, List<Integer> window)
+{
+   /**
+    * Describes the given result strategy.
+    *
+    * @param resultStrategy the result strategy
+    * @return the key of the result strategy
+    */
+   static ResultStrategyKey of(ResultStrategy<?, ?> resultStrategy)
+   {
+      List<Integer> window = Arrays.asList(
+            optional(resultStrategy::getOffset),
+            optional(resultStrategy::getLimit),
+            optional(resultStrategy::getPage),
+            optional(resultStrategy::getSize));
+      return new ResultStrategyKey(resultStrategy.getType(), orders(resultStrategy), window);
+   }
+
+   private static List<String> orders(ResultStrategy<?, ?> resultStrategy)
+   {
+      List<String> orders = new ArrayList<>();
+      if (resultStrategy instanceof OrderedResultStrategy<?, ?> sortable)
+      {
+         for (Order order : sortable.getOrders())
+         {
+            orders.add(order.getProperty() + " " + order.getDirection());
+         }
+      }
+      return orders;
+   }
+
+   private static Integer optional(IntSupplier property)
+   {
+      try
+      {
+         return property.getAsInt();
+      }
+      catch (UnsupportedOperationException ignored)
+      {
+         // The result strategy does not support this property.
+         return null;
+      }
+   }
+}
@@ -0,0 +1,130 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.function.Function;
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Query handler sending queries to read replicas, except for entity types the session changed recently.
+ * <p>
+ * Queries run on a replica of the {@link ReplicaPool}, each with its own entity manager, so returned entities are
+ * detached. Commands are not routed: they keep running on the primary entity manager, through handlers registering a
+ * {@link ReadYourWritesSession} as their {@link EntityChangeListener}. Queries on entity types changed within the
+ * session's window run on the primary entity manager instead, so the session reads its own writes despite replication
+ * lag.
+ * </p>
+ *
+ * <pre>{@code
+ * QueryHandler<DatabaseQuery<Order>, Order> handler = RoutingDatabaseQueryHandler.<Order>builder(primary, replicas)
+ *       .session(session)
+ *       .build();
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class RoutingDatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<ENTITY>, ENTITY>
+{
+   private final EntityManager primary;
+   private final ReplicaPool replicas;
+   private final ReadYourWritesSession session;
+   private final Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory;
+
+   private RoutingDatabaseQueryHandler(EntityManager primary, ReplicaPool replicas, ReadYourWritesSession session,
+         Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory)
+   {
+      this.primary = primary;
+      this.replicas = replicas;
+      this.session = session;
+      this.queryHandlerFactory = queryHandlerFactory;
+   }
+
+   /**
+    * Creates a new builder for a handler routing between the given primary and replicas.
+    *
+    * @param primary  the entity manager of the primary
+    * @param replicas the read replicas
+    * @param <ENTITY> the entity type
+    * @return a new builder
+    */
+   public static <ENTITY> Builder<ENTITY> builder(EntityManager primary, ReplicaPool replicas)
+   {
+      return new Builder<>(primary, replicas);
+   }
+
+   /**
+    * Handles the given query on a replica, or on the primary if the session changed the queried entity type within
+    * its window.
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param <RESULT>       the result type
+    * @return the result
+    */
+   @Override
+   public <RESULT> RESULT handle(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      if (session != null && session.isPinned(query.getEntityType()))
+      {
+         return queryHandlerFactory.apply(primary).handle(query, resultStrategy);
+      }
+      return replicas.execute(entityManager -> queryHandlerFactory.apply(entityManager).handle(query, resultStrategy));
+   }
+
+   /**
+    * Builder for {@link RoutingDatabaseQueryHandler}.
+    *
+    * @param <ENTITY> the entity type
+    */
+   public static final class Builder<ENTITY>
+   {
+      private final EntityManager primary;
+      private final ReplicaPool replicas;
+      private ReadYourWritesSession session;
+      private Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory =
+            DatabaseQueryHandler::new;
+
+      public Builder(EntityManager primary, ReplicaPool replicas)
+      {
+         this.primary = primary;
+         this.replicas = replicas;
+      }
+
+      /**
+       * Sets the session whose recent changes are read from the primary. By default, all queries go to replicas.
+       *
+       * @param session the read-your-writes session
+       * @return this builder
+       */
+      public Builder<ENTITY> session(ReadYourWritesSession session)
+      {
+         this.session = session;
+         return this;
+      }
+
+      /**
+       * Sets how the handler executing a query is created for the entity manager of the primary or of a replica.
+       * Defaults to a plain {@link DatabaseQueryHandler}.
+       *
+       * @param queryHandlerFactory creates the handler for an entity manager
+       * @return this builder
+       */
+      public Builder<ENTITY> queryHandler(
+            Function<EntityManager, QueryHandler<DatabaseQuery<ENTITY>, ENTITY>> queryHandlerFactory)
+      {
+         this.queryHandlerFactory = queryHandlerFactory;
+         return this;
+      }
+
+      /**
+       * Builds the {@link RoutingDatabaseQueryHandler} instance.
+       *
+       * @return the query handler
+       */
+      public RoutingDatabaseQueryHandler<ENTITY> build()
+      {
+         return new RoutingDatabaseQueryHandler<>(primary, replicas, session, queryHandlerFactory);
+      }
+   }
+}
@@ -0,0 +1,63 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.OptionalLong;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Estimates numbers of rows from database statistics for {@link ApproximateCount}.
+ */
+public interface RowEstimator
+{
+   /**
+    * Estimates the number of rows of the table of the given entity type.
+    *
+    * @param entityManager the entity manager
+    * @param entityType    the entity type
+    * @return the estimate, or empty if the database has no statistics for the table
+    */
+   OptionalLong estimateTable(EntityManager entityManager, Class<?> entityType);
+
+   /**
+    * Estimates the number of rows returned by the given query.
+    *
+    * @param entityManager the entity manager
+    * @param query         the query selecting the ids of matching entities
+    * @return the estimate, or empty if the query cannot be estimated
+    */
+   OptionalLong estimateQuery(EntityManager entityManager, TypedQuery<?> query);
+
+   /**
+    * Returns an estimator reading PostgreSQL planner statistics.
+    * <p>
+    * Tables are estimated from {@code pg_class.reltuples}, which is maintained by {@code ANALYZE} and autovacuum, so
+    * tables never analyzed have no estimate. Table names are read from {@link jakarta.persistence.Table}, defaulting
+    * to the simple name of the entity class, which only matches mappings without a physical naming strategy; use
+    * {@link #postgres(Function, Function)} to resolve them from the mapping of the persistence provider. Queries are
+    * estimated from the row estimate of their {@code EXPLAIN} plan; JPA does not expose the SQL of a typed query, so
+    * the given function renders it with placeholders and the values to bind to them.
+    * </p>
+    *
+    * @param sql renders the SQL of a query
+    * @return the estimator, throwing {@link IllegalArgumentException} if the rendered SQL is not a select statement
+    */
+   static RowEstimator postgres(Function<TypedQuery<?>, ParameterizedSql> sql)
+   {
+      return postgres(sql, PostgresRowEstimator::tableName);
+   }
+
+   /**
+    * Returns an estimator reading PostgreSQL planner statistics, like {@link #postgres(Function)}, with table names
+    * resolved by the given function, e.g. from the mapping metamodel of the persistence provider.
+    *
+    * @param sql       renders the SQL of a query
+    * @param tableName resolves the table name of an entity type, qualified by its schema if it has one
+    * @return the estimator, throwing {@link IllegalArgumentException} if the rendered SQL is not a select statement
+    */
+   static RowEstimator postgres(Function<TypedQuery<?>, ParameterizedSql> sql, Function<Class<?>, String> tableName)
+   {
+      return new PostgresRowEstimator(sql, tableName);
+   }
+}
@@ -0,0 +1,139 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+
+/**
+ * Coalesces identical queries running at the same time, so that only the first one reaches the database and the
+ * others wait for its result.
+ * <p>
+ * Queries are identified by the {@link DatabaseQuery#equals structural equality} of the query and by the type, sort
+ * orders and window of the result strategy. A query is in flight from its start until its result is available; later
+ * queries run again.
+ * </p>
+ */
+final class SingleFlight
+{
+   private final ConcurrentMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+   /**
+    * Runs the given query unless an identical query is in flight, in which case its result is awaited instead.
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param call           runs the query
+    * @param <RESULT>       the result type
+    * @return the result of this or the identical query
+    */
+   @SuppressWarnings("unchecked")
+   <RESULT> RESULT execute(DatabaseQuery<?> query, ResultStrategy<?, RESULT> resultStrategy, Supplier<RESULT> call)
+   {
+      Key key = new Key(query, ResultStrategyKey.of(resultStrategy));
+      CompletableFuture<Object> flight = new CompletableFuture<>();
+      CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+      if (leader != null)
+      {
+         return (RESULT) await(leader);
+      }
+      try
+      {
+         RESULT result = call.get();
+         land(key, flight).complete(result);
+         return result;
+      }
+      catch (RuntimeException | Error e)
+      {
+         land(key, flight).completeExceptionally(e);
+         throw e;
+      }
+   }
+
+   /**
+    * Starts the given asynchronous query unless an identical query is in flight, in which case its result is shared.
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param call           starts the query
+    * @param <RESULT>       the result type
+    * @return the future result of this or the identical query; cancelling it does not affect other callers
+    */
+   @SuppressWarnings("unchecked")
+   <RESULT> CompletableFuture<RESULT> submit(DatabaseQuery<?> query, ResultStrategy<?, RESULT> resultStrategy,
+         Supplier<CompletableFuture<RESULT>> call)
+   {
+      Key key = new Key(query, ResultStrategyKey.of(resultStrategy));
+      CompletableFuture<Object> flight = new CompletableFuture<>();
+      CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+      if (leader != null)
+      {
+         return (CompletableFuture<RESULT>) leader.copy();
+      }
+      try
+      {
+         call.get().whenComplete((result, failure) ->
+         {
+            if (failure != null)
+            {
+               land(key, flight).completeExceptionally(failure);
+            }
+            else
+            {
+               land(key, flight).complete(result);
+            }
+         });
+      }
+      catch (RuntimeException | Error e)
+      {
+         land(key, flight).completeExceptionally(e);
+      }
+      return (CompletableFuture<RESULT>) flight.copy();
+   }
+
+   /**
+    * Returns the number of distinct queries in flight.
+    *
+    * @return the number of queries in flight
+    */
+   int size()
+   {
+      return inFlight.size();
+   }
+
+   /**
+    * Ends the flight before publishing its result, so that queries started after the result is available run again.
+    */
+   private CompletableFuture<Object> land(Key key, CompletableFuture<Object> flight)
+   {
+      inFlight.remove(key, flight);
+      return flight;
+   }
+
+   private static Object await(CompletableFuture<Object> leader)
+   {
+      try
+      {
+         return leader.join();
+      }
+      catch (CompletionException e)
+      {
+         if (e.getCause() instanceof RuntimeException cause)
+         {
+            throw cause;
+         }
+         if (e.getCause() instanceof Error cause)
+         {
+            throw cause;
+         }
+         throw e;
+      }
+   }
+
+   private record Key(DatabaseQuery<?> query, ResultStrategyKey resultStrategy)
+   {
+   }
+}
@@ -0,0 +1,74 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler;
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Query handler coalescing identical queries running at the same time on different threads.
+ * <p>
+ * While a query is running, an equal query with an equivalent result strategy does not reach the delegate: its caller
+ * waits for the running query and receives the same result, or the same exception. This protects the database from
+ * bursts of identical queries, e.g. when a cache expires under load. Queries are equal if they are built from the same
+ * {@link PropertyBuilder} restrictions and values; queries with custom restrictions are only coalesced with the same
+ * query instance.
+ * </p>
+ * <p>
+ * Coalesced callers share the entity instances loaded by the first caller, so the entities of every result are
+ * detached from the given entity manager, the one the delegate loads them with, before they are shared; the first
+ * caller receives them detached as well. The entity manager must be usable from every calling thread, e.g. a shared
+ * proxy binding an entity manager to each transaction. Associations needed by callers must be fetched with the query.
+ * Coalesced callers must treat the shared entities as read-only.
+ * </p>
+ *
+ * <pre>{@code
+ * QueryHandler<DatabaseQuery<Country>, Country> handler =
+ *       new SingleFlightDatabaseQueryHandler<>(new DatabaseQueryHandler<>(entityManager), entityManager);
+ * }</pre>
+ *
+ * @param <ENTITY> the entity type
+ */
+public class SingleFlightDatabaseQueryHandler<ENTITY> implements QueryHandler<DatabaseQuery<ENTITY>, ENTITY>
+{
+   private final QueryHandler<DatabaseQuery<ENTITY>, ENTITY> delegate;
+   private final EntityManager entityManager;
+   private final SingleFlight flights = new SingleFlight();
+
+   /**
+    * Creates a handler coalescing the queries of the given handler.
+    *
+    * @param delegate      the handler running queries which are not in flight
+    * @param entityManager the entity manager the delegate loads entities with
+    */
+   public SingleFlightDatabaseQueryHandler(QueryHandler<DatabaseQuery<ENTITY>, ENTITY> delegate,
+         EntityManager entityManager)
+   {
+      this.delegate = delegate;
+      this.entityManager = entityManager;
+   }
+
+   /**
+    * Returns the result of the given query, or of an identical query in flight, with its entities detached.
+    *
+    * @param query          the database query
+    * @param resultStrategy the result strategy
+    * @param <RESULT>       the result type
+    * @return the result
+    */
+   @Override
+   public <RESULT> RESULT handle(DatabaseQuery<ENTITY> query, ResultStrategy<ENTITY, RESULT> resultStrategy)
+   {
+      return flights.execute(query, resultStrategy,
+            () -> ResultDetacher.detach(entityManager, resultStrategy, delegate.handle(query, resultStrategy)));
+   }
+
+   /**
+    * Returns the number of distinct queries currently running.
+    *
+    * @return the number of queries in flight
+    */
+   public int inFlight()
+   {
+      return flights.size();
+   }
+}
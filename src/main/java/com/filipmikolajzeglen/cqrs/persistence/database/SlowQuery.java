@@ -0,0 +1,32 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Report of a query which exceeded the threshold of a {@link SlowQueryWatchdog}.
+ *
+ * @param entityType    the queried entity type
+ * @param operation     the kind of result, e.g. {@code list}, {@code paged} or {@code count}
+ * @param restrictions  the property paths and operators of the restrictions, without values; custom restrictions
+ *                      are described as {@code custom}
+ * @param fingerprint   identifies the shape of the query, like {@link QueryMeasurement#fingerprint()}
+ * @param executionTime the time spent executing all statements of the query
+ * @param statements    the number of statements issued
+ * @param plan          the execution plan of the slowest statement, or an empty list if not captured
+ */
+public record SlowQuery(Class<?> entityType, String operation, List<String> restrictions, String fingerprint,
+                        Duration executionTime, int statements, List<String> plan)
+{
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder()
+            .append("Slow ").append(operation).append(" query on ").append(entityType.getSimpleName())
+            .append(" took ").append(executionTime.toMillis()).append(" ms in ").append(statements)
+            .append(" statement(s), restrictions ").append(restrictions)
+            .append(", fingerprint ").append(fingerprint);
+      plan.forEach(line -> report.append(System.lineSeparator()).append("   ").append(line));
+      return report.toString();
+   }
+}
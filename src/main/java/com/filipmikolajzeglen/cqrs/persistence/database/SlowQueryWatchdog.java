@@ -0,0 +1,206 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Reports queries of {@link DatabaseQueryHandler} whose statements take longer than a threshold.
+ * <p>
+ * Reports describe the entity type, the operation and the property paths and operators of the restrictions, never
+ * their values. A sampled share of reports also carries the execution plan of the slowest statement, captured by a
+ * {@link QueryPlanExplainer}, on an entity manager of its own and outside of the transaction of the query; failing to
+ * capture a plan only leaves it empty. Queries under the threshold only cost a comparison. By default, reports are logged as
+ * warnings by the {@link System.Logger} of this class.
+ * </p>
+ *
+ * <pre>{@code
+ * SlowQueryWatchdog watchdog = SlowQueryWatchdog.builder(Duration.ofMillis(500))
+ *       .explainer(QueryPlanExplainer.postgres(sqlRenderer))
+ *       .explainSampleRate(0.1)
+ *       .build();
+ * DatabaseQueryHandler<Order> handler = DatabaseQueryHandler.<Order>builder(entityManager)
+ *       .slowQueryWatchdog(watchdog)
+ *       .build();
+ * }</pre>
+ */
+public final class SlowQueryWatchdog
+{
+   private static final System.Logger LOGGER = System.getLogger(SlowQueryWatchdog.class.getName());
+   private static final SlowQueryWatchdog DISABLED =
+         new SlowQueryWatchdog(Long.MAX_VALUE, null, 0, report -> { });
+
+   private final long thresholdNanos;
+   private final QueryPlanExplainer explainer;
+   private final double explainSampleRate;
+   private final Consumer<SlowQuery> listener;
+
+   private SlowQueryWatchdog(long thresholdNanos, QueryPlanExplainer explainer, double explainSampleRate,
+         Consumer<SlowQuery> listener)
+   {
+      this.thresholdNanos = thresholdNanos;
+      this.explainer = explainer;
+      this.explainSampleRate = explainSampleRate;
+      this.listener = listener;
+   }
+
+   /**
+    * Creates a new builder of a watchdog reporting queries slower than the given threshold.
+    *
+    * @param threshold the execution time above which queries are reported
+    * @return a new builder
+    */
+   public static Builder builder(Duration threshold)
+   {
+      return new Builder(threshold);
+   }
+
+   /**
+    * Returns the watchdog reporting no queries.
+    *
+    * @return the disabled watchdog
+    */
+   static SlowQueryWatchdog disabled()
+   {
+      return DISABLED;
+   }
+
+   /**
+    * Tells whether a query executing for the given time is reported.
+    *
+    * @param executionNanos the time spent executing the statements of the query
+    * @return true if the query exceeded the threshold
+    */
+   boolean isSlow(long executionNanos)
+   {
+      return executionNanos > thresholdNanos;
+   }
+
+   /**
+    * Reports a slow query, capturing the plan of its slowest statement if sampled.
+    *
+    * @param entityManager    the entity manager which executed the query
+    * @param shape            the shape of the query
+    * @param executionTime    the time spent executing the statements of the query
+    * @param statements       the number of statements issued
+    * @param slowestStatement the slowest statement of the query
+    */
+   void report(EntityManager entityManager, QueryShape shape, Duration executionTime, int statements,
+         TypedQuery<?> slowestStatement)
+   {
+      List<String> plan = isSampled() ? explain(entityManager, slowestStatement) : List.of();
+      listener.accept(new SlowQuery(shape.entityType(), shape.operation(), shape.restrictions(), shape.fingerprint(),
+            executionTime, statements, plan));
+   }
+
+   private boolean isSampled()
+   {
+      return explainer != null && ThreadLocalRandom.current().nextDouble() < explainSampleRate;
+   }
+
+   /**
+    * Captures the plan on a separate entity manager, so that a failing explain statement cannot abort the transaction
+    * of the entity manager which answered the query.
+    */
+   private List<String> explain(EntityManager entityManager, TypedQuery<?> statement)
+   {
+      EntityManager explaining = null;
+      try
+      {
+         explaining = entityManager.getEntityManagerFactory().createEntityManager();
+         return explainer.explain(explaining, statement);
+      }
+      catch (RuntimeException e)
+      {
+         // The plan is a diagnostic aid; failing to capture it must not fail the query which was already answered.
+         LOGGER.log(System.Logger.Level.DEBUG, "Could not capture the plan of a slow query", e);
+         return List.of();
+      }
+      finally
+      {
+         if (explaining != null)
+         {
+            explaining.close();
+         }
+      }
+   }
+
+   private static void log(SlowQuery report)
+   {
+      LOGGER.log(System.Logger.Level.WARNING, report::toString);
+   }
+
+   /**
+    * Builder for {@link SlowQueryWatchdog}.
+    */
+   public static final class Builder
+   {
+      private final Duration threshold;
+      private QueryPlanExplainer explainer;
+      private double explainSampleRate = 1;
+      private Consumer<SlowQuery> listener = SlowQueryWatchdog::log;
+
+      private Builder(Duration threshold)
+      {
+         if (threshold.isNegative())
+         {
+            throw new IllegalArgumentException("Threshold must not be negative, was " + threshold);
+         }
+         this.threshold = threshold;
+      }
+
+      /**
+       * Sets the explainer capturing plans of slow queries. By default, plans are not captured.
+       *
+       * @param explainer the query plan explainer
+       * @return this builder
+       */
+      public Builder explainer(QueryPlanExplainer explainer)
+      {
+         this.explainer = explainer;
+         return this;
+      }
+
+      /**
+       * Sets the share of slow queries whose plans are captured. Defaults to all of them.
+       *
+       * @param explainSampleRate the share between 0 and 1
+       * @return this builder
+       */
+      public Builder explainSampleRate(double explainSampleRate)
+      {
+         if (explainSampleRate < 0 || explainSampleRate > 1)
+         {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1, was " + explainSampleRate);
+         }
+         this.explainSampleRate = explainSampleRate;
+         return this;
+      }
+
+      /**
+       * Sets the listener receiving reports of slow queries instead of logging them.
+       *
+       * @param listener the listener
+       * @return this builder
+       */
+      public Builder listener(Consumer<SlowQuery> listener)
+      {
+         this.listener = listener;
+         return this;
+      }
+
+      /**
+       * Builds the {@link SlowQueryWatchdog} instance.
+       *
+       * @return the watchdog
+       */
+      public SlowQueryWatchdog build()
+      {
+         return new SlowQueryWatchdog(threshold.toNanos(), explainer, explainSampleRate, listener);
+      }
+   }
+}
@@ -0,0 +1,13 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import com.filipmikolajzeglen.cqrs.core.Order;
+
+/**
+ * Property and direction of a single sort key of {@link KeysetPage} and {@link Streaming}.
+ *
+ * @param property  the property name
+ * @param direction the sort direction
+ */
+record SortKey(String property, Order.Direction direction)
+{
+}
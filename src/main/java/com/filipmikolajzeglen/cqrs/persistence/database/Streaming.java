@@ -0,0 +1,137 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.filipmikolajzeglen.cqrs.core.Order;
+
+/**
+ * Request for a lazily consumed stream of results, handled by
+ * {@link DatabaseQueryHandler#handle(DatabaseQuery, Streaming)}.
+ * <p>
+ * Rows are fetched from the database in chunks of the fetch size while the stream is consumed, so no result list is
+ * materialized. With PostgreSQL the fetch size only takes effect inside a transaction, where the driver reads through
+ * a cursor. Entities read from a long stream pile up in the persistence context unless it is cleared periodically with
+ * {@link #clearingEvery(int)}.
+ * </p>
+ * <p>
+ * The returned stream holds an open cursor and must be closed, preferably with try-with-resources.
+ * </p>
+ *
+ * <pre>{@code
+ * try (Stream<MyEntity> entities = handler.handle(query, Streaming.withFetchSize(500).clearingEvery(1000))) {
+ *     entities.forEach(exporter::write);
+ * }
+ * }</pre>
+ */
+public final class Streaming
+{
+   /**
+    * Hint setting the JDBC fetch size of a query in Hibernate.
+    */
+   static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+   private final int fetchSize;
+   private final int clearInterval;
+   private final List<SortKey> sortKeys;
+
+   private Streaming(int fetchSize, int clearInterval, List<SortKey> sortKeys)
+   {
+      if (fetchSize <= 0)
+      {
+         throw new IllegalArgumentException("Fetch size must be positive, was " + fetchSize);
+      }
+      if (clearInterval < 0)
+      {
+         throw new IllegalArgumentException("Clear interval must not be negative, was " + clearInterval);
+      }
+      this.fetchSize = fetchSize;
+      this.clearInterval = clearInterval;
+      this.sortKeys = sortKeys;
+   }
+
+   /**
+    * Creates a streaming request fetching the given number of rows per database round trip.
+    *
+    * @param fetchSize the JDBC fetch size
+    * @return the streaming request
+    */
+   public static Streaming withFetchSize(int fetchSize)
+   {
+      return new Streaming(fetchSize, 0, List.of());
+   }
+
+   /**
+    * Returns a copy of this request clearing the persistence context after every given number of streamed entities,
+    * before the next row is read. Clearing detaches every entity of the entity manager, including those the caller
+    * loaded outside of the stream, and discards their unflushed changes. Detached entities can no longer load their
+    * lazy associations.
+    *
+    * @param interval the number of entities between clears
+    * @return the streaming request
+    */
+   public Streaming clearingEvery(int interval)
+   {
+      if (interval <= 0)
+      {
+         throw new IllegalArgumentException("Clear interval must be positive, was " + interval);
+      }
+      return new Streaming(fetchSize, interval, sortKeys);
+   }
+
+   /**
+    * Returns a copy of this request additionally sorted ascending by the given property.
+    *
+    * @param property the property name
+    * @return the streaming request
+    */
+   public Streaming orderedByAsc(String property)
+   {
+      return orderedBy(property, Order.Direction.ASC);
+   }
+
+   /**
+    * Returns a copy of this request additionally sorted descending by the given property.
+    *
+    * @param property the property name
+    * @return the streaming request
+    */
+   public Streaming orderedByDesc(String property)
+   {
+      return orderedBy(property, Order.Direction.DESC);
+   }
+
+   /**
+    * Returns the JDBC fetch size.
+    *
+    * @return the fetch size
+    */
+   public int getFetchSize()
+   {
+      return fetchSize;
+   }
+
+   /**
+    * Returns the number of entities between clears of the persistence context, {@code 0} if it is never cleared.
+    *
+    * @return the clear interval
+    */
+   public int getClearInterval()
+   {
+      return clearInterval;
+   }
+
+   List<SortKey> getSortKeys()
+   {
+      return sortKeys;
+   }
+
+   private Streaming orderedBy(String property, Order.Direction direction)
+   {
+      List<SortKey> keys = new ArrayList<>(sortKeys);
+      keys.add(new SortKey(Objects.requireNonNull(property, "property"), direction));
+      return new Streaming(fetchSize, clearInterval, Collections.unmodifiableList(keys));
+   }
+}
@@ -0,0 +1,67 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of total counts computed by {@link DatabaseQueryHandler} for paged results.
+ * <p>
+ * Every page of {@link com.filipmikolajzeglen.cqrs.core.ResultStrategy#paged} needs the total number of matching rows,
+ * which otherwise costs a second query scanning all of them. A cache lets consecutive pages of the same query reuse
+ * the total, accepting that it may be stale for as long as the cache keeps it. Only queries built from
+ * {@link PropertyBuilder} restrictions are cached, because only those can be identified by their shape and values.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe.
+ * </p>
+ */
+@FunctionalInterface
+public interface TotalCountCache
+{
+   /**
+    * Default maximum number of counts kept by {@link #expiringAfter(Duration)}.
+    */
+   int DEFAULT_MAXIMUM_SIZE = 1024;
+
+   /**
+    * Returns the count cached under the given key, computing it with the given counter if absent.
+    *
+    * @param key     identifies the query
+    * @param counter computes the count
+    * @return the total count
+    */
+   long getOrCount(Key key, LongSupplier counter);
+
+   /**
+    * Returns a cache which always computes the count.
+    *
+    * @return the non-caching cache
+    */
+   static TotalCountCache none()
+   {
+      return (key, counter) -> counter.getAsLong();
+   }
+
+   /**
+    * Returns a cache keeping each count for the given time.
+    *
+    * @param timeToLive how long a count stays valid
+    * @return the expiring cache
+    */
+   static TotalCountCache expiringAfter(Duration timeToLive)
+   {
+      return new ExpiringTotalCountCache(timeToLive, DEFAULT_MAXIMUM_SIZE, System::nanoTime);
+   }
+
+   /**
+    * Identifies a counted query by its shape and values.
+    *
+    * @param entityType   the queried entity type
+    * @param restrictions the value-free shapes of the restrictions
+    * @param values       the values bound to the restrictions
+    */
+   record Key(Class<?> entityType, List<String> restrictions, List<Object> values)
+   {
+   }
+}
@@ -0,0 +1,123 @@
+package com.filipmikolajzeglen.cqrs.persistence.database.micrometer;
+
+import com.filipmikolajzeglen.cqrs.persistence.database.CommandMeasurement;
+import com.filipmikolajzeglen.cqrs.persistence.database.DatabaseMetrics;
+import com.filipmikolajzeglen.cqrs.persistence.database.QueryMeasurement;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records query and command measurements as Micrometer meters.
+ * <p>
+ * Query meters are tagged with {@code entity}, {@code operation} and {@code fingerprint}, command meters with
+ * {@code entity} and {@code operation}. Fingerprints identify query shapes, not values, so their number is bounded by
+ * the queries written in code. Requires {@code io.micrometer:micrometer-core} on the classpath.
+ * </p>
+ *
+ * <pre>{@code
+ * DatabaseQueryHandler<Order> handler = DatabaseQueryHandler.<Order>builder(entityManager)
+ *       .metrics(new MicrometerDatabaseMetrics(meterRegistry))
+ *       .build();
+ * }</pre>
+ */
+public final class MicrometerDatabaseMetrics implements DatabaseMetrics
+{
+   /**
+    * Timer of the time spent building criteria trees and typed queries.
+    */
+   public static final String QUERY_BUILD = "fmz.cqrs.query.build";
+
+   /**
+    * Timer of the time spent executing query statements.
+    */
+   public static final String QUERY_EXECUTION = "fmz.cqrs.query.execution";
+
+   /**
+    * Distribution of the number of rows returned by a query.
+    */
+   public static final String QUERY_ROWS = "fmz.cqrs.query.rows";
+
+   /**
+    * Distribution of the number of statements issued by a query.
+    */
+   public static final String QUERY_STATEMENTS = "fmz.cqrs.query.statements";
+
+   /**
+    * Timer of the time spent executing commands.
+    */
+   public static final String COMMAND_EXECUTION = "fmz.cqrs.command.execution";
+
+   /**
+    * Distribution of the number of rows affected by a command.
+    */
+   public static final String COMMAND_ROWS = "fmz.cqrs.command.rows";
+
+   private static final String ENTITY_TAG = "entity";
+   private static final String OPERATION_TAG = "operation";
+   private static final String FINGERPRINT_TAG = "fingerprint";
+
+   private final MeterRegistry registry;
+
+   /**
+    * Creates metrics registering meters in the given registry.
+    *
+    * @param registry the meter registry
+    */
+   public MicrometerDatabaseMetrics(MeterRegistry registry)
+   {
+      this.registry = registry;
+   }
+
+   @Override
+   public void queryExecuted(QueryMeasurement measurement)
+   {
+      String[] tags = {
+            ENTITY_TAG, measurement.entityType().getSimpleName(),
+            OPERATION_TAG, measurement.operation(),
+            FINGERPRINT_TAG, measurement.fingerprint() };
+      Timer.builder(QUERY_BUILD)
+            .description("Time spent building queries")
+            .tags(tags)
+            .register(registry)
+            .record(measurement.buildTime());
+      Timer.builder(QUERY_EXECUTION)
+            .description("Time spent executing queries")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(measurement.executionTime());
+      DistributionSummary.builder(QUERY_ROWS)
+            .description("Rows returned by queries")
+            .baseUnit("rows")
+            .tags(tags)
+            .register(registry)
+            .record(measurement.rows());
+      DistributionSummary.builder(QUERY_STATEMENTS)
+            .description("Statements issued by queries")
+            .baseUnit("statements")
+            .tags(tags)
+            .register(registry)
+            .record(measurement.statements());
+   }
+
+   @Override
+   public void commandExecuted(CommandMeasurement measurement)
+   {
+      String[] tags = {
+            ENTITY_TAG, measurement.entityType().getSimpleName(),
+            OPERATION_TAG, measurement.operation() };
+      Timer.builder(COMMAND_EXECUTION)
+            .description("Time spent executing commands")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(measurement.executionTime());
+      DistributionSummary.builder(COMMAND_ROWS)
+            .description("Rows affected by commands")
+            .baseUnit("rows")
+            .tags(tags)
+            .register(registry)
+            .record(measurement.affectedRows());
+   }
+}
@@ -0,0 +1,4 @@
+@ParametersAreNonnullByDefault
+package com.filipmikolajzeglen.cqrs.persistence.database.micrometer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
\ No newline at end of file
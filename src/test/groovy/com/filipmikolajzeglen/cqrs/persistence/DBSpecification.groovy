@@ -46,6 +46,7 @@ class DBSpecification extends Specification {
             // Dodaj skanowanie encji z katalogu testowego
             "hibernate.archive.autodetection"  : "class"
       ]
+      props.putAll(persistenceProperties())
       entityManagerFactory = Persistence.createEntityManagerFactory("test-persistence-unit", props)
       entityManager = entityManagerFactory.createEntityManager()
       entityTransaction = entityManager.transaction
@@ -82,6 +83,11 @@ class DBSpecification extends Specification {
                id     BIGINT PRIMARY KEY DEFAULT NEXTVAL('fmzcqrspersistence.nested_super_entity_seq'),
                super_entity_id BIGINT REFERENCES fmzcqrspersistence.super_entity(id)
             );
+            CREATE SEQUENCE IF NOT EXISTS fmzcqrspersistence.coded_entity_seq START WITH 1 INCREMENT BY 1;
+            CREATE TABLE IF NOT EXISTS fmzcqrspersistence.coded_entity (
+               code   BIGINT PRIMARY KEY DEFAULT NEXTVAL('fmzcqrspersistence.coded_entity_seq'),
+               name   VARCHAR(255) NOT NULL
+            );
         """)
 
       def insertSql = sqlInitData()
@@ -93,6 +99,13 @@ class DBSpecification extends Specification {
       conn.close()
    }
 
+   /**
+    * Override in child class to provide additional persistence unit properties.
+    */
+   protected Map<String, Object> persistenceProperties() {
+      return [:]
+   }
+
    /**
     * Override in child class to provide INSERTs or any test-specific SQL data.
     */
@@ -0,0 +1,151 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+import jakarta.persistence.TypedQuery
+
+class ApproximateCountSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+   private static final ParameterizedSql JOHN_SQL =
+         new ParameterizedSql('select id from fmzcqrspersistence.dummy_database_entity where name = ?', ['John'])
+
+   private RowEstimator postgres = RowEstimator.postgres { JOHN_SQL }
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   @Override
+   protected Map<String, Object> persistenceProperties() {
+      return ['hibernate.session_factory.statement_inspector': RecordingStatementInspector.name]
+   }
+
+   def "should estimate unrestricted counts from table statistics"() {
+      given:
+      entityManager.createNativeQuery('ANALYZE fmzcqrspersistence.dummy_database_entity').executeUpdate()
+
+      expect:
+      handler().handle(DatabaseQuery.builder(DummyDatabaseEntity).build(),
+            ApproximateCount.using(postgres).exactBelow(0)) == 17L
+   }
+
+   def "should estimate restricted counts from the query plan"() {
+      given:
+      entityManager.createNativeQuery('ANALYZE fmzcqrspersistence.dummy_database_entity').executeUpdate()
+      def rendered = []
+      def estimator = RowEstimator.postgres { query ->
+         query.resultList
+         rendered << RecordingStatementInspector.lastSql()
+         new ParameterizedSql(rendered.last(), ['John'])
+      }
+
+      when:
+      def count = handler().handle(johnQuery(), ApproximateCount.using(estimator).exactBelow(0))
+
+      then:
+      count == 4L
+      rendered.size() == 1
+      rendered[0].toLowerCase().startsWith('select')
+      rendered[0].contains('fmzcqrspersistence.dummy_database_entity')
+      rendered[0].count('?') == 1
+   }
+
+   def "should bind the values of the estimated statement"() {
+      given:
+      def estimator = RowEstimator.postgres {
+         new ParameterizedSql('select id from fmzcqrspersistence.dummy_database_entity where name = ?',
+               ["John'; delete from fmzcqrspersistence.dummy_database_entity; --"])
+      }
+
+      when:
+      def estimate = estimator.estimateQuery(entityManager, null)
+
+      then:
+      estimate.isPresent()
+      handler().handle(DatabaseQuery.builder(DummyDatabaseEntity).build(), ResultStrategy.count()) == 17L
+   }
+
+   def "should count exactly when the estimate is below the threshold or missing"() {
+      given:
+      def approximateCount = ApproximateCount.using(new FixedEstimator(estimate)).exactBelow(100)
+
+      expect:
+      handler().handle(johnQuery(), approximateCount) == expected
+
+      where:
+      estimate                  | expected
+      OptionalLong.of(1_000)    | 1_000L
+      OptionalLong.of(99)       | 4L
+      OptionalLong.empty()      | 4L
+   }
+
+   def "should estimate the totals of paged results when opted in"() {
+      given:
+      def handler = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .approximateTotals(ApproximateCount.using(new FixedEstimator(OptionalLong.of(1_000_000))))
+            .build()
+
+      when:
+      def page = handler.handle(johnQuery(), ResultStrategy.paged(0, 2, 4))
+
+      then:
+      page.content.size() == 2
+      page.totalElements == 1_000_000
+      page.totalPages == 500_000
+   }
+
+   def "should resolve table names from the table annotation"() {
+      expect:
+      PostgresRowEstimator.tableName(DummyDatabaseEntity) == 'fmzcqrspersistence.dummy_database_entity'
+      PostgresRowEstimator.tableName(String) == 'String'
+   }
+
+   def "should estimate tables named by the given function"() {
+      given:
+      entityManager.createNativeQuery('ANALYZE fmzcqrspersistence.dummy_database_entity').executeUpdate()
+      def resolved = []
+      def estimator = RowEstimator.postgres({ JOHN_SQL }, { type ->
+         resolved << type
+         'fmzcqrspersistence.dummy_database_entity'
+      })
+
+      when:
+      def estimate = estimator.estimateTable(entityManager, DummyDatabaseEntityView)
+
+      then:
+      estimate == OptionalLong.of(17)
+      resolved == [DummyDatabaseEntityView]
+   }
+
+   private DatabaseQueryHandler<DummyDatabaseEntity> handler() {
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> johnQuery() {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .build()
+   }
+
+   private static class FixedEstimator implements RowEstimator {
+
+      private final OptionalLong estimate
+
+      FixedEstimator(OptionalLong estimate) {
+         this.estimate = estimate
+      }
+
+      @Override
+      OptionalLong estimateTable(EntityManager entityManager, Class<?> entityType) {
+         estimate
+      }
+
+      @Override
+      OptionalLong estimateQuery(EntityManager entityManager, TypedQuery<?> query) {
+         estimate
+      }
+   }
+}
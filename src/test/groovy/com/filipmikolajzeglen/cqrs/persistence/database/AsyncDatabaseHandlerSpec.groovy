@@ -0,0 +1,172 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+import jakarta.persistence.EntityManagerFactory
+import spock.lang.AutoCleanup
+
+class AsyncDatabaseHandlerSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @AutoCleanup('shutdownNow')
+   private ExecutorService executor = Executors.newFixedThreadPool(8)
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   @Override
+   protected Map<String, Object> persistenceProperties() {
+      return ['hibernate.criteria.copy_tree': 'true', 'hibernate.criteria.plan_cache_enabled': 'true']
+   }
+
+   def "should run independent queries concurrently"() {
+      given:
+      def handler = AsyncDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerFactory, executor)
+            .maxConcurrency(4)
+            .build()
+
+      when:
+      def counts = ['John', 'Jane', 'Joanna', 'Nobody'].collect { handler.handle(nameQuery(it), ResultStrategy.count()) }
+      def exists = handler.handle(nameQuery('Filip'), ResultStrategy.exist())
+
+      then:
+      CompletableFuture.allOf(*counts, exists).join()
+      counts*.join() == [4L, 3L, 3L, 0L]
+      exists.join()
+   }
+
+   def "should return detached entities"() {
+      given:
+      def handler = AsyncDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerFactory, executor).build()
+
+      when:
+      def entities = handler.handle(nameQuery('Jane'), ResultStrategy.all()).join()
+
+      then:
+      entities.size() == 3
+      entities.every { !entityManager.contains(it) }
+   }
+
+   def "should use the configured query handler"() {
+      given:
+      def templateCache = new QueryTemplateCache()
+      def handler = AsyncDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerFactory, executor)
+            .queryHandler { em -> DatabaseQueryHandler.<DummyDatabaseEntity> builder(em).preparedQueries(templateCache).build() }
+            .build()
+
+      when:
+      handler.handle(nameQuery('Jane'), ResultStrategy.count()).join()
+
+      then:
+      templateCache.size() == 1
+   }
+
+   def "should share the detached result of identical queries in flight"() {
+      given:
+      def release = new CountDownLatch(1)
+      def handlers = new AtomicInteger()
+      def handler = AsyncDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerFactory, executor)
+            .queryHandler { em ->
+               handlers.incrementAndGet()
+               release.await()
+               new DatabaseQueryHandler<DummyDatabaseEntity>(em)
+            }
+            .singleFlight()
+            .build()
+
+      when:
+      def first = handler.handle(nameQuery('Jane'), ResultStrategy.all())
+      def second = handler.handle(nameQuery('Jane'), ResultStrategy.all())
+      def other = handler.handle(nameQuery('John'), ResultStrategy.all())
+      release.countDown()
+
+      then:
+      first.join().is(second.join())
+      first.join().every { !entityManager.contains(it) }
+      other.join().size() == 4
+      handlers.get() == 2
+
+      when:
+      def later = handler.handle(nameQuery('Jane'), ResultStrategy.all()).join()
+
+      then:
+      !later.is(first.join())
+      handlers.get() == 3
+   }
+
+   def "should complete exceptionally and roll back when a command fails"() {
+      given:
+      def changes = []
+      def handler = AsyncDatabaseCommandHandler.<DummyDatabaseEntity> builder(entityManagerFactory, executor)
+            .changeListener { changes << it }
+            .build()
+
+      when:
+      handler.handle(DatabaseCommand.create(new DummyDatabaseEntity(flag: true))).join()
+
+      then:
+      thrown(CompletionException)
+      changes.isEmpty()
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(DatabaseQuery.builder(DummyDatabaseEntity).build(), ResultStrategy.count()) == 17L
+   }
+
+   def "should limit the number of tasks holding an entity manager"() {
+      given:
+      def factory = Stub(EntityManagerFactory) {
+         createEntityManager() >> Mock(EntityManager)
+      }
+      def running = new AtomicInteger()
+      def maxRunning = new AtomicInteger()
+      def limitedExecutor = new EntityManagerExecutor(factory, executor, 2)
+
+      when:
+      def tasks = (1..8).collect {
+         limitedExecutor.submit { em ->
+            maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> Math.max(a, b) }
+            Thread.sleep(20)
+            running.decrementAndGet()
+         }
+      }
+      CompletableFuture.allOf(*tasks).join()
+
+      then:
+      maxRunning.get() == 2
+   }
+
+   def "should close the entity manager of every task"() {
+      given:
+      def entityManagers = (1..3).collect { Mock(EntityManager) }
+      def factory = Stub(EntityManagerFactory) {
+         createEntityManager() >>> entityManagers
+      }
+      def taskExecutor = new EntityManagerExecutor(factory, executor, 3)
+
+      when:
+      def tasks = (1..3).collect { taskExecutor.submit { em -> em } }
+      def used = tasks*.join()
+
+      then:
+      used as Set == entityManagers as Set
+      1 * entityManagers[0].close()
+      1 * entityManagers[1].close()
+      1 * entityManagers[2].close()
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
@@ -0,0 +1,74 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.PersistenceException
+
+class ChunkCommittingDeleteSpec extends DBSpecification {
+
+   def "should commit every chunk and leave no transaction active"() {
+      given:
+      entityTransaction.rollback()
+      persistCommitted { (1..5).each { entityManager.persist(new DummyDatabaseEntity(name: 'committed', flag: true)) } }
+
+      when:
+      def deleted = DatabaseSuperCommand.delete(DummyDatabaseEntity)
+            .inChunksOf(2)
+            .committingEachChunk()
+            .where(nameQuery('committed'))
+            .execute(entityManager)
+
+      then:
+      deleted == 5
+      !entityManager.transaction.active
+      committedIds('committed').empty
+   }
+
+   def "should keep the chunks committed before a failing chunk"() {
+      given:
+      entityTransaction.rollback()
+      List<DummyDatabaseEntity> entities = (1..4).collect { new DummyDatabaseEntity(name: 'failing', flag: true) }
+      persistCommitted { entities.each { entityManager.persist(it) } }
+      persistCommitted {
+         entityManager.persist(new SuperEntity(entityManager.getReference(DummyDatabaseEntity, entities[2].id)))
+      }
+      List<Class<?>> changes = []
+      def handler = new DatabaseSuperCommandHandler<DummyDatabaseEntity>(entityManager, { changes << it },
+            new CommitCallbacks())
+
+      when:
+      handler.handle(DatabaseSuperCommand.delete(DummyDatabaseEntity)
+            .inChunksOf(2)
+            .committingEachChunk()
+            .where(nameQuery('failing')))
+
+      then:
+      thrown(PersistenceException)
+      !entityManager.transaction.active
+      committedIds('failing') == entities[2..3]*.id
+      changes == [DummyDatabaseEntity]
+   }
+
+   private void persistCommitted(Closure work) {
+      entityManager.transaction.begin()
+      work()
+      entityManager.transaction.commit()
+      entityManager.clear()
+   }
+
+   private List<Long> committedIds(String name) {
+      def other = entityManagerFactory.createEntityManager()
+      try {
+         new DatabaseQueryHandler<DummyDatabaseEntity>(other)
+               .handle(nameQuery(name), ResultStrategy.all())*.id
+      } finally {
+         other.close()
+      }
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
@@ -0,0 +1,74 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class CountBatchSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should return the results of all queries in order"() {
+      given:
+      def batch = CountBatch.builder(DummyDatabaseEntity)
+            .count(nameQuery('John'))
+            .exist(nameQuery('Nobody'))
+            .count(DatabaseQuery.builder(DummyDatabaseEntity)
+                  .property(DummyDatabaseEntity::getNumber).isNull()
+                  .build())
+            .exist(nameQuery('Filip'))
+            .count(nameQuery('Nobody'))
+            .build()
+
+      when:
+      def results = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(batch)
+
+      then:
+      results == [4L, false, 4L, true, 0L]
+   }
+
+   def "should match the results of separate queries including unrestricted ones"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def queries = [
+            nameQuery('Jane'),
+            DatabaseQuery.builder(DummyDatabaseEntity).build(),
+            DatabaseQuery.builder(DummyDatabaseEntity)
+                  .withRestriction { cb, root -> cb.greaterThan(root.get('number'), 1500L) }
+                  .build()
+      ]
+      def builder = CountBatch.builder(DummyDatabaseEntity)
+      queries.each { builder.add(it, ResultStrategy.count()) }
+
+      when:
+      def results = handler.handle(builder.build())
+
+      then:
+      results == queries.collect { handler.handle(it, ResultStrategy.count()) }
+      results == [3L, 17L, 3L]
+   }
+
+   def "should return no results for an empty batch"() {
+      expect:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(CountBatch.builder(DummyDatabaseEntity).build()) == []
+   }
+
+   def "should reject queries which cannot be batched"() {
+      when:
+      CountBatch.builder(DummyDatabaseEntity).add(nameQuery('John'), ResultStrategy.all())
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
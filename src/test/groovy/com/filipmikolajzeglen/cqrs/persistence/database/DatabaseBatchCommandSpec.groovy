@@ -0,0 +1,114 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class DatabaseBatchCommandSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseCommandSpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should persist entities in batches using DatabaseBatchCommand.createAll"() {
+      given:
+      def entities = (1..7).collect { new DummyDatabaseEntity(name: "Batch", flag: true, number: it as Long) }
+      def handler = new DatabaseBatchCommandHandler<DummyDatabaseEntity>(entityManager)
+
+      when:
+      def result = handler.handle(DatabaseBatchCommand.createAll(entities).inBatchesOf(3))
+
+      then:
+      result.batchCounts == [3, 3, 1]
+      result.totalCount == 7
+      findByName('Batch')*.number == (1L..7L).toList()
+      !entityManager.contains(entities.last())
+   }
+
+   def "should update detached entities in batches using DatabaseBatchCommand.updateAll"() {
+      given:
+      def entities = findAll()
+      entityManager.clear()
+      entities.each { it.number = 5000L }
+
+      when:
+      def result = new DatabaseBatchCommandHandler<DummyDatabaseEntity>(entityManager)
+            .handle(DatabaseBatchCommand.updateAll(entities).inBatchesOf(1))
+
+      then:
+      result.batchCounts == [1, 1]
+      findAll()*.number == [5000L, 5000L]
+   }
+
+   def "should remove #description entities using DatabaseBatchCommand.removeAll"() {
+      given:
+      def entities = findAll()
+      if (detached) {
+         entityManager.clear()
+      }
+
+      when:
+      def result = new DatabaseBatchCommandHandler<DummyDatabaseEntity>(entityManager)
+            .handle(DatabaseBatchCommand.removeAll(entities))
+
+      then:
+      result.batchCounts == [2]
+      findAll().empty
+
+      where:
+      description | detached
+      'managed'   | false
+      'detached'  | true
+   }
+
+   def "should remove entity proxies and report their entity class"() {
+      given:
+      def ids = findAll()*.id
+      entityManager.clear()
+      def proxies = ids.collect { entityManager.getReference(DummyDatabaseEntity, it) }
+      entityManager.clear()
+      def changed = []
+      def handler = new DatabaseBatchCommandHandler<DummyDatabaseEntity>(entityManager,
+            { changed << it } as EntityChangeListener, AfterCommit.immediately())
+
+      when:
+      def result = handler.handle(DatabaseBatchCommand.removeAll(proxies))
+
+      then:
+      proxies.every { it.getClass() != DummyDatabaseEntity }
+      result.batchCounts == [2]
+      findAll().empty
+      changed == [DummyDatabaseEntity]
+   }
+
+   def "should return no batches for no entities"() {
+      when:
+      def result = DatabaseBatchCommand.createAll([]).execute(entityManager)
+
+      then:
+      result.batchCounts.empty
+      result.totalCount == 0
+   }
+
+   def "should reject non-positive batch sizes"() {
+      when:
+      DatabaseBatchCommand.createAll([]).inBatchesOf(0)
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   private List<DummyDatabaseEntity> findByName(String name) {
+      return entityManager
+            .createQuery("SELECT e FROM DummyDatabaseEntity e WHERE e.name = :name ORDER BY e.id", DummyDatabaseEntity)
+            .setParameter('name', name)
+            .resultList
+   }
+
+   private List<DummyDatabaseEntity> findAll() {
+      return entityManager
+            .createQuery("SELECT e FROM DummyDatabaseEntity e ORDER BY e.id", DummyDatabaseEntity)
+            .resultList
+   }
+}
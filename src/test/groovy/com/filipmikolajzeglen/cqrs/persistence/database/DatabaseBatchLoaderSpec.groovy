@@ -0,0 +1,141 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.time.Duration
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import spock.lang.AutoCleanup
+
+class DatabaseBatchLoaderSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @AutoCleanup('shutdownNow')
+   private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor()
+
+   private List<DatabaseQuery<DummyDatabaseEntity>> queries = []
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should load all pending ids with one in query on dispatch"() {
+      given:
+      def loader = DatabaseBatchLoader.builder(recordingHandler(), DummyDatabaseEntity, DummyDatabaseEntity::getId).build()
+
+      when:
+      def futures = [3L, 1L, 17L, 3L, 999L].collect { loader.load(it) }
+
+      then:
+      futures.every { !it.done }
+      queries.isEmpty()
+
+      when:
+      loader.dispatch()
+
+      then:
+      futures*.join()*.id == [3L, 1L, 17L, 3L, null]
+      futures[0].is(futures[3])
+      queries.size() == 1
+      queries[0].restrictionShapes() == ['id in (?, ?, ?, ?)']
+   }
+
+   def "should load a batch as soon as it is full"() {
+      given:
+      def loader = DatabaseBatchLoader.builder(recordingHandler(), DummyDatabaseEntity, DummyDatabaseEntity::getId)
+            .maxBatchSize(2)
+            .build()
+
+      when:
+      def first = loader.load(1L)
+      def second = loader.load(2L)
+      def third = loader.load(3L)
+
+      then:
+      first.join().name == 'John'
+      second.join().name == 'Jane'
+      !third.done
+      queries.size() == 1
+   }
+
+   def "should load a batch once its window has passed"() {
+      given:
+      def loader = DatabaseBatchLoader.builder(stubHandler(), DummyDatabaseEntity, DummyDatabaseEntity::getId)
+            .window(Duration.ofMillis(20), scheduler)
+            .build()
+
+      when:
+      def futures = (1L..5L).collect { loader.load(it) }
+
+      then:
+      futures.collect { it.get(5, TimeUnit.SECONDS).id } == [1L, 2L, 3L, 4L, 5L]
+      queries.size() == 1
+   }
+
+   def "should fail all lookups of a failed batch"() {
+      given:
+      def failure = new IllegalStateException('database unavailable')
+      def loader = DatabaseBatchLoader.builder(failingHandler(failure), DummyDatabaseEntity, DummyDatabaseEntity::getId)
+            .build()
+      def futures = [1L, 2L].collect { loader.load(it) }
+
+      when:
+      loader.dispatch()
+      futures[0].join()
+
+      then:
+      def e = thrown(CompletionException)
+      e.cause.is(failure)
+      futures.every { it.completedExceptionally }
+   }
+
+   def "should do nothing when dispatching without pending ids"() {
+      given:
+      def loader = DatabaseBatchLoader.builder(recordingHandler(), DummyDatabaseEntity, DummyDatabaseEntity::getId).build()
+
+      when:
+      loader.dispatch()
+
+      then:
+      queries.isEmpty()
+   }
+
+   private QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity> recordingHandler() {
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      return new QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity>() {
+         @Override
+         <R> R handle(DatabaseQuery<DummyDatabaseEntity> query, ResultStrategy<DummyDatabaseEntity, R> resultStrategy) {
+            queries << query
+            return handler.handle(query, resultStrategy)
+         }
+      }
+   }
+
+   /**
+    * Returns an entity for every id without the database, since the window loads batches on the scheduler thread.
+    */
+   private QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity> stubHandler() {
+      return new QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity>() {
+         @Override
+         <R> R handle(DatabaseQuery<DummyDatabaseEntity> query, ResultStrategy<DummyDatabaseEntity, R> resultStrategy) {
+            queries << query
+            return (R) query.parameterValues().unique().collect { DummyDatabaseEntity.of(it as Long, 'Stub', false, null) }
+         }
+      }
+   }
+
+   private static QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity> failingHandler(RuntimeException failure) {
+      return new QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity>() {
+         @Override
+         <R> R handle(DatabaseQuery<DummyDatabaseEntity> query, ResultStrategy<DummyDatabaseEntity, R> resultStrategy) {
+            throw failure
+         }
+      }
+   }
+}
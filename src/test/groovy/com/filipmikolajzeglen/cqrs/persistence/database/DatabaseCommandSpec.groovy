@@ -79,6 +79,29 @@ class DatabaseCommandSpec extends DBSpecification {
       entityManager.find(DummyDatabaseEntity, -2L) == null
    }
 
+   def "should report the entity type of proxies to the change listener"() {
+      given:
+      def changed = []
+      def handler = new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager,
+            { changed << it } as EntityChangeListener, AfterCommit.immediately())
+      def id = entityManager
+            .createQuery("SELECT e.id FROM DummyDatabaseEntity e WHERE name = 'To remove'", Long)
+            .singleResult
+      entityManager.clear()
+      def proxy = entityManager.getReference(DummyDatabaseEntity, id)
+
+      when:
+      handler.handle(DatabaseCommand.update(proxy))
+      handler.handle(DatabaseCommand.remove(proxy))
+      entityManager.flush()
+      entityManager.clear()
+
+      then:
+      proxy.getClass() != DummyDatabaseEntity
+      changed == [DummyDatabaseEntity, DummyDatabaseEntity]
+      entityManager.find(DummyDatabaseEntity, id) == null
+   }
+
    def "should flush using DatabaseCommand.flush"() {
       given:
       def entity = new DummyDatabaseEntity(name: "FlushTest", flag: false, number: 99L)
@@ -0,0 +1,147 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+
+class DatabaseMetricsSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   private List<QueryMeasurement> queries = []
+   private List<CommandMeasurement> commands = []
+   private DatabaseMetrics metrics = new DatabaseMetrics() {
+      @Override
+      void queryExecuted(QueryMeasurement measurement) {
+         queries << measurement
+      }
+
+      @Override
+      void commandExecuted(CommandMeasurement measurement) {
+         commands << measurement
+      }
+   }
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should measure #operation queries"() {
+      when:
+      measuredHandler().handle(nameQuery('John'), strategy)
+
+      then:
+      queries.size() == 1
+      with(queries[0]) {
+         entityType() == DummyDatabaseEntity
+         operation() == operation
+         rows() == rows
+         statements() == statements
+         !buildTime().isNegative()
+         !executionTime().isNegative()
+      }
+
+      where:
+      operation | strategy                           | rows | statements
+      'list'    | ResultStrategy.all()               | 4    | 1
+      'count'   | ResultStrategy.count()             | 1    | 1
+      'exist'   | ResultStrategy.exist()             | 1    | 1
+      'paged'   | ResultStrategy.paged(0, 2, 4)      | 3    | 2
+      'paged'   | ResultStrategy.paged(1, 3, 4)      | 1    | 1
+      'sliced'  | ResultStrategy.sliced(0, 2)        | 3    | 1
+   }
+
+   def "should give queries of the same shape the same fingerprint"() {
+      when:
+      def handler = measuredHandler()
+      handler.handle(nameQuery('John'), ResultStrategy.all())
+      handler.handle(nameQuery('Jane'), ResultStrategy.all())
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+      handler.handle(nameQuery('Jane'), ResultStrategy.<DummyDatabaseEntity> all().orderedByDesc('number'))
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.equal(root.get('name'), 'Jane') }
+            .build(), ResultStrategy.all())
+
+      then:
+      def fingerprints = queries*.fingerprint()
+      fingerprints[0] == fingerprints[1]
+      fingerprints.toSet().size() == 4
+      fingerprints.every { it ==~ /[0-9a-f]{16}/ }
+   }
+
+   def "should measure keyset pages and count batches"() {
+      given:
+      def handler = measuredHandler()
+
+      when:
+      handler.handle(nameQuery('John'), KeysetPage.first(3))
+      handler.handle(CountBatch.builder(DummyDatabaseEntity)
+            .count(nameQuery('John'))
+            .exist(nameQuery('Jane'))
+            .build())
+
+      then:
+      queries*.operation() == ['keyset', 'count batch']
+      queries*.rows() == [4L, 1L]
+      queries*.statements() == [1, 1]
+   }
+
+   def "should not measure queries of handlers without metrics"() {
+      when:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(nameQuery('John'), ResultStrategy.all())
+
+      then:
+      queries.isEmpty()
+   }
+
+   def "should measure commands"() {
+      when:
+      new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, EntityChangeListener.none(),
+            AfterCommit.immediately(), metrics)
+            .handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'Jane', flag: true, number: 1L)))
+      new DatabaseBatchCommandHandler<DummyDatabaseEntity>(entityManager, EntityChangeListener.none(),
+            AfterCommit.immediately(), metrics)
+            .handle(DatabaseBatchCommand.createAll([
+                  new DummyDatabaseEntity(name: 'Jane', flag: true),
+                  new DummyDatabaseEntity(name: 'Jane', flag: false)]))
+      new DatabaseSuperCommandHandler<DummyDatabaseEntity>(entityManager, EntityChangeListener.none(),
+            AfterCommit.immediately(), metrics)
+            .handle(DatabaseSuperCommand.update(DummyDatabaseEntity)
+                  .set(DummyDatabaseEntity::setName, 'Janet')
+                  .where(nameQuery('Jane')))
+
+      then:
+      commands*.entityType() == [DummyDatabaseEntity] * 3
+      commands*.operation() == ['create', 'createAll', 'update']
+      commands*.affectedRows() == [1L, 2L, 6L]
+   }
+
+   def "should not measure failed commands"() {
+      when:
+      new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, EntityChangeListener.none(),
+            AfterCommit.immediately(), metrics)
+            .handle(new DatabaseCommand<DummyDatabaseEntity>() {
+               @Override
+               DummyDatabaseEntity execute(EntityManager em) {
+                  throw new IllegalStateException('failed')
+               }
+            })
+
+      then:
+      thrown(IllegalStateException)
+      commands.isEmpty()
+   }
+
+   private DatabaseQueryHandler<DummyDatabaseEntity> measuredHandler() {
+      DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .metrics(metrics)
+            .build()
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
@@ -0,0 +1,107 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import spock.lang.Specification
+
+class DatabaseQueryEqualitySpec extends Specification {
+
+   def "should treat queries with the same restrictions as equal"() {
+      given:
+      def byGetter = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .property(DummyDatabaseEntity::getNumber).not().in([1000L, 2000L])
+            .anyOf { group ->
+               group.property(DummyDatabaseEntity::isFlag).equalTo(true)
+                     .property(DummyDatabaseEntity::getNumber).greaterThan(2000L)
+            }
+            .build()
+      def byName = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property('name').equalTo('John')
+            .property('number').not().in([1000L, 2000L])
+            .anyOf { group ->
+               group.property('flag').equalTo(true)
+                     .property('number').greaterThan(2000L)
+            }
+            .build()
+
+      expect:
+      byGetter == byName
+      byGetter.hashCode() == byName.hashCode()
+      byGetter.fingerprint() == byName.fingerprint()
+      [byGetter, byName].toSet().size() == 1
+   }
+
+   def "should distinguish queries by values but not their fingerprints"() {
+      given:
+      def john = nameQuery('John')
+      def jane = nameQuery('Jane')
+
+      expect:
+      john != jane
+      john.fingerprint() == jane.fingerprint()
+      john.fingerprint() ==~ /[0-9a-f]{16}/
+   }
+
+   def "should distinguish fingerprints of queries with different shapes"() {
+      given:
+      def equal = nameQuery('John')
+      def negated = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).not().equalTo('John')
+            .build()
+      def prefix = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).startsWith('John')
+            .build()
+      def dummyId = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property('id').equalTo(1L)
+            .build()
+      def superId = DatabaseQuery.builder(SuperEntity)
+            .property('id').equalTo(1L)
+            .build()
+      def fetching = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property('id').equalTo(1L)
+            .fetch('superEntity')
+            .build()
+
+      expect:
+      [equal, negated, prefix, dummyId, superId, fetching]*.fingerprint().toSet().size() == 6
+   }
+
+   def "should compare custom restrictions by identity"() {
+      given:
+      def restriction = { cb, root -> cb.isNull(root.get('number')) }
+      def first = DatabaseQuery.builder(DummyDatabaseEntity).withRestriction(restriction).build()
+      def second = DatabaseQuery.builder(DummyDatabaseEntity).withRestriction(restriction).build()
+
+      expect:
+      first == first
+      first != second
+      first.fingerprint() == second.fingerprint()
+   }
+
+   def "should not be affected by later changes of its builder"() {
+      given:
+      def builder = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+      def query = builder.build()
+
+      when:
+      builder.property(DummyDatabaseEntity::getNumber).isNull()
+
+      then:
+      query.restrictions.size() == 1
+      query == nameQuery('John')
+   }
+
+   def "should not allow modifying the restrictions of a query"() {
+      when:
+      nameQuery('John').restrictions.clear()
+
+      then:
+      thrown(UnsupportedOperationException)
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
@@ -697,6 +697,111 @@ class DatabaseQuerySpec extends DBSpecification {
       result*.id.sort() == [nested1.id, nested2.id].sort()
    }
 
+   def "should filter by comparison restrictions"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).greaterThan(1000L)
+            .property(DummyDatabaseEntity::getNumber).lessThan(2500L)
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, ResultStrategy.all())
+
+      then:
+      result*.id.sort() == [2L, 5L]
+   }
+
+   def "should filter by between restriction with inclusive bounds"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).between(2000L, 2500L)
+            .build()
+      def negated = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).not().between(1000L, 2000L)
+            .build()
+
+      when:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+
+      then:
+      handler.handle(query, ResultStrategy.all())*.id.sort() == [2L, 3L, 5L]
+      handler.handle(negated, ResultStrategy.all())*.id == [3L]
+   }
+
+   def "should leave a side of the range open for an empty Optional bound in between"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+
+      expect:
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).between(from, to)
+            .build(), ResultStrategy.count()) == count
+
+      where:
+      from               | to                 || count
+      Optional.of(2000L) | Optional.empty()   || 3L
+      Optional.empty()   | Optional.of(1000L) || 10L
+      Optional.empty()   | Optional.empty()   || 17L
+   }
+
+   def "should skip comparison restrictions with optionally() for empty Optional"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).optionally().greaterThan(Optional.empty())
+            .property(DummyDatabaseEntity::getNumber).optionally().lessThan(Optional.of(2000L))
+            .property(DummyDatabaseEntity::getName).optionally().startsWith(Optional.empty())
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, ResultStrategy.count())
+
+      then:
+      result == 10L
+   }
+
+   def "should reject null comparison values"() {
+      when:
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).greaterThan((Long) null)
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   def "should filter by prefix matching wildcards literally"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+
+      expect:
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).startsWith('Jo')
+            .build(), ResultStrategy.all())*.id.sort() == [1L, 3L, 4L, 5L, 6L, 7L, 8L]
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).not().startsWith('Jo')
+            .build(), ResultStrategy.count()) == 10L
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).startsWith('J_')
+            .build(), ResultStrategy.count()) == 0L
+   }
+
+   def "should filter by like and ilike patterns"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+
+      expect:
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).like('J_n%')
+            .build(), ResultStrategy.all())*.id.sort() == [2L, 9L, 10L]
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).like('jo%')
+            .build(), ResultStrategy.count()) == 0L
+      handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).ilike('jO%')
+            .build(), ResultStrategy.count()) == 7L
+   }
+
    def "should use custom pagination and set offset and limit on query"() {
       given:
       def query = DatabaseQuery.builder(DummyDatabaseEntity)
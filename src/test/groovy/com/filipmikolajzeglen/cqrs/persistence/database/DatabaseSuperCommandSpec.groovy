@@ -90,6 +90,107 @@ class DatabaseSuperCommandSpec extends DBSpecification {
       all.every { !it.flag }
    }
 
+   def "should update all entities by property name when no where clause is provided"() {
+      given:
+      def command = DatabaseSuperCommand.update(DummyDatabaseEntity)
+            .set("number", 42L).where()
+
+      when:
+      def updatedCount = command.execute(entityManager)
+      entityManager.flush()
+      entityManager.clear()
+
+      then:
+      updatedCount == 7
+      def all = entityManager.createQuery(
+            "select e from DummyDatabaseEntity e", DummyDatabaseEntity
+      ).resultList
+      all.every { it.number == 42L }
+   }
+
+   def "should delete matching entities using DatabaseSuperCommand.delete"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::isFlag).equalTo(false)
+            .build()
+
+      when:
+      def deleted = DatabaseSuperCommand.delete(DummyDatabaseEntity).where(query).execute(entityManager)
+
+      then:
+      deleted == 4
+      remainingNames() == ['1111111', '5555555', '7777777']
+   }
+
+   def "should delete matching entities in chunks of #chunkSize"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).in([2000L, 3000L, 4000L, 6000L, 7000L])
+            .build()
+
+      when:
+      def deleted = DatabaseSuperCommand.delete(DummyDatabaseEntity)
+            .inChunksOf(chunkSize)
+            .where(query)
+            .execute(entityManager)
+
+      then:
+      deleted == 5
+      remainingNames() == ['1111111', '5555555']
+      entityTransaction.active
+
+      where:
+      chunkSize << [1, 2, 5, 10]
+   }
+
+   def "should delete all entities when no where clause is provided"() {
+      when:
+      def deleted = DatabaseSuperCommand.delete(DummyDatabaseEntity).inChunksOf(3).where().execute(entityManager)
+
+      then:
+      deleted == 7
+      remainingNames().empty
+   }
+
+   def "should reject committing each chunk inside the caller's transaction"() {
+      when:
+      DatabaseSuperCommand.delete(DummyDatabaseEntity)
+            .inChunksOf(2)
+            .committingEachChunk()
+            .where()
+            .execute(entityManager)
+
+      then:
+      thrown(IllegalStateException)
+      entityTransaction.active
+      remainingNames().size() == 7
+   }
+
+   def "should delete entities in chunks by an id attribute not called id"() {
+      given:
+      (1..5).each { entityManager.persist(CodedEntity.of(null, "Coded $it")) }
+      entityManager.flush()
+      entityManager.clear()
+
+      when:
+      def deleted = DatabaseSuperCommand.delete(CodedEntity).inChunksOf(2).where().execute(entityManager)
+
+      then:
+      deleted == 5
+      entityManager.createQuery('SELECT count(c) FROM CodedEntity c', Long).singleResult == 0L
+   }
+
+   def "should reject chunk sizes of #chunkSize"() {
+      when:
+      DatabaseSuperCommand.delete(DummyDatabaseEntity).inChunksOf(chunkSize)
+
+      then:
+      thrown(IllegalArgumentException)
+
+      where:
+      chunkSize << [0, InList.MAXIMUM_VALUES + 1]
+   }
+
    def "should throw UnsupportedOperationException in applyToEntity for string property setter"() {
       given:
       def setter = DatabaseSuperCommand.Setter.from("someProperty", "value")
@@ -101,4 +202,10 @@ class DatabaseSuperCommandSpec extends DBSpecification {
       def e = thrown(UnsupportedOperationException)
       e.message == "Not supported yet."
    }
-}
\ No newline at end of file
+
+   private List<String> remainingNames() {
+      return entityManager.createQuery(
+            "select e.name from DummyDatabaseEntity e order by e.id", String
+      ).resultList
+   }
+}
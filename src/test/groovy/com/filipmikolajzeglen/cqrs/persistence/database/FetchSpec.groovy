@@ -0,0 +1,100 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class FetchSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/FetchSpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should load fetched associations with the queried entities"() {
+      given:
+      def query = DatabaseQuery.builder(SuperEntity)
+            .fetch(SuperEntity::getDummyDatabaseEntity as PropertyBuilder.Getter)
+            .fetch('nestedSuperEntities')
+            .build()
+
+      when:
+      def entities = new DatabaseQueryHandler<SuperEntity>(entityManager).handle(query, ResultStrategy.all())
+
+      then:
+      entities*.id == [1L, 2L, 3L, 4L]
+      entities.every { loaded(it, 'dummyDatabaseEntity') && loaded(it, 'nestedSuperEntities') }
+      entities.collect { it.nestedSuperEntities.size() } == [2, 1, 0, 3]
+      entities*.dummyDatabaseEntity*.name == ['Jane', 'John', 'Anna', 'Jane']
+   }
+
+   def "should paginate rows in the database when fetching a collection"() {
+      given:
+      def query = DatabaseQuery.builder(SuperEntity)
+            .fetch('nestedSuperEntities')
+            .build()
+
+      when:
+      def page = new DatabaseQueryHandler<SuperEntity>(entityManager)
+            .handle(query, ResultStrategy.<SuperEntity>paged(1, 2, 4).orderedByDesc('id'))
+
+      then:
+      page.content*.id == [2L, 1L]
+      page.content.collect { it.nestedSuperEntities*.id.sort() } == [[3L], [1L, 2L]]
+      page.totalElements == 4
+      page.totalPages == 2
+   }
+
+   def "should support #strategyName result strategy with collection fetches"() {
+      given:
+      def query = DatabaseQuery.builder(SuperEntity)
+            .fetch('nestedSuperEntities')
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<SuperEntity>(entityManager).handle(query, strategy)
+
+      then:
+      verify(result)
+
+      where:
+      strategyName | strategy                                                     | verify
+      'first'      | ResultStrategy.<SuperEntity>first().orderedByDesc('id')      | { it.get().nestedSuperEntities.size() == 3 }
+      'sliced'     | ResultStrategy.sliced(0, 3)                                  | { it.content*.id == [1L, 2L, 3L] && it.hasNext }
+      'paged'      | ResultStrategy.paged(5, 2, 4)                                | { it.content.isEmpty() && it.totalElements == 4 }
+      'count'      | ResultStrategy.count()                                       | { it == 4L }
+      'exist'      | ResultStrategy.exist()                                       | { it == true }
+   }
+
+   def "should fetch nested association paths"() {
+      given:
+      def query = DatabaseQuery.builder(NestedSuperEntity)
+            .fetch('superEntity.dummyDatabaseEntity')
+            .build()
+
+      when:
+      def entities = new DatabaseQueryHandler<NestedSuperEntity>(entityManager).handle(query, ResultStrategy.all())
+
+      then:
+      entities*.superEntity*.dummyDatabaseEntity*.name == ['Jane', 'Jane', 'John', 'Jane', 'Jane', 'Jane']
+   }
+
+   def "should ignore fetch paths in projections"() {
+      given:
+      def query = DatabaseQuery.builder(SuperEntity)
+            .fetch('nestedSuperEntities')
+            .build()
+
+      when:
+      def ids = new DatabaseQueryHandler<SuperEntity>(entityManager)
+            .handle(query, Projection.tuple('id'), ResultStrategy.paged(0, 2, 4))
+
+      then:
+      ids.content.collect { it.get('id') } == [1L, 2L]
+   }
+
+   private boolean loaded(Object entity, String attribute) {
+      entityManagerFactory.persistenceUnitUtil.isLoaded(entity, attribute)
+   }
+}
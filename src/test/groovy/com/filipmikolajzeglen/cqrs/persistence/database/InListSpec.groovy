@@ -0,0 +1,120 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import spock.lang.Specification
+
+class InListSpec extends Specification {
+
+   def "should pad #values.size() values to #expectedSize"() {
+      when:
+      def chunks = InList.of(values).chunks()
+
+      then:
+      chunks.size() == 1
+      chunks[0].size() == expectedSize
+      chunks[0] as Set == values as Set
+
+      where:
+      values                   || expectedSize
+      [1]                      || 1
+      [1, 2]                   || 2
+      [1, 2, 3]                || 4
+      [1, 2, 3, 4]             || 4
+      [1, 2, 3, 4, 5]          || 8
+      (1..300).toList()        || 512
+      (1..512).toList()        || 512
+   }
+
+   def "should remove duplicates before padding"() {
+      expect:
+      InList.of([1, 2, 2, 1, 3]).chunks() == [[1, 2, 3, 3]]
+   }
+
+   def "should split long lists into chunks of the maximum size"() {
+      given:
+      def values = (1..1100).toList()
+
+      when:
+      def chunks = InList.of(values).chunks()
+
+      then:
+      chunks*.size() == [512, 512, 128]
+      chunks.flatten() as Set == values as Set
+   }
+
+   def "should keep a single empty chunk for no values"() {
+      expect:
+      InList.of([]).chunks() == [[]]
+   }
+
+   def "should keep the given values but chunk only distinct non-null ones"() {
+      when:
+      def inList = InList.of([3, null, 1, 3])
+
+      then:
+      inList == [3, null, 1, 3]
+      inList.chunks() == [[3, 1]]
+      InList.of(inList).is(inList)
+   }
+
+   def "should accept the maximum number of values fitting into one statement"() {
+      given:
+      def values = (1..InList.MAXIMUM_VALUES).toList()
+
+      when:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in(values)
+            .build()
+
+      then:
+      InList.MAXIMUM_VALUES == 32256
+      query.parameterValues().size() == InList.MAXIMUM_VALUES
+      query.restrictionShapes()[0].count('in (') == 63
+   }
+
+   def "should reject in lists exceeding the bind parameter limit"() {
+      when:
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in((1L..(InList.MAXIMUM_VALUES + 1L)).toList())
+
+      then:
+      def e = thrown(IllegalArgumentException)
+      e.message.contains('at most 32256 distinct values')
+   }
+
+   def "should reject queries whose restrictions together exceed the bind parameter limit"() {
+      when:
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in((1L..20_000L).toList())
+            .property(DummyDatabaseEntity::getNumber).in((1L..20_000L).toList())
+            .build()
+
+      then:
+      def e = thrown(IllegalArgumentException)
+      e.message.contains('at most 32767 parameters')
+   }
+
+   def "should build queries with custom restrictions"() {
+      when:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.isNull(root.get('number')) }
+            .property(DummyDatabaseEntity::getId).in([1L, 2L])
+            .build()
+
+      then:
+      !query.isParameterizable()
+      query.restrictions.size() == 2
+   }
+
+   def "should count values combined with custom restrictions against the bind parameter limit"() {
+      when:
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.isNull(root.get('number')) }
+            .property(DummyDatabaseEntity::getId).in((1L..20_000L).toList())
+            .property(DummyDatabaseEntity::getNumber).in((1L..20_000L).toList())
+            .build()
+
+      then:
+      def e = thrown(IllegalArgumentException)
+      e.message.contains('at most 32767 parameters')
+   }
+}
@@ -0,0 +1,160 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class KeysetPaginationSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should walk through all pages sorted by id by default"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).in(['John', 'Jane', 'Joanna'])
+            .build()
+
+      when:
+      def pages = fetchAll(handler, query, KeysetPage.first(3))
+
+      then:
+      pages*.content*.id == [[1L, 2L, 3L], [4L, 5L, 6L], [7L, 8L, 9L], [10L]]
+      pages*.hasNext() == [true, true, true, false]
+      pages.last().nextToken == null
+      !pages.last().nextPage().isPresent()
+   }
+
+   def "should return the same order as offset pagination when sorted by #direction name"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity).build()
+
+      when:
+      def pages = fetchAll(handler, query, firstPage)
+
+      then:
+      pages*.content.flatten()*.id == handler.handle(query, expectedStrategy)*.id
+      pages.size() == 5
+
+      where:
+      direction | firstPage                                 | expectedStrategy
+      'asc'     | KeysetPage.first(4).orderedByAsc('name')  | ResultStrategy.all().orderedByAsc('name').orderedByAsc('id')
+      'desc'    | KeysetPage.first(4).orderedByDesc('name') | ResultStrategy.all().orderedByDesc('name').orderedByAsc('id')
+   }
+
+   def "should continue from a token passed as plain text"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .property(DummyDatabaseEntity::getNumber).isNotNull()
+            .build()
+      def first = handler.handle(query, KeysetPage.first(2).orderedByDesc('number'))
+
+      when:
+      def second = handler.handle(query, KeysetPage.after(first.nextToken, 2).orderedByDesc('number'))
+
+      then:
+      first.content*.number == [2500L, 2000L]
+      second.content*.number == [1000L]
+      !second.hasNext()
+   }
+
+   def "should reject a token issued for different sort orders"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity).build()
+      def token = handler.handle(query, KeysetPage.first(2).orderedByAsc('name')).nextToken
+
+      when:
+      handler.handle(query, KeysetPage.after(token, 2).orderedByDesc('name'))
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   def "should reject a malformed token"() {
+      when:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(DatabaseQuery.builder(DummyDatabaseEntity).build(), KeysetPage.after('not a token', 2))
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   def "should fail when a sort key of the last row is null"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('Joanna')
+            .property(DummyDatabaseEntity::getNumber).isNull()
+            .build()
+
+      when:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, KeysetPage.first(1).orderedByAsc('number'))
+
+      then:
+      thrown(IllegalStateException)
+   }
+
+   def "should fail on the page fetching a row whose sort key is null"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .build()
+
+      when:
+      handler.handle(query, KeysetPage.first(1).orderedByDesc('number'))
+
+      then:
+      def exception = thrown(IllegalStateException)
+      exception.message.contains("'number' is null")
+   }
+
+   def "should seek mixed sort directions from the leading key"() {
+      given:
+      def handler = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).isNotNull()
+            .build()
+
+      when:
+      def pages = fetchAll(handler, query, KeysetPage.first(3).orderedByDesc('number').orderedByAsc('name'))
+
+      then:
+      pages*.content.flatten()*.id == handler.handle(query,
+            ResultStrategy.all().orderedByDesc('number').orderedByAsc('name').orderedByAsc('id'))*.id
+   }
+
+   def "should reject sort keys of unsupported types when issuing the first token"() {
+      when:
+      KeysetToken.encode(['createdAt ASC', 'id ASC'], [new Date(), 1L])
+
+      then:
+      def exception = thrown(IllegalArgumentException)
+      exception.message.contains('java.util.Date')
+   }
+
+   def "should reject non-positive page sizes"() {
+      when:
+      KeysetPage.first(0)
+
+      then:
+      thrown(IllegalArgumentException)
+   }
+
+   private static List<KeysetResult<DummyDatabaseEntity>> fetchAll(DatabaseQueryHandler<DummyDatabaseEntity> handler,
+         DatabaseQuery<DummyDatabaseEntity> query, KeysetPage firstPage) {
+      def pages = [handler.handle(query, firstPage)]
+      while (pages.last().hasNext()) {
+         pages << handler.handle(query, pages.last().nextPage().get())
+      }
+      return pages
+   }
+}
@@ -0,0 +1,81 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class ProjectionSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should select properties into a record using #testCase references"() {
+      when:
+      def views = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(janesQuery(), projection, ResultStrategy.all())
+
+      then:
+      views == [
+            new DummyDatabaseEntityView('Jane', 2000L),
+            new DummyDatabaseEntityView('Jane', null),
+            new DummyDatabaseEntityView('Jane', 1000L)
+      ]
+
+      where:
+      testCase   | projection
+      'Function' | Projection.into(DummyDatabaseEntityView,
+            DummyDatabaseEntity::getName as PropertyBuilder.Getter,
+            DummyDatabaseEntity::getNumber as PropertyBuilder.Getter)
+      'String'   | Projection.into(DummyDatabaseEntityView, 'name', 'number')
+   }
+
+   def "should select properties into tuples aliased by property name"() {
+      when:
+      def tuples = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(janesQuery(), Projection.tuple('id', 'number'), ResultStrategy.all().orderedByAsc('number'))
+
+      then:
+      tuples.collect { [it.get('id'), it.get('number')] } == [[10L, 1000L], [2L, 2000L], [9L, null]]
+   }
+
+   def "should support #strategyName result strategy with projections"() {
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(janesQuery(), Projection.into(DummyDatabaseEntityView, 'name', 'number'), strategy)
+
+      then:
+      verify(result)
+
+      where:
+      strategyName | strategy                       | verify
+      'first'      | ResultStrategy.first()         | { it.get().number == 2000L }
+      'exist'      | ResultStrategy.exist()         | { it == true }
+      'count'      | ResultStrategy.count()         | { it == 3L }
+      'paged'      | ResultStrategy.paged(1, 2, 3)  | { it.content*.number == [1000L] && it.totalElements == 3 }
+      'sliced'     | ResultStrategy.sliced(0, 2)    | { it.content*.number == [2000L, null] && it.hasNext }
+   }
+
+   def "should load read-only entities whose changes are not flushed"() {
+      given:
+      def entities = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(janesQuery(), Projection.readOnlyEntities(DummyDatabaseEntity), ResultStrategy.all())
+
+      when:
+      entities.each { it.name = 'Changed' }
+      entityManager.flush()
+      entityManager.clear()
+
+      then:
+      entities*.id == [2L, 9L, 10L]
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(janesQuery(), ResultStrategy.count()) == 3L
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> janesQuery() {
+      return DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('Jane')
+            .build()
+   }
+}
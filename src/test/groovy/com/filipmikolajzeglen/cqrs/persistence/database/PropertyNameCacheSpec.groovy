@@ -0,0 +1,100 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import spock.lang.Specification
+
+class PropertyNameCacheSpec extends Specification {
+
+   def cleanup() {
+      PropertyNameCache.clear()
+   }
+
+   def "should resolve property names from getter references"() {
+      expect:
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntity::getName as PropertyBuilder.Getter) == 'name'
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntity::isFlag as PropertyBuilder.Getter) == 'flag'
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntity::getNumber as PropertyBuilder.Getter) == 'number'
+   }
+
+   def "should resolve property names from setter references"() {
+      expect:
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntity::setName as PropertyBuilder.Setter) == 'name'
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntity::setFlag as PropertyBuilder.Setter) == 'flag'
+   }
+
+   def "should resolve the same names after warming up entity types"() {
+      given:
+      PropertyNameCache.warmUp(DummyDatabaseEntity, SuperEntity, NestedSuperEntity)
+
+      expect:
+      PropertyNameCache.propertyNameOf(SuperEntity::getDummyDatabaseEntity as PropertyBuilder.Getter) == 'dummyDatabaseEntity'
+      PropertyNameCache.propertyNameOf(NestedSuperEntity::setSuperEntity as PropertyBuilder.Setter) == 'superEntity'
+   }
+
+   def "should cache names of method references compiled by javac"() {
+      given:
+      def name = DummyDatabaseEntityReferences.name()
+
+      when:
+      def first = PropertyNameCache.propertyNameOf(name)
+
+      then:
+      name.getClass().isHidden()
+      first == 'name'
+      PropertyNameCache.size() == 1
+
+      when:
+      def second = PropertyNameCache.propertyNameOf(DummyDatabaseEntityReferences.name())
+
+      then:
+      second.is(first)
+      PropertyNameCache.size() == 1
+
+      when:
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntityReferences.flag())
+      PropertyNameCache.propertyNameOf(DummyDatabaseEntityReferences.setName())
+
+      then:
+      PropertyNameCache.size() == 3
+   }
+
+   def "should not cache method references which are not hidden classes"() {
+      given:
+      def name = DummyDatabaseEntity::getName as PropertyBuilder.Getter
+
+      when:
+      PropertyNameCache.propertyNameOf(name)
+
+      then:
+      !name.getClass().isHidden()
+      PropertyNameCache.size() == 0
+   }
+
+   def "should evict oldest entries when bounded cache is full"() {
+      given:
+      def cache = new BoundedCache<String, Integer>(2)
+
+      when:
+      cache.put('a', 1)
+      cache.put('b', 2)
+      cache.put('c', 3)
+
+      then:
+      cache.size() == 2
+      cache.get('a') == null
+      cache.get('b') == 2
+      cache.get('c') == 3
+   }
+
+   def "should keep first value when key is already cached"() {
+      given:
+      def cache = new BoundedCache<String, Integer>(2)
+
+      when:
+      cache.put('a', 1)
+      def result = cache.put('a', 2)
+
+      then:
+      result == 1
+      cache.get('a') == 1
+   }
+}
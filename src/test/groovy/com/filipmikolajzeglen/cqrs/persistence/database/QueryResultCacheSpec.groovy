@@ -0,0 +1,260 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.time.Duration
+import java.util.function.LongSupplier
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+
+class QueryResultCacheSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   private QueryResultCache cache = QueryResultCache.builder().build()
+   private CommitCallbacks afterCommit = new CommitCallbacks()
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should serve repeated queries from the cache"() {
+      given:
+      def handler = cachingHandler()
+
+      when:
+      def first = handler.handle(nameQuery('Jane'), ResultStrategy.count())
+      def second = handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      then:
+      first == 3L
+      second == 3L
+      cache.statistics() == new QueryResultCache.Statistics(1, 1, 0)
+      cache.statistics().hitRate() == 0.5d
+   }
+
+   def "should cache queries differing in #difference separately"() {
+      given:
+      def handler = cachingHandler()
+
+      when:
+      handler.handle(nameQuery('John'), ResultStrategy.paged(0, 2, 4))
+      handler.handle(query, strategy)
+
+      then:
+      cache.statistics().missCount == 2
+      cache.size() == 2
+
+      where:
+      difference      | query             | strategy
+      'values'        | nameQuery('Jane') | ResultStrategy.paged(0, 2, 4)
+      'strategy type' | nameQuery('John') | ResultStrategy.sliced(0, 2)
+      'page'          | nameQuery('John') | ResultStrategy.paged(1, 2, 4)
+      'sort orders'   | nameQuery('John') | ResultStrategy.<DummyDatabaseEntity>paged(0, 2, 4).orderedByDesc('number')
+   }
+
+   def "should not cache queries with custom restrictions"() {
+      given:
+      def handler = cachingHandler()
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.equal(root.get('name'), 'Jane') }
+            .build()
+
+      when:
+      def counts = (1..2).collect { handler.handle(query, ResultStrategy.count()) }
+
+      then:
+      counts == [3L, 3L]
+      cache.statistics() == new QueryResultCache.Statistics(0, 0, 0)
+   }
+
+   def "should drop cached results when a command changes the queried entity type"() {
+      given:
+      def handler = cachingHandler()
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      when:
+      change.call(entityManager, cache, afterCommit)
+      afterCommit.committed()
+      def count = handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      then:
+      count == expectedCount
+      cache.statistics().missCount == 2
+
+      where:
+      change << [
+            { em, listener, hook ->
+               new DatabaseCommandHandler<DummyDatabaseEntity>(em, listener, hook)
+                     .handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'Jane', flag: true, number: 1L)))
+            },
+            { em, listener, hook ->
+               new DatabaseBatchCommandHandler<DummyDatabaseEntity>(em, listener, hook)
+                     .handle(DatabaseBatchCommand.createAll([new DummyDatabaseEntity(name: 'Jane', flag: true)]))
+            },
+            { em, listener, hook ->
+               new DatabaseSuperCommandHandler<DummyDatabaseEntity>(em, listener, hook)
+                     .handle(DatabaseSuperCommand.update(DummyDatabaseEntity)
+                           .set(DummyDatabaseEntity::setName, 'Janet')
+                           .where(nameQuery('Jane')))
+            }
+      ]
+      expectedCount << [4L, 4L, 0L]
+   }
+
+   def "should keep cached results until the changing transaction commits"() {
+      given:
+      def handler = cachingHandler()
+      def commandHandler = new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, cache, afterCommit)
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      when:
+      commandHandler.handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'Jane', flag: true)))
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      then:
+      cache.statistics().hitCount == 1
+      cache.size() == 1
+
+      when:
+      afterCommit.committed()
+
+      then:
+      cache.size() == 0
+   }
+
+   def "should keep cached results when a command fails or its transaction is rolled back"() {
+      given:
+      def handler = cachingHandler()
+      def commandHandler = new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, cache, afterCommit)
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      when:
+      commandHandler.handle(new DatabaseCommand<DummyDatabaseEntity>() {
+         @Override
+         DummyDatabaseEntity execute(EntityManager em) {
+            throw new IllegalStateException('failed')
+         }
+      })
+
+      then:
+      thrown(IllegalStateException)
+
+      when:
+      commandHandler.handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'Jane', flag: true)))
+      afterCommit.rolledBack()
+      afterCommit.committed()
+
+      then:
+      cache.size() == 1
+   }
+
+   def "should cache entities detached from the entity manager"() {
+      given:
+      def handler = cachingHandler()
+
+      when:
+      def first = handler.handle(nameQuery('Jane'), ResultStrategy.all())
+      def second = handler.handle(nameQuery('Jane'), ResultStrategy.all())
+      def page = handler.handle(nameQuery('John'), ResultStrategy.paged(0, 2, 4))
+      def single = handler.handle(idQuery(1L), ResultStrategy.single())
+
+      then:
+      first.size() == 3
+      second.is(first)
+      (first + page.content + single).every { !entityManager.contains(it) }
+   }
+
+   def "should keep cached results when an unrelated entity type changes"() {
+      given:
+      def handler = cachingHandler()
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      when:
+      cache.entitiesChanged(SuperEntity)
+      handler.handle(nameQuery('Jane'), ResultStrategy.count())
+
+      then:
+      cache.statistics().hitCount == 1
+   }
+
+   def "should expire results after the time to live of their entity type"() {
+      given:
+      long now = 0
+      def expiringCache = QueryResultCache.builder()
+            .timeToLive(Duration.ofSeconds(60))
+            .timeToLive(DummyDatabaseEntity, Duration.ofSeconds(10))
+            .build({ now } as LongSupplier)
+      def dummyKey = key(DummyDatabaseEntity)
+      def superKey = key(SuperEntity)
+      int computed = 0
+
+      when:
+      expiringCache.get(dummyKey) { ++computed }
+      expiringCache.get(superKey) { ++computed }
+      now = Duration.ofSeconds(10).toNanos()
+      def dummyResult = expiringCache.get(dummyKey) { ++computed }
+      def superResult = expiringCache.get(superKey) { ++computed }
+
+      then:
+      dummyResult == 3
+      superResult == 2
+   }
+
+   def "should evict least recently used results when full"() {
+      given:
+      def boundedCache = QueryResultCache.builder().maximumSize(2).build()
+      def first = key(DummyDatabaseEntity)
+      def second = key(SuperEntity)
+      def third = key(NestedSuperEntity)
+
+      when:
+      boundedCache.get(first) { 1 }
+      boundedCache.get(second) { 2 }
+      boundedCache.get(first) { 1 }
+      boundedCache.get(third) { 3 }
+      def results = [first, third, second].collect { boundedCache.get(it) { 0 } }
+
+      then:
+      results == [1, 3, 0]
+      boundedCache.statistics().evictionCount == 2
+   }
+
+   def "should not cache results computed while the cache was invalidated"() {
+      given:
+      def cacheKey = key(DummyDatabaseEntity)
+
+      when:
+      def stale = cache.get(cacheKey) {
+         cache.entitiesChanged(DummyDatabaseEntity)
+         'stale'
+      }
+      def fresh = cache.get(cacheKey) { 'fresh' }
+
+      then:
+      stale == 'stale'
+      fresh == 'fresh'
+   }
+
+   private CachingDatabaseQueryHandler<DummyDatabaseEntity> cachingHandler() {
+      new CachingDatabaseQueryHandler<DummyDatabaseEntity>(new DatabaseQueryHandler<>(entityManager), entityManager,
+            cache)
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> idQuery(Long id) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).equalTo(id)
+            .build()
+   }
+
+   private static QueryResultCache.Key key(Class<?> entityType) {
+      new QueryResultCache.Key(entityType, [], [], [], null, [], [])
+   }
+}
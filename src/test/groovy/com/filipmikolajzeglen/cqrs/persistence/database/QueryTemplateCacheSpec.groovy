@@ -0,0 +1,196 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+import jakarta.persistence.EntityManagerFactory
+
+class QueryTemplateCacheSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   private QueryTemplateCache templateCache = new QueryTemplateCache()
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   @Override
+   protected Map<String, Object> persistenceProperties() {
+      return ['hibernate.criteria.copy_tree': 'true', 'hibernate.criteria.plan_cache_enabled': 'true']
+   }
+
+   private DatabaseQueryHandler<DummyDatabaseEntity> preparedHandler() {
+      return DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .preparedQueries(templateCache)
+            .build()
+   }
+
+   def "should reject prepared queries on a Hibernate factory with properties #properties"() {
+      when:
+      DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerOf(properties)).preparedQueries(templateCache)
+
+      then:
+      def e = thrown(IllegalStateException)
+      e.message.contains('hibernate.criteria.copy_tree=true')
+
+      where:
+      properties << [['hibernate.dialect': 'PostgreSQLDialect'], ['hibernate.criteria.copy_tree': 'false']]
+   }
+
+   def "should accept prepared queries on a factory with properties #properties"() {
+      when:
+      DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManagerOf(properties)).preparedQueries(templateCache)
+
+      then:
+      noExceptionThrown()
+
+      where:
+      properties << [['hibernate.criteria.copy_tree': 'true'], ['hibernate.criteria.copy_tree': true],
+                     ['eclipselink.logging.level': 'FINE']]
+   }
+
+   def "should return the same results in prepared mode for #strategyName"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).in(['John', 'Jane', null])
+            .property(DummyDatabaseEntity::getNumber).not().isNull()
+            .property(DummyDatabaseEntity::isFlag).equalTo(false)
+            .build()
+
+      expect:
+      comparable(preparedHandler().handle(query, strategy)) ==
+            comparable(new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, strategy))
+
+      where:
+      strategyName | strategy
+      'all'        | ResultStrategy.all()
+      'first'      | ResultStrategy.first()
+      'exist'      | ResultStrategy.exist()
+      'count'      | ResultStrategy.count()
+      'paged'      | ResultStrategy.paged(0, 2, 3)
+      'sliced'     | ResultStrategy.sliced(1, 2)
+   }
+
+   def "should return the same results in prepared mode for range and pattern restrictions"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getNumber).between(1000L, 2500L)
+            .property(DummyDatabaseEntity::getNumber).not().lessThan(2000L)
+            .property(DummyDatabaseEntity::getName).startsWith('J')
+            .property(DummyDatabaseEntity::getName).ilike('%N%')
+            .build()
+
+      expect:
+      comparable(preparedHandler().handle(query, ResultStrategy.all())) ==
+            comparable(new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.all()))
+      preparedHandler().handle(query, ResultStrategy.all())*.id.sort() == [2L, 3L, 5L]
+   }
+
+   def "should compile one template per query shape"() {
+      given:
+      def handler = preparedHandler()
+
+      when:
+      def johns = handler.handle(nameQuery('John'), ResultStrategy.all())
+      def janes = handler.handle(nameQuery('Jane'), ResultStrategy.all())
+
+      then:
+      templateCache.size() == 1
+      johns*.id == [1L, 3L, 5L, 6L]
+      janes*.id == [2L, 9L, 10L]
+
+      when:
+      handler.handle(nameQuery('John'), ResultStrategy.count())
+
+      then:
+      templateCache.size() == 2
+   }
+
+   def "should compile separate templates for different numbers of in() values"() {
+      given:
+      def handler = preparedHandler()
+
+      when:
+      def two = handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in([1L, 2L])
+            .build(), ResultStrategy.all())
+      def three = handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in([1L, 2L, 3L])
+            .build(), ResultStrategy.all())
+
+      then:
+      two*.id == [1L, 2L]
+      three*.id == [1L, 2L, 3L]
+      templateCache.size() == 2
+   }
+
+   def "should share templates between in() lists padded to the same size"() {
+      given:
+      def handler = preparedHandler()
+
+      when:
+      def three = handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in([1L, 2L, 3L])
+            .build(), ResultStrategy.all())
+      def four = handler.handle(DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in([1L, 2L, 3L, 4L])
+            .build(), ResultStrategy.all())
+
+      then:
+      three*.id == [1L, 2L, 3L]
+      four*.id == [1L, 2L, 3L, 4L]
+      templateCache.size() == 1
+   }
+
+   def "should return the same results for in() lists longer than one chunk"() {
+      given:
+      def ids = (1L..2000L).toList()
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getId).in(ids + [null])
+            .build()
+
+      expect:
+      preparedHandler().handle(query, ResultStrategy.count()) == 17L
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count()) == 17L
+   }
+
+   def "should build queries with custom restrictions without templates"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.equal(root.get('name'), 'Jane') }
+            .build()
+
+      when:
+      def result = preparedHandler().handle(query, ResultStrategy.all())
+
+      then:
+      result*.id == [2L, 9L, 10L]
+      templateCache.size() == 0
+   }
+
+   private static Object comparable(Object result) {
+      if (result instanceof DummyDatabaseEntity) {
+         return result.id
+      }
+      if (result instanceof List) {
+         return result*.id
+      }
+      if (result.hasProperty('content')) {
+         return result.content*.id
+      }
+      return result
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      return DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+
+   private EntityManager entityManagerOf(Map<String, Object> properties) {
+      def factory = Mock(EntityManagerFactory) { getProperties() >> properties }
+      return Mock(EntityManager) { getEntityManagerFactory() >> factory }
+   }
+}
@@ -0,0 +1,179 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class RestrictionGroupSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   @Override
+   protected Map<String, Object> persistenceProperties() {
+      return ['hibernate.criteria.copy_tree': 'true', 'hibernate.criteria.plan_cache_enabled': 'true']
+   }
+
+   def "should merge equalTo restrictions on the same property in anyOf into one in restriction"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { group ->
+               group.property(DummyDatabaseEntity::getName).equalTo('John')
+                     .property(DummyDatabaseEntity::getName).in(['Jane', 'John'])
+            }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count())
+
+      then:
+      query.restrictionShapes() == ['name in (?, ?)']
+      query.parameterValues() == ['John', 'Jane']
+      result == 7L
+   }
+
+   def "should combine nested groups"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { any ->
+               any.allOf { all ->
+                  all.property(DummyDatabaseEntity::getName).equalTo('John')
+                        .property(DummyDatabaseEntity::isFlag).equalTo(true)
+               }
+                     .property(DummyDatabaseEntity::getNumber).isNull()
+            }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.all())
+
+      then:
+      query.restrictionShapes() == ['((name = ? and flag = ?) or number is null)']
+      result*.id.sort() == [1L, 6L, 7L, 8L, 9L]
+   }
+
+   def "should drop groups left empty by optionally()"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { group ->
+               group.property(DummyDatabaseEntity::getName).optionally().equalTo(Optional.empty())
+                     .allOf { nested -> nested.property(DummyDatabaseEntity::getNumber).optionally().in(Optional.empty()) }
+            }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count())
+
+      then:
+      query.restrictions.isEmpty()
+      result == 17L
+   }
+
+   def "should exclude rows matching any restriction of noneOf"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .noneOf { group ->
+               group.property(DummyDatabaseEntity::getName).equalTo('John')
+                     .property(DummyDatabaseEntity::getName).equalTo('Jane')
+            }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count())
+
+      then:
+      query.restrictionShapes() == ['not name in (?, ?)']
+      result == 10L
+   }
+
+   def "should collapse double negations"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .noneOf { outer -> outer.noneOf { inner -> inner.property(DummyDatabaseEntity::getName).equalTo('John') } }
+            .noneOf { group -> group.property(DummyDatabaseEntity::isFlag).not().equalTo(false) }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count())
+
+      then:
+      query.restrictionShapes() == ['name = ?', 'flag = ?']
+      result == 3L
+   }
+
+   def "should merge negated equalTo restrictions of the query into one not in restriction"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).not().equalTo('John')
+            .allOf { group -> group.property(DummyDatabaseEntity::getName).not().equalTo('Jane') }
+            .build()
+
+      when:
+      def result = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(query, ResultStrategy.count())
+
+      then:
+      query.restrictionShapes() == ['not name in (?, ?)']
+      result == 10L
+   }
+
+   def "should not merge restrictions which change their meaning when merged"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { group ->
+               group.property(DummyDatabaseEntity::getName).equalTo('John')
+                     .property(DummyDatabaseEntity::getName).not().equalTo('Jane')
+                     .property(DummyDatabaseEntity::getNumber).greaterThan(2000L)
+            }
+            .build()
+
+      expect:
+      query.restrictionShapes() == ['(name = ? or not name = ? or number > ?)']
+   }
+
+   def "should return the same results for groups in prepared mode"() {
+      given:
+      def templateCache = new QueryTemplateCache()
+      def prepared = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .preparedQueries(templateCache)
+            .build()
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { group ->
+               group.property(DummyDatabaseEntity::getName).equalTo('Jane')
+                     .property(DummyDatabaseEntity::getNumber).greaterThan(2000L)
+            }
+            .build()
+
+      when:
+      def result = prepared.handle(query, ResultStrategy.all())
+
+      then:
+      result*.id.sort() == [2L, 3L, 9L, 10L]
+      result*.id.sort() == new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, ResultStrategy.all())*.id.sort()
+      templateCache.size() == 1
+   }
+
+   def "should translate groups with custom restrictions without templates"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .anyOf { group ->
+               group.withRestriction { cb, root -> cb.greaterThan(root.get('number'), 2000L) }
+                     .property(DummyDatabaseEntity::getName).equalTo('Jane')
+            }
+            .build()
+
+      when:
+      def result = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .preparedQueries(new QueryTemplateCache())
+            .build()
+            .handle(query, ResultStrategy.count())
+
+      then:
+      !query.isParameterizable()
+      query.restrictionDescriptions() == ['(custom or name = ?)']
+      result == 4L
+   }
+}
@@ -0,0 +1,145 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.time.Duration
+import java.util.function.LongSupplier
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.EntityManager
+import jakarta.persistence.EntityManagerFactory
+
+class RoutingDatabaseQueryHandlerSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should run queries on a replica returning detached entities"() {
+      given:
+      def handler = RoutingDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager, replicas()).build()
+
+      when:
+      def johns = handler.handle(johnQuery(), ResultStrategy.all())
+
+      then:
+      johns.size() == 4
+      johns.every { !entityManager.contains(it) }
+   }
+
+   def "should read the session's own writes from the primary"() {
+      given:
+      def session = new ReadYourWritesSession(Duration.ofMinutes(1))
+      def handler = RoutingDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager, replicas())
+            .session(session)
+            .build()
+      def afterCommit = new CommitCallbacks()
+      def before = handler.handle(johnQuery(), ResultStrategy.count())
+
+      when:
+      new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, session, afterCommit)
+            .handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'John', flag: true)))
+      afterCommit.committed()
+      def after = handler.handle(johnQuery(), ResultStrategy.count())
+
+      then:
+      before == 4L
+      after == 5L
+   }
+
+   def "should not pin reads to the primary before the session's writes are committed"() {
+      given:
+      def session = new ReadYourWritesSession(Duration.ofMinutes(1))
+      def afterCommit = new CommitCallbacks()
+      def commandHandler = new DatabaseCommandHandler<DummyDatabaseEntity>(entityManager, session, afterCommit)
+
+      when:
+      commandHandler.handle(DatabaseCommand.create(new DummyDatabaseEntity(name: 'John', flag: true)))
+      def pinnedBeforeCommit = session.isPinned(DummyDatabaseEntity)
+      afterCommit.rolledBack()
+
+      then:
+      !pinnedBeforeCommit
+      !session.isPinned(DummyDatabaseEntity)
+   }
+
+   def "should keep reading from replicas after changes of unrelated entity types"() {
+      given:
+      def session = new ReadYourWritesSession(Duration.ofMinutes(1))
+      def handler = RoutingDatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager, replicas())
+            .session(session)
+            .build()
+      entityManager.persist(new DummyDatabaseEntity(name: 'John', flag: true))
+      session.entitiesChanged(SuperEntity)
+
+      expect:
+      handler.handle(johnQuery(), ResultStrategy.count()) == 4L
+   }
+
+   def "should pin changed entity types only within the window"() {
+      given:
+      long now = 0
+      def session = new ReadYourWritesSession(Duration.ofSeconds(5), { now } as LongSupplier)
+
+      when:
+      session.entitiesChanged(changedType)
+      now = Duration.ofSeconds(elapsedSeconds).toNanos()
+
+      then:
+      session.isPinned(DummyDatabaseEntity) == pinned
+
+      where:
+      changedType         | elapsedSeconds | pinned
+      DummyDatabaseEntity | 4              | true
+      DummyDatabaseEntity | 5              | false
+      Object              | 4              | true
+      SuperEntity         | 4              | false
+   }
+
+   def "should select replicas in turn with round robin"() {
+      given:
+      def entityManagers = (1..3).collect { Mock(EntityManager) }
+      def pool = ReplicaPool.of(entityManagers.collect { em -> factoryOf(em) }, ReplicaSelection.ROUND_ROBIN)
+
+      when:
+      def used = (1..4).collect { pool.execute { em -> em } }
+
+      then:
+      used == entityManagers + entityManagers[0]
+      2 * entityManagers[0].close()
+      1 * entityManagers[1].close()
+      1 * entityManagers[2].close()
+   }
+
+   def "should select the replica executing the fewest queries"() {
+      given:
+      def entityManagers = (1..2).collect { Stub(EntityManager) }
+      def pool = ReplicaPool.of(entityManagers.collect { em -> factoryOf(em) }, ReplicaSelection.LEAST_LOADED)
+
+      when:
+      def nested = pool.execute { outer -> [outer, pool.execute { inner -> inner }] }
+      def sequential = pool.execute { em -> em }
+
+      then:
+      nested == entityManagers
+      sequential == entityManagers[0]
+   }
+
+   private ReplicaPool replicas() {
+      ReplicaPool.of([entityManagerFactory], ReplicaSelection.ROUND_ROBIN)
+   }
+
+   private EntityManagerFactory factoryOf(EntityManager entityManager) {
+      Stub(EntityManagerFactory) {
+         createEntityManager() >> entityManager
+      }
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> johnQuery() {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .build()
+   }
+}
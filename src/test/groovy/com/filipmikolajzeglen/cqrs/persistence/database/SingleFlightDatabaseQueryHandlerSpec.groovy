@@ -0,0 +1,140 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.filipmikolajzeglen.cqrs.core.QueryHandler
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import jakarta.persistence.EntityManager
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+class SingleFlightDatabaseQueryHandlerSpec extends Specification {
+
+   @AutoCleanup('shutdownNow')
+   private ExecutorService executor = Executors.newFixedThreadPool(8)
+
+   private BlockingHandler delegate = new BlockingHandler()
+   private EntityManager entityManager = Mock()
+   private SingleFlightDatabaseQueryHandler<DummyDatabaseEntity> handler =
+         new SingleFlightDatabaseQueryHandler<>(delegate, entityManager)
+
+   def "should run identical concurrent queries once and share the result"() {
+      when:
+      def results = concurrently([{ handler.handle(nameQuery('John'), ResultStrategy.count()) }] * 8)
+
+      then:
+      results*.join() == [42L] * 8
+      delegate.calls.get() == 1
+      handler.inFlight() == 0
+   }
+
+   def "should run queries with different values or result strategies separately"() {
+      when:
+      def results = concurrently([
+            { handler.handle(nameQuery('John'), ResultStrategy.count()) },
+            { handler.handle(nameQuery('Jane'), ResultStrategy.count()) },
+            { handler.handle(nameQuery('John'), ResultStrategy.first()) }
+      ])
+
+      then:
+      results*.join() == [42L] * 3
+      delegate.calls.get() == 3
+   }
+
+   def "should detach the shared entities before handing them to coalesced callers"() {
+      given:
+      def john = new DummyDatabaseEntity(name: 'John')
+      def johnny = new DummyDatabaseEntity(name: 'Johnny')
+      delegate.result = [john, johnny]
+
+      when:
+      def results = concurrently([{ handler.handle(nameQuery('John'), ResultStrategy.all()) }] * 4)*.join()
+
+      then:
+      1 * entityManager.detach({ it.is(john) })
+      1 * entityManager.detach({ it.is(johnny) })
+      0 * entityManager._
+      results.every { it.is(results[0]) }
+      delegate.calls.get() == 1
+   }
+
+   def "should share the failure of the running query"() {
+      given:
+      def failure = new IllegalStateException('database unavailable')
+      delegate.failure = failure
+
+      when:
+      def results = concurrently([{ handler.handle(nameQuery('John'), ResultStrategy.count()) }] * 4)
+      def failures = results.collect {
+         try {
+            it.join()
+            null
+         } catch (CompletionException e) {
+            e.cause
+         }
+      }
+
+      then:
+      failures.every { it.is(failure) }
+      delegate.calls.get() == 1
+   }
+
+   def "should run the query again once the previous one has completed"() {
+      given:
+      delegate.release.countDown()
+
+      when:
+      handler.handle(nameQuery('John'), ResultStrategy.count())
+      handler.handle(nameQuery('John'), ResultStrategy.count())
+
+      then:
+      delegate.calls.get() == 2
+   }
+
+   /**
+    * Runs the given calls concurrently, and releases the delegate once all of them had the chance to join the
+    * running query.
+    */
+   private List<CompletableFuture<Object>> concurrently(List<Closure> calls) {
+      def started = new CountDownLatch(calls.size())
+      def results = calls.collect { call ->
+         CompletableFuture.supplyAsync({
+            started.countDown()
+            call()
+         }, executor)
+      }
+      started.await()
+      Thread.sleep(200)
+      delegate.release.countDown()
+      return results
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+
+   private static class BlockingHandler implements QueryHandler<DatabaseQuery<DummyDatabaseEntity>, DummyDatabaseEntity> {
+
+      final CountDownLatch release = new CountDownLatch(1)
+      final AtomicInteger calls = new AtomicInteger()
+      RuntimeException failure
+      Object result = 42L
+
+      @Override
+      <R> R handle(DatabaseQuery<DummyDatabaseEntity> query, ResultStrategy<DummyDatabaseEntity, R> resultStrategy) {
+         calls.incrementAndGet()
+         release.await()
+         if (failure) {
+            throw failure
+         }
+         return (R) result
+      }
+   }
+}
@@ -0,0 +1,161 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.time.Duration
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+import jakarta.persistence.PersistenceException
+
+class SlowQueryWatchdogSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+   private static final ParameterizedSql JOHN_SQL =
+         new ParameterizedSql('select * from fmzcqrspersistence.dummy_database_entity where name = ?', ['John'])
+
+   private List<SlowQuery> reports = []
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should report queries exceeding the threshold without their values"() {
+      given:
+      def handler = watchedHandler(SlowQueryWatchdog.builder(Duration.ZERO))
+
+      when:
+      def page = handler.handle(johnQuery(), ResultStrategy.paged(0, 2, 4))
+
+      then:
+      page.content.size() == 2
+      reports.size() == 1
+      with(reports[0]) {
+         entityType() == DummyDatabaseEntity
+         operation() == 'paged'
+         restrictions() == ['name = ?', 'flag = ?']
+         statements() == 2
+         plan().isEmpty()
+         !toString().contains('John')
+      }
+   }
+
+   def "should not report queries under the threshold"() {
+      given:
+      def handler = watchedHandler(SlowQueryWatchdog.builder(Duration.ofMinutes(1)))
+
+      when:
+      handler.handle(johnQuery(), ResultStrategy.all())
+
+      then:
+      reports.isEmpty()
+   }
+
+   def "should not compute the shape of fast queries without metrics"() {
+      given:
+      def execution = new QueryExecution.Measured(null, SlowQueryWatchdog.builder(Duration.ofMinutes(1)).build(),
+            entityManager)
+      def shapeComputed = false
+
+      when:
+      execution.complete { shapeComputed = true; null }
+
+      then:
+      !shapeComputed
+   }
+
+   def "should capture the plan of sampled slow queries"() {
+      given:
+      def handler = watchedHandler(SlowQueryWatchdog.builder(Duration.ZERO)
+            .explainer(QueryPlanExplainer.postgres { JOHN_SQL })
+            .explainSampleRate(sampleRate))
+
+      when:
+      handler.handle(johnQuery(), ResultStrategy.count())
+
+      then:
+      reports.size() == 1
+      reports[0].plan().any { it.contains('Execution Time') } == captured
+
+      where:
+      sampleRate | captured
+      1          | true
+      0          | false
+   }
+
+   def "should bind the values of the explained statement"() {
+      given:
+      def explainer = QueryPlanExplainer.postgres {
+         new ParameterizedSql('select * from fmzcqrspersistence.dummy_database_entity where name = ?',
+               ["John'; delete from fmzcqrspersistence.dummy_database_entity; --"])
+      }
+
+      when:
+      def plan = explainer.explain(entityManager, null)
+
+      then:
+      plan.any { it.contains('rows=0 loops=1') }
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(
+            DatabaseQuery.builder(DummyDatabaseEntity).build(), ResultStrategy.count()) == 17L
+   }
+
+   def "should not explain statements other than selects"() {
+      given:
+      def explainer = QueryPlanExplainer.postgres {
+         new ParameterizedSql('delete from fmzcqrspersistence.dummy_database_entity where name = ?', ['John'])
+      }
+
+      when:
+      explainer.explain(entityManager, null)
+
+      then:
+      thrown(IllegalArgumentException)
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager).handle(
+            DatabaseQuery.builder(DummyDatabaseEntity).build(), ResultStrategy.count()) == 17L
+   }
+
+   def "should answer the query when the plan cannot be captured"() {
+      given:
+      def handler = watchedHandler(SlowQueryWatchdog.builder(Duration.ZERO)
+            .explainer { em, query -> throw new PersistenceException('unsupported') })
+
+      when:
+      def count = handler.handle(johnQuery(), ResultStrategy.count())
+
+      then:
+      count == 3L
+      reports.size() == 1
+      reports[0].plan().isEmpty()
+   }
+
+   def "should answer the query and keep its transaction usable when #description"() {
+      given:
+      def handler = watchedHandler(SlowQueryWatchdog.builder(Duration.ZERO)
+            .explainer(QueryPlanExplainer.postgres { new ParameterizedSql(sql, []) }))
+
+      when:
+      def count = handler.handle(johnQuery(), ResultStrategy.count())
+
+      then:
+      count == 3L
+      reports[0].plan().isEmpty()
+      handler.handle(johnQuery(), ResultStrategy.count()) == 3L
+
+      where:
+      description                   | sql
+      'the statement is not select' | 'delete from fmzcqrspersistence.dummy_database_entity'
+      'the explain statement fails' | 'select * from fmzcqrspersistence.missing_table'
+   }
+
+   private DatabaseQueryHandler<DummyDatabaseEntity> watchedHandler(SlowQueryWatchdog.Builder watchdog) {
+      DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .slowQueryWatchdog(watchdog.listener { reports << it }.build())
+            .build()
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> johnQuery() {
+      DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .property(DummyDatabaseEntity::isFlag).equalTo(false)
+            .build()
+   }
+}
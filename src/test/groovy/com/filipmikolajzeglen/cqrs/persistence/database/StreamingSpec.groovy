@@ -0,0 +1,105 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.util.stream.Collectors
+
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class StreamingSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should stream entities sorted by id by default"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('John')
+            .build()
+
+      when:
+      def ids = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, Streaming.withFetchSize(2))
+            .withCloseable { it.map { it.id }.collect(Collectors.toList()) }
+
+      then:
+      ids == [1L, 3L, 5L, 6L]
+   }
+
+   def "should stream entities in the requested order"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('Jane')
+            .build()
+
+      when:
+      def ids = new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, Streaming.withFetchSize(10).orderedByDesc('number'))
+            .withCloseable { it.map { it.id }.collect(Collectors.toList()) }
+
+      then:
+      ids == [9L, 2L, 10L]
+   }
+
+   def "should clear the persistence context every #interval entities"() {
+      given:
+      def query = DatabaseQuery.builder(DummyDatabaseEntity).build()
+      List<DummyDatabaseEntity> received = []
+      List<Boolean> managedOnReceipt = []
+      int managedOnLastReceipt = 0
+
+      when:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, Streaming.withFetchSize(5).clearingEvery(interval))
+            .withCloseable {
+               it.forEach { entity ->
+                  received << entity
+                  managedOnReceipt << entityManager.contains(entity)
+                  managedOnLastReceipt = received.count { entityManager.contains(it) }
+               }
+            }
+
+      then:
+      received.size() == 17
+      managedOnReceipt.every()
+      managedOnLastReceipt == expectedManaged
+
+      where:
+      interval || expectedManaged
+      1        || 1
+      5        || 2
+      20       || 17
+   }
+
+   def "should detach the caller's entities when clearing the persistence context"() {
+      given:
+      def loaded = entityManager.find(DummyDatabaseEntity, 1L)
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo('Jane')
+            .build()
+
+      when:
+      new DatabaseQueryHandler<DummyDatabaseEntity>(entityManager)
+            .handle(query, Streaming.withFetchSize(5).clearingEvery(1))
+            .withCloseable { it.count() }
+
+      then:
+      !entityManager.contains(loaded)
+   }
+
+   def "should reject invalid fetch sizes and clear intervals"() {
+      when:
+      create()
+
+      then:
+      thrown(IllegalArgumentException)
+
+      where:
+      create << [
+            { Streaming.withFetchSize(0) },
+            { Streaming.withFetchSize(10).clearingEvery(0) }
+      ]
+   }
+}
@@ -0,0 +1,116 @@
+package com.filipmikolajzeglen.cqrs.persistence.database
+
+import java.time.Duration
+import java.util.function.LongSupplier
+
+import com.filipmikolajzeglen.cqrs.core.ResultStrategy
+import com.filipmikolajzeglen.cqrs.persistence.DBSpecification
+
+class TotalCountCacheSpec extends DBSpecification {
+
+   private static final String SQL_INIT_DATA = '/com/filipmikolajzeglen/cqrs/persistence/database/DatabaseQuerySpec.sql'
+
+   private List<TotalCountCache.Key> countedKeys = []
+   private TotalCountCache recordingCache = { TotalCountCache.Key key, LongSupplier counter ->
+      countedKeys << key
+      counter.asLong
+   } as TotalCountCache
+
+   @Override
+   protected String sqlInitData() {
+      return getClass().getResource(SQL_INIT_DATA).text
+   }
+
+   def "should count only when the page does not reveal the total for page=#page, size=#size"() {
+      given:
+      def handler = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .cachedTotalCounts(recordingCache)
+            .build()
+
+      when:
+      def result = handler.handle(nameQuery('John'), ResultStrategy.paged(page, size, 4))
+
+      then:
+      result.totalElements == 4
+      result.totalPages == expectedTotalPages
+      countedKeys.size() == expectedCounts
+
+      where:
+      page | size || expectedTotalPages | expectedCounts
+      0    | 10   || 1                  | 0
+      1    | 3    || 2                  | 0
+      0    | 3    || 2                  | 1
+      0    | 4    || 1                  | 1
+      2    | 2    || 2                  | 1
+   }
+
+   def "should reuse cached total counts until they expire"() {
+      given:
+      long now = 0
+      def cache = new ExpiringTotalCountCache(Duration.ofSeconds(10), 10, { now } as LongSupplier)
+      def key = new TotalCountCache.Key(DummyDatabaseEntity, ['name = ?'], ['John'])
+      int counted = 0
+      def counter = { ++counted } as LongSupplier
+
+      when:
+      def first = cache.getOrCount(key, counter)
+      now = Duration.ofSeconds(9).toNanos()
+      def second = cache.getOrCount(key, counter)
+      now = Duration.ofSeconds(10).toNanos()
+      def third = cache.getOrCount(key, counter)
+
+      then:
+      first == 1
+      second == 1
+      third == 2
+   }
+
+   def "should keep counts of different values apart"() {
+      given:
+      def handler = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .cachedTotalCounts(TotalCountCache.expiringAfter(Duration.ofMinutes(1)))
+            .build()
+
+      when:
+      def johns = handler.handle(nameQuery('John'), ResultStrategy.paged(0, 1, 0))
+      def janes = handler.handle(nameQuery('Jane'), ResultStrategy.paged(0, 1, 0))
+
+      then:
+      johns.totalElements == 4
+      janes.totalElements == 3
+   }
+
+   def "should not exceed the maximum size"() {
+      given:
+      def cache = new ExpiringTotalCountCache(Duration.ofSeconds(10), 2, { 0L } as LongSupplier)
+
+      when:
+      (1..5).each { cache.getOrCount(new TotalCountCache.Key(DummyDatabaseEntity, [], [it]), { it } as LongSupplier) }
+
+      then:
+      cache.size() == 2
+   }
+
+   def "should count queries with custom restrictions without the cache"() {
+      given:
+      def handler = DatabaseQueryHandler.<DummyDatabaseEntity> builder(entityManager)
+            .cachedTotalCounts(recordingCache)
+            .build()
+      def query = DatabaseQuery.builder(DummyDatabaseEntity)
+            .withRestriction { cb, root -> cb.equal(root.get('name'), 'John') }
+            .build()
+
+      when:
+      def result = handler.handle(query, ResultStrategy.paged(0, 2, 0))
+
+      then:
+      result.totalElements == 4
+      countedKeys.empty
+   }
+
+   private static DatabaseQuery<DummyDatabaseEntity> nameQuery(String name) {
+      return DatabaseQuery.builder(DummyDatabaseEntity)
+            .property(DummyDatabaseEntity::getName).equalTo(name)
+            .build()
+   }
+}
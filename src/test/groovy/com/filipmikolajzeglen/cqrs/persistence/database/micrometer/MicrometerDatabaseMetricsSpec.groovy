@@ -0,0 +1,45 @@
+package com.filipmikolajzeglen.cqrs.persistence.database.micrometer
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+import com.filipmikolajzeglen.cqrs.persistence.database.CommandMeasurement
+import com.filipmikolajzeglen.cqrs.persistence.database.QueryMeasurement
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+class MicrometerDatabaseMetricsSpec extends Specification {
+
+   private SimpleMeterRegistry registry = new SimpleMeterRegistry()
+   private MicrometerDatabaseMetrics metrics = new MicrometerDatabaseMetrics(registry)
+
+   def "should record query measurements tagged by entity, operation and fingerprint"() {
+      when:
+      2.times {
+         metrics.queryExecuted(new QueryMeasurement(String, 'paged', '0123456789abcdef', Duration.ofMillis(1),
+               Duration.ofMillis(5), 11, 2))
+      }
+
+      then:
+      def timer = registry.get(MicrometerDatabaseMetrics.QUERY_EXECUTION)
+            .tags('entity', 'String', 'operation', 'paged', 'fingerprint', '0123456789abcdef')
+            .timer()
+      timer.count() == 2
+      timer.totalTime(TimeUnit.MILLISECONDS) == 10
+      registry.get(MicrometerDatabaseMetrics.QUERY_BUILD).timer().count() == 2
+      registry.get(MicrometerDatabaseMetrics.QUERY_ROWS).summary().totalAmount() == 22
+      registry.get(MicrometerDatabaseMetrics.QUERY_STATEMENTS).summary().max() == 2
+   }
+
+   def "should record command measurements tagged by entity and operation"() {
+      when:
+      metrics.commandExecuted(new CommandMeasurement(String, 'createAll', Duration.ofMillis(3), 50))
+
+      then:
+      registry.get(MicrometerDatabaseMetrics.COMMAND_EXECUTION)
+            .tags('entity', 'String', 'operation', 'createAll')
+            .timer()
+            .count() == 1
+      registry.get(MicrometerDatabaseMetrics.COMMAND_ROWS).summary().totalAmount() == 50
+   }
+}
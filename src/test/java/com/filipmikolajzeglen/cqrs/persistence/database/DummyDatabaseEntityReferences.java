@@ -0,0 +1,27 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+/**
+ * Method references compiled by javac, whose lambda classes are hidden classes, unlike the proxies Groovy creates for
+ * its method references.
+ */
+final class DummyDatabaseEntityReferences
+{
+   private DummyDatabaseEntityReferences()
+   {
+   }
+
+   static PropertyBuilder.Getter<DummyDatabaseEntity, String> name()
+   {
+      return DummyDatabaseEntity::getName;
+   }
+
+   static PropertyBuilder.Getter<DummyDatabaseEntity, Boolean> flag()
+   {
+      return DummyDatabaseEntity::isFlag;
+   }
+
+   static PropertyBuilder.Setter<DummyDatabaseEntity, String> setName()
+   {
+      return DummyDatabaseEntity::setName;
+   }
+}
@@ -0,0 +1,5 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+public record DummyDatabaseEntityView(String name, Long number)
+{
+}
@@ -0,0 +1,23 @@
+package com.filipmikolajzeglen.cqrs.persistence.database;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Records the last SQL statement prepared by Hibernate, to render the SQL of typed queries in specs.
+ */
+public class RecordingStatementInspector implements StatementInspector
+{
+   private static final ThreadLocal<String> LAST_SQL = new ThreadLocal<>();
+
+   @Override
+   public String inspect(String sql)
+   {
+      LAST_SQL.set(sql);
+      return sql;
+   }
+
+   public static String lastSql()
+   {
+      return LAST_SQL.get();
+   }
+}
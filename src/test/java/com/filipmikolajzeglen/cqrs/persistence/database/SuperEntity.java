@@ -2,6 +2,9 @@ package com.filipmikolajzeglen.cqrs.persistence.database;
 
 import jakarta.persistence.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Entity
 @Table(name = "super_entity", schema = "fmzcqrspersistence")
 public class SuperEntity {
@@ -13,6 +16,9 @@ public class SuperEntity {
     @JoinColumn(name = "dummy_database_entity_id")
     DummyDatabaseEntity dummyDatabaseEntity;
 
+    @OneToMany(mappedBy = "superEntity")
+    List<NestedSuperEntity> nestedSuperEntities = new ArrayList<>();
+
     public SuperEntity() {}
 
     public SuperEntity(DummyDatabaseEntity dummyDatabaseEntity) {
@@ -30,4 +36,8 @@ public class SuperEntity {
     public void setDummyDatabaseEntity(DummyDatabaseEntity dummyDatabaseEntity) {
         this.dummyDatabaseEntity = dummyDatabaseEntity;
     }
+
+    public List<NestedSuperEntity> getNestedSuperEntities() {
+        return nestedSuperEntities;
+    }
 }
\ No newline at end of file
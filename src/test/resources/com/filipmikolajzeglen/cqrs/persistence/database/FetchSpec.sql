@@ -0,0 +1,18 @@
+INSERT INTO fmzcqrspersistence.dummy_database_entity (name, flag, number)
+VALUES ('Jane', TRUE, 1000),
+       ('John', FALSE, 2000),
+       ('Anna', FALSE, 3000);
+
+INSERT INTO fmzcqrspersistence.super_entity (dummy_database_entity_id)
+VALUES (1),
+       (2),
+       (3),
+       (1);
+
+INSERT INTO fmzcqrspersistence.nested_super_entity (super_entity_id)
+VALUES (1),
+       (1),
+       (2),
+       (4),
+       (4),
+       (4);